@@ -3,7 +3,10 @@ package com.jeffrey.example.demolib.eventstore.annotation;
 import com.jeffrey.example.demolib.eventstore.util.EnableEventStoreImportSelector;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.annotation.AliasFor;
 
@@ -17,9 +20,13 @@ import java.lang.annotation.*;
 @EnableAutoConfiguration
 public @interface EnableEventStore {
 
-    // TODO: depends on the DB storage specified by user
     // TODO: add support for JPA
 
+    /**
+     * The storage backing the event store, default to {@link EventStoreStorage#MONGO}
+     */
+    EventStoreStorage storage() default EventStoreStorage.MONGO;
+
     // Disabling specific Mongo Auto-configuration Classes
     @AliasFor(
             annotation = EnableAutoConfiguration.class,
@@ -27,7 +34,10 @@ public @interface EnableEventStore {
     )
     Class<?>[] suppressAutoConfiguration() default {
             MongoAutoConfiguration.class,
-            MongoDataAutoConfiguration.class
+            MongoDataAutoConfiguration.class,
+            MongoReactiveAutoConfiguration.class,
+            MongoReactiveDataAutoConfiguration.class,
+            MongoReactiveRepositoriesAutoConfiguration.class
     };
 
 }
@@ -0,0 +1,26 @@
+package com.jeffrey.example.demolib.eventstore.annotation;
+
+/**
+ * The storage backing the event store, selected via {@link EnableEventStore#storage()}.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public enum EventStoreStorage {
+
+    /**
+     * MongoDB replica set, see {@link com.jeffrey.example.demolib.eventstore.dao.MongoEventStoreDao}
+     */
+    MONGO,
+
+    /**
+     * Relational database via JDBC, see {@link com.jeffrey.example.demolib.eventstore.dao.JdbcEventStoreDao}
+     */
+    JDBC,
+
+    /**
+     * Local memory-mapped append-only journal for single-node deployment,
+     * see {@link com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao}
+     */
+    JOURNAL
+
+}
@@ -1,7 +1,9 @@
 package com.jeffrey.example.demolib.eventstore.aop;
 
+import com.jeffrey.example.demolib.eventstore.dao.ConsumeClaim;
 import com.jeffrey.example.demolib.eventstore.service.EventStoreService;
 import com.jeffrey.example.demolib.eventstore.util.ChannelBindingAccessor;
+import com.jeffrey.example.demolib.eventstore.util.ProducerSequenceTracker;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -9,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.integration.amqp.support.NackedAmqpMessageException;
 import org.springframework.integration.amqp.support.ReturnedAmqpMessageException;
 import org.springframework.messaging.Message;
@@ -18,6 +21,8 @@ import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.util.StringUtils;
 
+import java.util.Collection;
+
 /**
  * An aspect class defining advices which intercepts the producer, consumer and
  * service activator to integrate event store without affecting the business logic
@@ -37,7 +42,10 @@ public class EventStoreAspect {
      * <p>Extract the output channel name and the message (header and payload) from
      * the {@link org.springframework.integration.annotation.Publisher}, then
      * invoke the {@link EventStoreService#createEventFromMessageAndSend(Message, String, ProceedingJoinPoint)}
-     * to create an event into the event store and send the {@link Message} to remtoe broker.</p>
+     * to create an event into the event store and send the {@link Message} to remtoe broker.
+     * If the outbox write mode is configured, invoke the
+     * {@link EventStoreService#createEventFromMessageAndSendWithoutTransaction(Message, String, ProceedingJoinPoint)}
+     * instead.</p>
      *
      * @param proceedingJoinPoint
      * The location of the {@link ProceedingJoinPoint} where the advice will be executed.
@@ -59,6 +67,10 @@ public class EventStoreAspect {
         if (!StringUtils.isEmpty(outputChannelBeanName) &&
                 eventStoreService.getRegisteredProducerChannels().contains(outputChannelBeanName))
         {
+            if (eventStoreService.isOutboxWriteMode()) {
+                return eventStoreService.createEventFromMessageAndSendWithoutTransaction(
+                        message, outputChannelBeanName, proceedingJoinPoint);
+            }
             return eventStoreService.createEventFromMessageAndSend(message, outputChannelBeanName, proceedingJoinPoint);
         }
         return proceedingJoinPoint.proceed(new Object[] {message});
@@ -70,6 +82,15 @@ public class EventStoreAspect {
      * <p>Extract the event id from {@link MessageHeaders} and invoke the {@link EventStoreService}
      * to mark the event as completed into the event store.</p>
      *
+     * <p>If duplicate is ignored, the event is atomically claimed with a lease before the
+     * consumer proceeds, the claim is committed once the event is consumed or released if
+     * the consumer throws. If the redelivery fast path is enabled, the claim is skipped
+     * unless the delivery metadata indicates a duplicate is possible.</p>
+     *
+     * <p>If sequence de-duplication is enabled, the producer sequence of the message is
+     * checked in memory first, a duplicate is skipped and the first delivery of a new
+     * sequence is consumed without the claim.</p>
+     *
      * @param proceedingJoinPoint
      * The location of the {@link ProceedingJoinPoint} where the advice will be executed.
      * @param streamListener
@@ -90,12 +111,14 @@ public class EventStoreAspect {
         // lookup eventId and output channel name from header
         String eventId = null;
         String outputChannelName = null;
+        MessageHeaders messageHeaders = null;
         if (args!=null && args.length>0) {
             Class<?>[] classes = new Class[args.length];
             for (int i=0; i<args.length; i++) {
                 if (args[i] == null) continue;
                 classes[i] = args[i].getClass();
                 if (classes[i].getName().equals(MessageHeaders.class.getName())) {
+                    messageHeaders = (MessageHeaders)args[i];
                     eventId = ((MessageHeaders)args[i]).get("eventId", String.class);
                     outputChannelName = ((MessageHeaders)args[i]).get("outputChannelName", String.class);
                     break;
@@ -112,20 +135,80 @@ public class EventStoreAspect {
                 // allow consumer to proceed without de-duplication
                 Object result = proceedingJoinPoint.proceed(args);
                 LOGGER.debug("message consumed, eventId: {}", eventId);
-                eventStoreService.updateEventAsConsumed(eventId, outputChannelName);
+                markEventAsConsumed(eventId, outputChannelName);
                 return result;
 
             } else {
-                if (!eventStoreService.hasEventBeenConsumed(eventId, outputChannelName)) {
-                    Object result = proceedingJoinPoint.proceed(args);
-                    LOGGER.debug("message consumed, eventId: {}", eventId);
-                    eventStoreService.updateEventAsConsumed(eventId, outputChannelName);
-                    return result;
-                } else {
-                    LOGGER.warn("event: {} has been consumed, skipping", eventId);
-                    // skip the consumer if the event has been consumed
+                // an in-memory answer from the producer sequence if available
+                ProducerSequenceTracker.Verdict verdict = eventStoreService.acquireEventSequence(messageHeaders, outputChannelName);
+                if (verdict == ProducerSequenceTracker.Verdict.DUPLICATE) {
+                    LOGGER.warn("event: {} has been consumed according to its producer sequence, skipping", eventId);
                     return null;
                 }
+
+                boolean duplicatePossible = isDuplicatePossible(messageHeaders);
+                if (verdict == ProducerSequenceTracker.Verdict.NEW && duplicatePossible) {
+                    // a redelivery could have been consumed before the sequence is tracked
+                    eventStoreService.releaseEventSequence(messageHeaders, outputChannelName);
+                    verdict = ProducerSequenceTracker.Verdict.UNKNOWN;
+                }
+
+                if (!duplicatePossible &&
+                        (verdict == ProducerSequenceTracker.Verdict.NEW || eventStoreService.isRedeliveryFastPath()))
+                {
+                    // first delivery of the first attempt, skip the duplicate check
+                    Object result;
+                    try {
+                        result = proceedingJoinPoint.proceed(args);
+                    } catch (Throwable t) {
+                        if (verdict == ProducerSequenceTracker.Verdict.NEW) {
+                            eventStoreService.releaseEventSequence(messageHeaders, outputChannelName);
+                        }
+                        throw t;
+                    }
+                    LOGGER.debug("message consumed on first delivery, eventId: {}", eventId);
+                    markEventAsConsumed(eventId, outputChannelName);
+                    eventStoreService.recordEventSequence(messageHeaders, outputChannelName);
+                    return result;
+                }
+
+                // a single conditional update to claim the event before processing
+                ConsumeClaim consumeClaim = eventStoreService.claimEventForConsuming(eventId, outputChannelName);
+                switch (consumeClaim) {
+                    case CONSUMED:
+                        LOGGER.warn("event: {} has been consumed, skipping", eventId);
+                        eventStoreService.recordEventSequence(messageHeaders, outputChannelName);
+                        // skip the consumer if the event has been consumed
+                        return null;
+
+                    case CLAIMED_BY_OTHERS:
+                        /**
+                         * A concurrent delivery is being processed by another consumer. The delivery
+                         * must not be acked, as that consumer could crash before committing the claim,
+                         * the message is rejected and redelivered according to the binding (retry,
+                         * requeue or dead-letter with TTL). The redelivery either finds the event
+                         * consumed, or claims it once the lease has expired.
+                         */
+                        LOGGER.warn("event: {} is being consumed by another consumer, rejecting", eventId);
+                        throw new IllegalStateException("event: " + eventId + " is being consumed by another consumer");
+
+                    default:
+                        Object result;
+                        try {
+                            result = proceedingJoinPoint.proceed(args);
+                        } catch (Throwable t) {
+                            if (consumeClaim == ConsumeClaim.CLAIMED) {
+                                // allow the redelivery to be processed immediately
+                                eventStoreService.releaseEventClaim(eventId, outputChannelName);
+                            }
+                            throw t;
+                        }
+                        LOGGER.debug("message consumed, eventId: {}", eventId);
+                        // commit the claim
+                        markEventAsConsumed(eventId, outputChannelName);
+                        eventStoreService.recordEventSequence(messageHeaders, outputChannelName);
+                        return result;
+                }
             }
         }
     }
@@ -200,7 +283,8 @@ public class EventStoreAspect {
                     org.springframework.amqp.core.Message amqpMessage = amqpMessageException.getAmqpMessage();
                     String eventId = (String) amqpMessage.getMessageProperties().getHeaders().get("eventId");
                     String outputChannelName = (String) amqpMessage.getMessageProperties().getHeaders().get("outputChannelName");
-                    eventStoreService.updateEventAsReturned(eventId, outputChannelName);
+                    eventStoreService.resendReturnedEventAsync(eventId, outputChannelName, amqpMessageException.getFailedMessage())
+                            .whenComplete((matched, throwable) -> logAckUpdateError(eventId, throwable));
                     LOGGER.debug("error reason: {}, error code: {}", errorReason, errorCode);
 
                 } else if (exception instanceof NackedAmqpMessageException) {
@@ -215,7 +299,8 @@ public class EventStoreAspect {
 
                     String eventId = nackedAmqpMessageException.getFailedMessage().getHeaders().get("eventId", String.class);
                     String outputChannelName = nackedAmqpMessageException.getFailedMessage().getHeaders().get("outputChannelName", String.class);
-                    eventStoreService.updateEventAsReturned(eventId, outputChannelName);
+                    eventStoreService.resendReturnedEventAsync(eventId, outputChannelName, nackedAmqpMessageException.getFailedMessage())
+                            .whenComplete((matched, throwable) -> logAckUpdateError(eventId, throwable));
                     LOGGER.debug("error reason: {}", errorReason);
 
                 } else if (exception instanceof MessageDeliveryException) {
@@ -245,7 +330,9 @@ public class EventStoreAspect {
                      */
                     String eventId = message.getHeaders().get("eventId", String.class);
                     String outputChannelName = message.getHeaders().get("outputChannelName", String.class);
-                    eventStoreService.updateEventAsProduced(eventId, outputChannelName);
+                    eventStoreService.confirmEventPublished(eventId);
+                    eventStoreService.markEventAsProducedAsync(eventId, outputChannelName)
+                            .whenComplete((matched, throwable) -> logAckUpdateError(eventId, throwable));
                     LOGGER.debug("message published: {}", message.getPayload());
                 }
             }
@@ -253,4 +340,49 @@ public class EventStoreAspect {
         return proceedingJoinPoint.proceed(new Object[] {message});
     }
 
+    /**
+     * A duplicate is possible only if the message is redelivered by the broker, has been
+     * dead-lettered before, or is resent by the retry operation of the event store.
+     *
+     * <p>A message sent for the first time could still arrive after its resend has been
+     * consumed, if the first send was delayed beyond the message sending expiry, which
+     * is not detected without the duplicate check.</p>
+     */
+    private static boolean isDuplicatePossible(MessageHeaders headers) {
+        Boolean redelivered = headers.get(AmqpHeaders.REDELIVERED, Boolean.class);
+        if (redelivered != null && redelivered) {
+            return true;
+        }
+        Object death = headers.get("x-death");
+        if (death instanceof Collection && !((Collection<?>) death).isEmpty()) {
+            return true;
+        }
+        Object attemptCount = headers.get(EventStoreService.ATTEMPT_COUNT_HEADER);
+        return attemptCount instanceof Number && ((Number) attemptCount).longValue() > 1L;
+    }
+
+    /**
+     * The consumed ack is written synchronously unless it's coalesced, in which case it's
+     * handed to the coalescer without waiting for the bulk update. The consumed ack is never
+     * coalesced if duplicate is ignored, as it commits the consume claim.
+     */
+    private void markEventAsConsumed(String eventId, String outputChannelName) {
+        if (eventStoreService.isConsumedAckCoalesced()) {
+            eventStoreService.markEventAsConsumedAsync(eventId, outputChannelName)
+                    .whenComplete((matched, throwable) -> logAckUpdateError(eventId, throwable));
+        } else {
+            eventStoreService.markEventAsConsumed(eventId, outputChannelName);
+        }
+    }
+
+    /**
+     * The ack update could be completed asynchronously, a failed update leaves
+     * the event pending which is eventually picked up by the retry operation.
+     */
+    private void logAckUpdateError(String eventId, Throwable throwable) {
+        if (throwable != null) {
+            LOGGER.error("error updating event: {} {}", eventId, throwable.getMessage());
+        }
+    }
+
 }
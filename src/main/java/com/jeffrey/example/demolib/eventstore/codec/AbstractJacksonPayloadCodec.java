@@ -0,0 +1,39 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class for Jackson backed {@link EventPayloadCodec} implementations.
+ *
+ * <p>{@link ObjectReader} and {@link ObjectWriter} are immutable and thread-safe,
+ * they are built once per payload type and cached, so the type lookup and
+ * serializer resolution of the {@link ObjectMapper} is skipped on every call.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public abstract class AbstractJacksonPayloadCodec implements EventPayloadCodec {
+
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    protected final ObjectMapper objectMapper;
+
+    protected AbstractJacksonPayloadCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    protected ObjectReader readerFor(Class<?> payloadClass) {
+        return readers.computeIfAbsent(payloadClass, objectMapper::readerFor);
+    }
+
+    protected ObjectWriter writerFor(Class<?> payloadClass) {
+        return writers.computeIfAbsent(payloadClass, objectMapper::writerFor);
+    }
+
+}
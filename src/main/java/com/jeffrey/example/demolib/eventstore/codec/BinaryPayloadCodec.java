@@ -0,0 +1,56 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.bson.types.Binary;
+
+import java.io.IOException;
+
+/**
+ * A {@link EventPayloadCodec} which stores the payload as BSON binary, encoded
+ * with a binary Jackson data format such as Smile or CBOR. Binary formats are
+ * more compact and cheaper to parse than json, at the expense of the payload
+ * being opaque to any query against the event store.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class BinaryPayloadCodec extends AbstractJacksonPayloadCodec {
+
+    public static final String SMILE = "smile";
+
+    public static final String CBOR = "cbor";
+
+    private final String name;
+
+    public BinaryPayloadCodec(String name, ObjectMapper objectMapper) {
+        super(objectMapper);
+        this.name = name;
+    }
+
+    public static BinaryPayloadCodec smile() {
+        return new BinaryPayloadCodec(SMILE, new ObjectMapper(new SmileFactory()));
+    }
+
+    public static BinaryPayloadCodec cbor() {
+        return new BinaryPayloadCodec(CBOR, new ObjectMapper(new CBORFactory()));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object encode(Object payload) throws IOException {
+        return writerFor(payload.getClass()).writeValueAsBytes(payload);
+    }
+
+    @Override
+    public <T> T decode(Object value, Class<T> payloadClass) throws IOException {
+        // the mongo driver reads generic binary subtype as Binary
+        byte[] bytes = value instanceof Binary ? ((Binary) value).getData() : (byte[]) value;
+        return readerFor(payloadClass).readValue(bytes);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+
+import java.io.IOException;
+
+/**
+ * The default {@link EventPayloadCodec} which stores the payload as native BSON
+ * value, so that the payload remains queryable in the event store.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class BsonPayloadCodec extends AbstractJacksonPayloadCodec {
+
+    public BsonPayloadCodec(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public String getName() {
+        return DomainEvent.ENCODING_BSON;
+    }
+
+    @Override
+    public Object encode(Object payload) throws IOException {
+        return objectMapper.convertValue(payload, Object.class);
+    }
+
+    @Override
+    public <T> T decode(Object value, Class<T> payloadClass) throws IOException {
+        if (payloadClass.isInstance(value)) {
+            return payloadClass.cast(value);
+        }
+        return readerFor(payloadClass).readValue(objectMapper.valueToTree(value));
+    }
+
+    /**
+     * The BSON value is serialized as json bytes when compressed, it is no
+     * longer queryable in the event store.
+     */
+    @Override
+    public byte[] toBytes(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public Object fromBytes(byte[] bytes) throws IOException {
+        return objectMapper.readValue(bytes, Object.class);
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A {@link PayloadCompressor} backed by {@link Deflater}, favors compression ratio over speed.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class DeflatePayloadCompressor implements PayloadCompressor {
+
+    public static final String NAME = "deflate";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 2);
+        try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(outputStream, deflater)) {
+            deflaterOutputStream.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException {
+        try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+}
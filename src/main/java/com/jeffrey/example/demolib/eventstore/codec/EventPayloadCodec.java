@@ -0,0 +1,74 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import org.bson.types.Binary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interface to be implemented by codec which converts the message's payload
+ * to/from the value stored in the event store.
+ *
+ * <p>Any bean implementing this interface is registered in the
+ * {@link EventPayloadCodecRegistry} under its {@link #getName()}, and could
+ * be selected per output channel with the property
+ * {@code com.jeffrey.example.eventstore.channels.<channel>.payloadCodec}.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public interface EventPayloadCodec {
+
+    /**
+     * The unique name of the codec, which is persisted as the encoding of the event.
+     *
+     * @return name of the codec
+     */
+    String getName();
+
+    /**
+     * Encode the message's payload into a value which could be stored in the event store,
+     * either a BSON compatible structure, a {@link String} or a byte array.
+     *
+     * @param payload the message's payload
+     * @return the encoded value
+     * @throws IOException if the payload cannot be encoded
+     */
+    Object encode(Object payload) throws IOException;
+
+    /**
+     * Decode the value stored in the event store back into the message's payload.
+     *
+     * @param value the encoded value read from the event store
+     * @param payloadClass the {@link Class} of the payload
+     * @param <T> type of the payload
+     * @return the decoded payload
+     * @throws IOException if the value cannot be decoded
+     */
+    <T> T decode(Object value, Class<T> payloadClass) throws IOException;
+
+    /**
+     * Convert the encoded value into bytes, so that it could be compressed.
+     *
+     * @param value the value returned by {@link #encode(Object)}
+     * @return bytes of the encoded value
+     * @throws IOException if the value cannot be converted
+     */
+    default byte[] toBytes(Object value) throws IOException {
+        if (value instanceof byte[]) return (byte[]) value;
+        if (value instanceof Binary) return ((Binary) value).getData();
+        if (value instanceof String) return ((String) value).getBytes(StandardCharsets.UTF_8);
+        throw new IOException("unsupported encoded value: " + value.getClass().getName());
+    }
+
+    /**
+     * Restore the encoded value from the bytes returned by {@link #toBytes(Object)}.
+     *
+     * @param bytes bytes of the encoded value
+     * @return the encoded value accepted by {@link #decode(Object, Class)}
+     * @throws IOException if the bytes cannot be converted
+     */
+    default Object fromBytes(byte[] bytes) throws IOException {
+        return bytes;
+    }
+
+}
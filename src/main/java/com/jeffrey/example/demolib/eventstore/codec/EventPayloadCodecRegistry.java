@@ -0,0 +1,185 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.util.ObjectMapperFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of all available {@link EventPayloadCodec}.
+ *
+ * <p>The built-in codecs are {@code bson} (default), {@code json}, {@code smile}
+ * and {@code cbor}, the built-in compressors are {@code deflate} and {@code lz4}.
+ * Any {@link EventPayloadCodec} bean defined by the application is registered as
+ * well, and overrides the built-in codec of the same name.</p>
+ *
+ * <p>The registry also caches the resolved payload {@link Class} keyed by the
+ * payload type persisted with the event, so the class loader is not consulted
+ * for every resend, and the codec, compressor and compression threshold of each
+ * output channel, so the properties are not resolved for every publish.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("EventPayloadCodecRegistry")
+public class EventPayloadCodecRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventPayloadCodecRegistry.class);
+
+    private static final String PAYLOAD_CODEC_PROPERTY = "payloadCodec";
+
+    private static final String COMPRESSION_PROPERTY = "compression";
+
+    private static final String COMPRESSION_THRESHOLD_PROPERTY = "compressionThresholdBytes";
+
+    private static final String NO_COMPRESSION = "none";
+
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    private final Map<String, EventPayloadCodec> codecs = new ConcurrentHashMap<>();
+
+    private final Map<String, PayloadCompressor> compressors = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Class<?>> payloadTypes = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ChannelEncoding> channelEncodings = new ConcurrentHashMap<>();
+
+    private EventStoreChannelProperties channelProperties;
+
+    public EventPayloadCodecRegistry(
+            @Autowired EventStoreChannelProperties channelProperties,
+            @Autowired(required = false) List<EventPayloadCodec> customCodecs
+    ) {
+        this.channelProperties = channelProperties;
+
+        register(new BsonPayloadCodec(ObjectMapperFactory.getObjectMapper()));
+        register(new JsonPayloadCodec(ObjectMapperFactory.getObjectMapper()));
+        register(BinaryPayloadCodec.smile());
+        register(BinaryPayloadCodec.cbor());
+
+        compressors.put(DeflatePayloadCompressor.NAME, new DeflatePayloadCompressor());
+        compressors.put(Lz4PayloadCompressor.NAME, new Lz4PayloadCompressor());
+
+        for (EventPayloadCodec codec:customCodecs == null ? Collections.<EventPayloadCodec>emptyList() : customCodecs) {
+            LOGGER.debug("register custom payload codec: {}", codec.getName());
+            register(codec);
+        }
+    }
+
+    private void register(EventPayloadCodec codec) {
+        codecs.put(codec.getName(), codec);
+    }
+
+    /**
+     * Lookup the {@link EventPayloadCodec} by name.
+     *
+     * @param name the name of the codec, which is the encoding persisted with the event
+     * @return {@link EventPayloadCodec}
+     * @throws IllegalArgumentException if no codec is registered with the name
+     */
+    public EventPayloadCodec getCodec(String name) throws IllegalArgumentException {
+        EventPayloadCodec codec = codecs.get(name == null ? DomainEvent.ENCODING_BSON : name);
+        if (codec == null) {
+            throw new IllegalArgumentException("unknown payload codec: " + name);
+        }
+        return codec;
+    }
+
+    /**
+     * Lookup the {@link EventPayloadCodec} configured for the output channel.
+     *
+     * @param outputChannelName name of the output channel
+     * @return {@link EventPayloadCodec}
+     */
+    public EventPayloadCodec getCodecForChannel(String outputChannelName) {
+        return getChannelEncoding(outputChannelName).codec;
+    }
+
+    /**
+     * Lookup the {@link PayloadCompressor} by name.
+     *
+     * @param name the name of the compressor, which is the compression persisted with the event
+     * @return {@link PayloadCompressor}
+     * @throws IllegalArgumentException if no compressor is registered with the name
+     */
+    public PayloadCompressor getCompressor(String name) throws IllegalArgumentException {
+        PayloadCompressor compressor = compressors.get(name);
+        if (compressor == null) {
+            throw new IllegalArgumentException("unknown payload compressor: " + name);
+        }
+        return compressor;
+    }
+
+    /**
+     * Lookup the {@link PayloadCompressor} configured for the output channel.
+     *
+     * @param outputChannelName name of the output channel
+     * @return {@link PayloadCompressor} or null if compression is disabled for the channel
+     */
+    public PayloadCompressor getCompressorForChannel(String outputChannelName) {
+        return getChannelEncoding(outputChannelName).compressor;
+    }
+
+    /**
+     * The minimum size in bytes of the encoded payload to be compressed, smaller payload
+     * is not worth the CPU and usually doesn't shrink.
+     *
+     * @param outputChannelName name of the output channel
+     * @return the compression threshold in bytes
+     */
+    public int getCompressionThreshold(String outputChannelName) {
+        return getChannelEncoding(outputChannelName).compressionThreshold;
+    }
+
+    private ChannelEncoding getChannelEncoding(String outputChannelName) {
+        ChannelEncoding channelEncoding = channelEncodings.get(outputChannelName);
+        if (channelEncoding == null) {
+            channelEncoding = new ChannelEncoding(outputChannelName);
+            channelEncodings.putIfAbsent(outputChannelName, channelEncoding);
+        }
+        return channelEncoding;
+    }
+
+    /**
+     * Resolve the payload {@link Class} from the payload type persisted with the event.
+     *
+     * @param payloadType the fully qualified class name of the payload
+     * @return the resolved {@link Class}
+     * @throws ClassNotFoundException if the class cannot be found
+     */
+    public Class<?> resolvePayloadType(String payloadType) throws ClassNotFoundException {
+        Class<?> payloadClass = payloadTypes.get(payloadType);
+        if (payloadClass == null) {
+            payloadClass = ClassUtils.forName(payloadType, ClassUtils.getDefaultClassLoader());
+            payloadTypes.putIfAbsent(payloadType, payloadClass);
+        }
+        return payloadClass;
+    }
+
+    /**
+     * The codec, compressor and compression threshold resolved for an output channel.
+     */
+    private class ChannelEncoding {
+        private final EventPayloadCodec codec;
+        private final PayloadCompressor compressor; // null if compression is disabled
+        private final int compressionThreshold;
+
+        private ChannelEncoding(String outputChannelName) {
+            this.codec = getCodec(channelProperties.getProperty(
+                    outputChannelName, PAYLOAD_CODEC_PROPERTY, DomainEvent.ENCODING_BSON));
+            String compression = channelProperties.getProperty(outputChannelName, COMPRESSION_PROPERTY, NO_COMPRESSION);
+            this.compressor = NO_COMPRESSION.equals(compression) ? null : getCompressor(compression);
+            this.compressionThreshold = channelProperties.getProperty(
+                    outputChannelName, COMPRESSION_THRESHOLD_PROPERTY, Integer.class, DEFAULT_COMPRESSION_THRESHOLD);
+        }
+    }
+
+}
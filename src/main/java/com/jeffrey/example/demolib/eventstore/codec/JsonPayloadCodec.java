@@ -0,0 +1,41 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link EventPayloadCodec} which stores the payload as json string.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class JsonPayloadCodec extends AbstractJacksonPayloadCodec {
+
+    public static final String NAME = "json";
+
+    public JsonPayloadCodec(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Object encode(Object payload) throws IOException {
+        return writerFor(payload.getClass()).writeValueAsString(payload);
+    }
+
+    @Override
+    public <T> T decode(Object value, Class<T> payloadClass) throws IOException {
+        return readerFor(payloadClass).readValue((String) value);
+    }
+
+    @Override
+    public Object fromBytes(byte[] bytes) throws IOException {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link PayloadCompressor} backed by LZ4, favors speed over compression ratio.
+ *
+ * <p>The compressed block is prefixed with the original length as a 4-byte
+ * big-endian integer, which is required by the decompressor.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class Lz4PayloadCompressor implements PayloadCompressor {
+
+    public static final String NAME = "lz4";
+
+    private static final int LENGTH_PREFIX = 4;
+
+    private final LZ4Factory factory = LZ4Factory.fastestInstance();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException {
+        LZ4Compressor compressor = factory.fastCompressor();
+        int maxCompressedLength = compressor.maxCompressedLength(bytes.length);
+        byte[] compressed = new byte[LENGTH_PREFIX + maxCompressedLength];
+        ByteBuffer.wrap(compressed).putInt(bytes.length);
+        int compressedLength = compressor.compress(bytes, 0, bytes.length, compressed, LENGTH_PREFIX, maxCompressedLength);
+        return Arrays.copyOf(compressed, LENGTH_PREFIX + compressedLength);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException {
+        int originalLength = ByteBuffer.wrap(bytes).getInt();
+        byte[] decompressed = new byte[originalLength];
+        factory.fastDecompressor().decompress(bytes, LENGTH_PREFIX, decompressed, 0, originalLength);
+        return decompressed;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import java.io.IOException;
+
+/**
+ * Interface to be implemented by compressor which is applied to the encoded
+ * payload before it is written into the event store.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public interface PayloadCompressor {
+
+    /**
+     * The unique name of the compressor, which is persisted as the compression of the event.
+     *
+     * @return name of the compressor
+     */
+    String getName();
+
+    byte[] compress(byte[] bytes) throws IOException;
+
+    byte[] decompress(byte[] bytes) throws IOException;
+
+}
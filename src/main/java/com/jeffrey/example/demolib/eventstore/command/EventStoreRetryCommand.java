@@ -0,0 +1,14 @@
+package com.jeffrey.example.demolib.eventstore.command;
+
+
+@FunctionalInterface
+public interface EventStoreRetryCommand {
+
+    /**
+     * Execute one cycle of the retry operation.
+     *
+     * @return the no. of pending events resent successfully by the cycle
+     */
+    int fetchAndResend();
+
+}
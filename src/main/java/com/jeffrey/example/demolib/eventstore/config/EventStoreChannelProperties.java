@@ -0,0 +1,40 @@
+package com.jeffrey.example.demolib.eventstore.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolve event store properties which could be overridden per output channel.
+ *
+ * <p>A channel specific property is looked up under
+ * {@code com.jeffrey.example.eventstore.channels.<channel>.<key>}, if absent
+ * the global property {@code com.jeffrey.example.eventstore.<key>} is used,
+ * otherwise the supplied default value.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("EventStoreChannelProperties")
+public class EventStoreChannelProperties {
+
+    private static final String PREFIX = "com.jeffrey.example.eventstore";
+
+    private Environment environment;
+
+    public EventStoreChannelProperties(@Autowired Environment environment) {
+        this.environment = environment;
+    }
+
+    public String getProperty(String outputChannelName, String key, String defaultValue) {
+        return getProperty(outputChannelName, key, String.class, defaultValue);
+    }
+
+    public <T> T getProperty(String outputChannelName, String key, Class<T> targetType, T defaultValue) {
+        T value = environment.getProperty(String.format("%s.channels.%s.%s", PREFIX, outputChannelName, key), targetType);
+        if (value != null) {
+            return value;
+        }
+        return environment.getProperty(String.format("%s.%s", PREFIX, key), targetType, defaultValue);
+    }
+
+}
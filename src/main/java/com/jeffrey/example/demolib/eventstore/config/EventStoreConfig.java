@@ -1,7 +1,8 @@
 package com.jeffrey.example.demolib.eventstore.config;
 
 import com.jeffrey.example.demolib.eventstore.aop.EventStoreAspect;
-import com.jeffrey.example.demolib.eventstore.service.EventStoreService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreRetryService;
+import com.jeffrey.example.demolib.eventstore.util.TimeOrderedIdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,6 +36,9 @@ public class EventStoreConfig {
     @Value("${com.jeffrey.example.eventstore.timezone:#{null}}") // zoneIdString default null if undefined
     String zoneIdString;
 
+    @Value("${com.jeffrey.example.eventstore.idGenerator:random}") // random or timeOrdered, default to random if undefined
+    String idGeneratorType;
+
     /**
      * Obtain a {@link RetryTemplate} for executing the retry operation of event store.
      *
@@ -44,7 +48,8 @@ public class EventStoreConfig {
      * The next retry should only be scheduled when the previous attempt finished, this avoid
      * scenario where the current retry still processing the messages while the next retry is
      * triggered.
-     * See also {@link EventStoreService#postApplicationStartup()}
+     * The retry routine of event store itself is scheduled with an adaptive cadence instead,
+     * see {@link EventStoreRetryService#startAdaptiveAsync}
      * </p>
      * @return {@link RetryTemplate}
      */
@@ -83,10 +88,17 @@ public class EventStoreConfig {
      *
      * <p>This provides a better balance between securely random ids and performance.</p>
      *
-     * @return an {@link AlternativeJdkIdGenerator}
+     * <p>If {@code idGenerator} is configured as {@code timeOrdered}, a {@link TimeOrderedIdGenerator}
+     * is used instead, so that inserts append to the right edge of the {@code _id} index rather
+     * than landing randomly across the whole index.</p>
+     *
+     * @return an {@link AlternativeJdkIdGenerator} or {@link TimeOrderedIdGenerator}
      */
     @Bean("eventIdGenerator")
     public IdGenerator idGenerator() {
+        if ("timeOrdered".equals(idGeneratorType)) {
+            return new TimeOrderedIdGenerator(eventStoreClock());
+        }
         return new AlternativeJdkIdGenerator();
     }
 
@@ -0,0 +1,84 @@
+package com.jeffrey.example.demolib.eventstore.config;
+
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreOperation;
+import com.mongodb.WriteConcern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolve the durability profile of each {@link EventStoreOperation}.
+ *
+ * <p>The profile of an operation is looked up under
+ * {@code com.jeffrey.example.eventstore.durability.<operation>} with the keys:</p>
+ * <ul>
+ *     <li>{@code w}: {@code majority}, the no. of acknowledging members or a tag set name</li>
+ *     <li>{@code journal}: whether the write must be written to the on-disk journal</li>
+ *     <li>{@code wtimeoutMillis}: the time limit of the write concern</li>
+ * </ul>
+ *
+ * <p>The creation of event defaults to {@code majority}, any other operation without a
+ * profile inherits the write concern of the connection string. The profile is not
+ * applied to the operation executed within a transaction, which is governed by the
+ * write concern of the transaction.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("EventStoreDurabilityProperties")
+public class EventStoreDurabilityProperties {
+
+    private static final String PREFIX = "com.jeffrey.example.eventstore.durability";
+
+    private Environment environment;
+
+    public EventStoreDurabilityProperties(@Autowired Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Obtain the {@link WriteConcern} of an operation.
+     *
+     * @param operation the {@link EventStoreOperation}
+     * @return the {@link WriteConcern} configured, null if the operation should inherit
+     * the default write concern
+     */
+    public WriteConcern getWriteConcern(EventStoreOperation operation) {
+        String w = getProperty(operation, "w", String.class,
+                operation == EventStoreOperation.CREATE ? "majority" : null);
+        Boolean journal = getProperty(operation, "journal", Boolean.class, null);
+        Long wtimeoutMillis = getProperty(operation, "wtimeoutMillis", Long.class, null);
+        if (StringUtils.isEmpty(w) && journal == null && wtimeoutMillis == null) {
+            return null;
+        }
+
+        WriteConcern writeConcern = StringUtils.isEmpty(w) ? WriteConcern.ACKNOWLEDGED : parseW(w);
+        if (journal != null) {
+            writeConcern = writeConcern.withJournal(journal);
+        }
+        if (wtimeoutMillis != null) {
+            writeConcern = writeConcern.withWTimeout(wtimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return writeConcern;
+    }
+
+    private static WriteConcern parseW(String w) {
+        if ("majority".equalsIgnoreCase(w)) {
+            return WriteConcern.MAJORITY;
+        }
+        try {
+            return new WriteConcern(Integer.parseInt(w));
+        } catch (NumberFormatException e) {
+            // a tag set name
+            return new WriteConcern(w);
+        }
+    }
+
+    private <T> T getProperty(EventStoreOperation operation, String key, Class<T> targetType, T defaultValue) {
+        return environment.getProperty(
+                String.format("%s.%s.%s", PREFIX, operation.getPropertyKey(), key), targetType, defaultValue);
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.jeffrey.example.demolib.eventstore.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration of the JDBC event store, the {@link DataSource} is provided
+ * by the application (or the spring boot auto-configuration).
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Configuration
+@EnableTransactionManagement
+public class JdbcEventStoreConfig {
+
+    @Bean("eventStoreJdbcTemplate")
+    public JdbcTemplate eventStoreJdbcTemplate(@Autowired DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean("eventStoreTransactionManager")
+    public DataSourceTransactionManager eventStoreTransactionManager(@Autowired DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+}
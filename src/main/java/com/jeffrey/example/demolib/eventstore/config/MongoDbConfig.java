@@ -14,6 +14,7 @@ import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.config.AbstractMongoClientConfiguration;
 import org.springframework.data.mongodb.core.SimpleMongoClientDbFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.util.Assert;
 
@@ -22,6 +23,12 @@ import org.springframework.util.Assert;
 public class MongoDbConfig extends AbstractMongoClientConfiguration {
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoDbConfig.class);
 
+    /**
+     * Replacement of dots in map keys, event headers are stored as BSON sub-document
+     * where a field name cannot contain dots.
+     */
+    public static final String MAP_KEY_DOT_REPLACEMENT = "\uff0e";
+
     @Value("${spring.data.mongodb.uri:#{null}}")
     protected String mongoDbConnectionString;
 
@@ -33,7 +40,7 @@ public class MongoDbConfig extends AbstractMongoClientConfiguration {
         return new SimpleMongoClientDbFactory(connectionString);
     }
 
-    @Bean("mongoTransactionManager")
+    @Bean({"mongoTransactionManager", "eventStoreTransactionManager"})
     MongoTransactionManager transactionManager(
             @Autowired
             @Qualifier("mongoDbFactory")
@@ -51,6 +58,14 @@ public class MongoDbConfig extends AbstractMongoClientConfiguration {
         return transactionManager;
     }
 
+    @Bean
+    @Override
+    public MappingMongoConverter mappingMongoConverter() throws Exception {
+        MappingMongoConverter converter = super.mappingMongoConverter();
+        converter.setMapKeyDotReplacement(MAP_KEY_DOT_REPLACEMENT);
+        return converter;
+    }
+
     @Override
     protected String getDatabaseName() {
         String dbName = mongoDbFactory().getDb().getName();
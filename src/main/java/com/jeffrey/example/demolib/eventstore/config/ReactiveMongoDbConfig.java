@@ -0,0 +1,52 @@
+package com.jeffrey.example.demolib.eventstore.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.util.Assert;
+
+/**
+ * Configuration of the MongoDB Reactive Streams driver for the
+ * {@link com.jeffrey.example.demolib.eventstore.dao.ReactiveEventStoreDao},
+ * sharing the connection string and the mapping converter with {@link MongoDbConfig}.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Configuration
+public class ReactiveMongoDbConfig {
+
+    @Value("${spring.data.mongodb.uri:#{null}}")
+    protected String mongoDbConnectionString;
+
+    @Bean(name = "eventStoreReactiveMongoClient", destroyMethod = "close")
+    public MongoClient eventStoreReactiveMongoClient() {
+        Assert.notNull(mongoDbConnectionString, "mongoDbConnectionString is null");
+        return MongoClients.create(new ConnectionString(mongoDbConnectionString));
+    }
+
+    @Bean("eventStoreReactiveMongoDatabaseFactory")
+    public ReactiveMongoDatabaseFactory eventStoreReactiveMongoDatabaseFactory(
+            @Autowired @Qualifier("eventStoreReactiveMongoClient") MongoClient mongoClient
+    ) {
+        ConnectionString connectionString = new ConnectionString(mongoDbConnectionString);
+        return new SimpleReactiveMongoDatabaseFactory(mongoClient, connectionString.getDatabase());
+    }
+
+    @Bean("eventStoreReactiveMongoTemplate")
+    public ReactiveMongoTemplate eventStoreReactiveMongoTemplate(
+            @Autowired @Qualifier("eventStoreReactiveMongoDatabaseFactory") ReactiveMongoDatabaseFactory databaseFactory,
+            @Autowired MappingMongoConverter mappingMongoConverter
+    ) {
+        return new ReactiveMongoTemplate(databaseFactory, mappingMongoConverter);
+    }
+
+}
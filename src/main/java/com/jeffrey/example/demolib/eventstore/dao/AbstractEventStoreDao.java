@@ -5,6 +5,9 @@ import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
 
 import java.time.Clock;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Base class for {@link MongoEventStoreDao} implementations providing common
@@ -14,12 +17,17 @@ import java.util.Collection;
  */
 public abstract class AbstractEventStoreDao implements EventStoreDao {
 
+    public abstract boolean isTransactionSupported();
+
     public abstract void initializeDb(Collection<String> outputChannelNames);
 
     public abstract void configureClock(Clock clock);
 
     public abstract DomainEvent createEvent(
-            String eventId, String header, String payload, String payloadClassName, String outputChannelName);
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName);
+
+    public abstract List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName);
 
     public abstract DomainEvent updateReturnedTimestamp(String eventId, String outputChannelName);
 
@@ -29,6 +37,109 @@ public abstract class AbstractEventStoreDao implements EventStoreDao {
 
     public abstract DomainEvent updateConsumedTimestamp(String eventId, String outputChannelName);
 
+    /**
+     * A non-atomic fallback which only checks the consumed timestamp, concurrent
+     * deliveries of the same event are not prevented. Implementations supporting
+     * a conditional update should override this.
+     */
+    public ConsumeClaim claimConsume(String eventId, String consumerId, long leaseTimeInSec, String outputChannelName) {
+        return hasConsumedTimeStamp(eventId, outputChannelName) ? ConsumeClaim.CONSUMED : ConsumeClaim.CLAIMED;
+    }
+
+    /**
+     * Nothing to release if the claim is not supported.
+     */
+    public void releaseConsume(String eventId, String consumerId, String outputChannelName) {}
+
+    /**
+     * Fallback to the document-returning update, implementations supporting a plain
+     * update should override this.
+     */
+    public boolean markReturned(String eventId, String outputChannelName) {
+        return updateReturnedTimestamp(eventId, outputChannelName) != null;
+    }
+
+    /**
+     * The time of the next attempt is ignored if the targeted resend is not supported,
+     * implementations supporting {@link #claimReturned(String, String)} should override this.
+     */
+    public boolean markReturned(String eventId, long retryDelayMillis, String outputChannelName) {
+        return markReturned(eventId, outputChannelName);
+    }
+
+    /**
+     * The claim is always refused if the targeted resend is not supported, the returned
+     * event is left to the retry operation.
+     */
+    public long claimReturned(String eventId, String outputChannelName) {
+        return 0L;
+    }
+
+    /**
+     * Fallback to the document-returning update, implementations supporting a plain
+     * update should override this.
+     */
+    public boolean markProduced(String eventId, String outputChannelName) {
+        return updateProducedTimestamp(eventId, outputChannelName) != null;
+    }
+
+    /**
+     * Fallback to the document-returning update, implementations supporting a plain
+     * update should override this.
+     */
+    public boolean markConsumed(String eventId, String outputChannelName) {
+        return updateConsumedTimestamp(eventId, outputChannelName) != null;
+    }
+
+    /**
+     * Apply the updates one by one, the timestamp is taken by the individual update
+     * rather than the {@link EventAckUpdate}. Implementations supporting bulk updates
+     * should override this.
+     */
+    public void updateTimestamps(Collection<EventAckUpdate> ackUpdates, String outputChannelName) {
+        for (EventAckUpdate ackUpdate:ackUpdates) {
+            switch (ackUpdate.getType()) {
+                case RETURNED:
+                    updateReturnedTimestamp(ackUpdate.getEventId(), outputChannelName);
+                    break;
+                case PRODUCED:
+                    updateProducedTimestamp(ackUpdate.getEventId(), outputChannelName);
+                    break;
+                case CONSUMED:
+                    updateConsumedTimestamp(ackUpdate.getEventId(), outputChannelName);
+                    break;
+            }
+        }
+    }
+
     public abstract void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand);
 
+    /**
+     * The attempt count is not limited if the quarantine is not supported, otherwise the
+     * exhausted events would be neither resent nor quarantined.
+     */
+    public void filterPendingProducerAckOrReturned(String outputChannelName, long maxAttempts, EventStoreCallbackCommand callbackCommand) {
+        filterPendingProducerAckOrReturned(outputChannelName, callbackCommand);
+    }
+
+    /**
+     * Nothing is quarantined if the quarantine is not supported, the events are resent
+     * regardless of their attempt count.
+     */
+    public int quarantineEvents(String outputChannelName, long maxAttempts) {
+        return 0;
+    }
+
+    public List<DomainEvent> findQuarantined(String outputChannelName, int limit) {
+        return Collections.emptyList();
+    }
+
+    public long countQuarantined(String outputChannelName) {
+        return 0L;
+    }
+
+    public int reinjectQuarantined(String outputChannelName, Collection<String> eventIds) {
+        return 0;
+    }
+
 }
@@ -0,0 +1,33 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+/**
+ * The outcome of claiming a {@link com.jeffrey.example.demolib.eventstore.entity.DomainEvent}
+ * for consuming.
+ *
+ * @see EventStoreDao#claimConsume(String, String, long, String)
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public enum ConsumeClaim {
+
+    /**
+     * The event is claimed by the caller, it should be processed and then committed
+     */
+    CLAIMED,
+
+    /**
+     * The event has been consumed, it should be skipped
+     */
+    CONSUMED,
+
+    /**
+     * The event is being consumed by another consumer whose lease has not expired
+     */
+    CLAIMED_BY_OTHERS,
+
+    /**
+     * The event doesn't exist in the event store
+     */
+    NOT_FOUND
+
+}
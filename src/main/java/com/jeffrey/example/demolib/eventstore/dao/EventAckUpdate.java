@@ -0,0 +1,71 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import java.time.Instant;
+
+/**
+ * A pending update of an ack timestamp of a {@link com.jeffrey.example.demolib.eventstore.entity.DomainEvent},
+ * captured when the ack is received and written later as part of a bulk update.
+ *
+ * @see EventStoreDao#updateTimestamps(java.util.Collection, String)
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class EventAckUpdate {
+
+    /**
+     * The kind of ack and the field of the event it updates
+     */
+    public enum Type {
+        RETURNED("returnedOn", EventStoreOperation.RETURNED_ACK),
+        PRODUCED("producerAckOn", EventStoreOperation.PRODUCED_ACK),
+        CONSUMED("consumerAckOn", EventStoreOperation.CONSUMED_ACK);
+
+        private final String fieldName;
+        private final EventStoreOperation operation;
+
+        Type(String fieldName, EventStoreOperation operation) {
+            this.fieldName = fieldName;
+            this.operation = operation;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public EventStoreOperation getOperation() {
+            return operation;
+        }
+    }
+
+    private final String eventId;
+    private final Type type;
+    private final Instant timestamp;
+
+    public EventAckUpdate(String eventId, Type type, Instant timestamp) {
+        this.eventId = eventId;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "EventAckUpdate{" +
+                "eventId='" + eventId + '\'' +
+                ", type=" + type +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+
+}
@@ -7,6 +7,7 @@ import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
 import java.time.Clock;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface to be implemented by event store dao which
@@ -21,11 +22,20 @@ import java.util.List;
  *
  * @see AbstractEventStoreDao
  * @see MongoEventStoreDao
+ * @see JournalEventStoreDao
  *
  * @author Jeffrey Garcia Wong
  */
 public interface EventStoreDao {
 
+    /**
+     * Whether the event store participates in transaction, if not the event is always written
+     * without transaction before the message is sent, and the retry operation is relied on.
+     *
+     * @return true if transaction is supported, false if otherwise
+     */
+    boolean isTransactionSupported();
+
     /**
      * Defines all the necessary operations to initialize the event store's database
      * @param outputChannelNames a {@link Collection} of output channel names
@@ -44,13 +54,26 @@ public interface EventStoreDao {
      * Create a {@link DomainEvent} with the supplied attributes and write it into the event store.
      *
      * @param eventId the unique ID of the event
-     * @param header the message's header in json string
-     * @param payload the message's payload in json string
+     * @param header the message's header as a BSON compatible {@link Map}
+     * @param payload the message's payload encoded by the payload codec
      * @param payloadClass the {@link Class} name of the payload
+     * @param encoding name of the payload codec which encoded the payload
+     * @param compression name of the compressor applied to the payload, null if uncompressed
      * @param outputChannelName name of channel where the message is published to
      * @return a {@link DomainEvent}
      */
-    DomainEvent createEvent(String eventId, String header, String payload, String payloadClass, String outputChannelName);
+    DomainEvent createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClass,
+            String encoding, String compression, String outputChannelName);
+
+    /**
+     * Write a batch of {@link DomainEvent} into the event store with a single bulk operation.
+     *
+     * @param domainEvents the {@link DomainEvent}s to be written
+     * @param outputChannelName name of channel where the messages are published to
+     * @return the {@link DomainEvent}s written
+     */
+    List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName);
 
     /**
      * Update the timestamp of the {@link DomainEvent} when the message is returned/rejected
@@ -91,6 +114,91 @@ public interface EventStoreDao {
      */
     DomainEvent updateConsumedTimestamp(String eventId, String outputChannelName);
 
+    /**
+     * Atomically claim the {@link DomainEvent} for consuming, the claim is granted only if
+     * the event is not consumed and not claimed by any other consumer, or the lease of the
+     * other consumer has expired. The claim is committed by {@link #markConsumed(String, String)}
+     * or released by {@link #releaseConsume(String, String, String)}.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be claimed
+     * @param consumerId the unique id of the consumer
+     * @param leaseTimeInSec the time after which the claim expires if it's neither committed nor released
+     * @param outputChannelName name of channel where the message is published to
+     * @return the {@link ConsumeClaim} outcome
+     */
+    ConsumeClaim claimConsume(String eventId, String consumerId, long leaseTimeInSec, String outputChannelName);
+
+    /**
+     * Release the claim of the {@link DomainEvent} if it's still held by the consumer, so that
+     * the event could be claimed again immediately.
+     *
+     * @param eventId the id of the {@link DomainEvent} claimed
+     * @param consumerId the unique id of the consumer
+     * @param outputChannelName name of channel where the message is published to
+     */
+    void releaseConsume(String eventId, String consumerId, String outputChannelName);
+
+    /**
+     * Mark the {@link DomainEvent} as returned/rejected by remote broker without fetching
+     * the updated {@link DomainEvent}.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be updated
+     * @param outputChannelName name of channel where the message is published to
+     * @return true if the {@link DomainEvent} is found and updated, false if otherwise
+     */
+    boolean markReturned(String eventId, String outputChannelName);
+
+    /**
+     * Mark the {@link DomainEvent} as returned/rejected by remote broker and persist the
+     * time of its next attempt, the event is not resent by the retry operation before then.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be updated
+     * @param retryDelayMillis the delay in milliseconds before the next attempt
+     * @param outputChannelName name of channel where the message is published to
+     * @return true if the {@link DomainEvent} is found and updated, false if otherwise
+     */
+    boolean markReturned(String eventId, long retryDelayMillis, String outputChannelName);
+
+    /**
+     * Atomically claim a returned {@link DomainEvent} for resending once its next attempt
+     * is due, the claim is granted only if the event is still returned and not consumed,
+     * and is not claimed by the retry operation.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be claimed
+     * @param outputChannelName name of channel where the message is published to
+     * @return the attempt count of the {@link DomainEvent} claimed, 0 if the claim is refused
+     */
+    long claimReturned(String eventId, String outputChannelName);
+
+    /**
+     * Mark the {@link DomainEvent} as published to remote broker without fetching the
+     * updated {@link DomainEvent}.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be updated
+     * @param outputChannelName name of channel where the message is published to
+     * @return true if the {@link DomainEvent} is found and updated, false if otherwise
+     */
+    boolean markProduced(String eventId, String outputChannelName);
+
+    /**
+     * Mark the {@link DomainEvent} as consumed without fetching the updated {@link DomainEvent}.
+     *
+     * @param eventId the id of the {@link DomainEvent} to be updated
+     * @param outputChannelName name of channel where the message is published to
+     * @return true if the {@link DomainEvent} is found and updated, false if otherwise
+     */
+    boolean markConsumed(String eventId, String outputChannelName);
+
+    /**
+     * Apply a batch of ack timestamp updates with as few round-trips as the event store
+     * allows. Each update is applied independently, an update of a {@link DomainEvent}
+     * which doesn't exist is ignored.
+     *
+     * @param ackUpdates the {@link EventAckUpdate}s to be applied
+     * @param outputChannelName name of channel where the messages are published to
+     */
+    void updateTimestamps(Collection<EventAckUpdate> ackUpdates, String outputChannelName);
+
     /**
      * Fetch any {@link DomainEvent} from the event store which has not been successfully
      * published to/returned by remote broker, once the data is fetched from database, trigger
@@ -101,6 +209,53 @@ public interface EventStoreDao {
      */
     void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand);
 
+    /**
+     * Fetch any pending {@link DomainEvent} as {@link #filterPendingProducerAckOrReturned(String, EventStoreCallbackCommand)}
+     * except the events whose attempt count has reached the max no. of attempts, which are
+     * left to be quarantined.
+     *
+     * @param outputChannelName name of channel where the message is published to
+     * @param maxAttempts the max no. of attempts of an event, 0 if unlimited
+     * @param callbackCommand the callback operation to be executed
+     */
+    void filterPendingProducerAckOrReturned(String outputChannelName, long maxAttempts, EventStoreCallbackCommand callbackCommand);
+
+    /**
+     * Move the pending {@link DomainEvent}s whose attempt count has reached the max no. of
+     * attempts into the quarantine of the output channel with a bulk operation, such that
+     * they are not resent anymore until re-injected.
+     *
+     * @param outputChannelName name of channel where the message is published to
+     * @param maxAttempts the max no. of attempts of an event
+     * @return the no. of {@link DomainEvent}s quarantined
+     */
+    int quarantineEvents(String outputChannelName, long maxAttempts);
+
+    /**
+     * Retrieve the quarantined {@link DomainEvent}s in the order they are quarantined.
+     *
+     * @param outputChannelName name of channel where the message is published to
+     * @param limit the max no. of {@link DomainEvent}s to retrieve
+     * @return list of {@link DomainEvent} in the quarantine
+     */
+    List<DomainEvent> findQuarantined(String outputChannelName, int limit);
+
+    /**
+     * @param outputChannelName name of channel where the message is published to
+     * @return the no. of {@link DomainEvent}s in the quarantine
+     */
+    long countQuarantined(String outputChannelName);
+
+    /**
+     * Move the quarantined {@link DomainEvent}s back to the event store with a bulk operation,
+     * the attempt count is reset so that they are resent by the retry operation again.
+     *
+     * @param outputChannelName name of channel where the message is published to
+     * @param eventIds the ids of the {@link DomainEvent}s to re-inject
+     * @return the no. of {@link DomainEvent}s re-injected
+     */
+    int reinjectQuarantined(String outputChannelName, Collection<String> eventIds);
+
     /**
      * Delete all {@link DomainEvent} in the event store
      *
@@ -0,0 +1,51 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+/**
+ * The classes of write operation of the {@link EventStoreDao}, each of which could be
+ * configured with its own durability.
+ *
+ * <p>Losing the creation of an event is not recoverable, while losing an ack only
+ * causes the event to be resent by the retry operation.</p>
+ *
+ * @see com.jeffrey.example.demolib.eventstore.config.EventStoreDurabilityProperties
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public enum EventStoreOperation {
+
+    /**
+     * Create one or more events
+     */
+    CREATE("create"),
+
+    /**
+     * Update the producer ack timestamp
+     */
+    PRODUCED_ACK("producedAck"),
+
+    /**
+     * Update the returned timestamp
+     */
+    RETURNED_ACK("returnedAck"),
+
+    /**
+     * Update the consumer ack timestamp, claim and release the event for consuming
+     */
+    CONSUMED_ACK("consumedAck"),
+
+    /**
+     * Claim the pending events for resending
+     */
+    RETRY_CLAIM("retryClaim");
+
+    private final String propertyKey;
+
+    EventStoreOperation(String propertyKey) {
+        this.propertyKey = propertyKey;
+    }
+
+    public String getPropertyKey() {
+        return propertyKey;
+    }
+
+}
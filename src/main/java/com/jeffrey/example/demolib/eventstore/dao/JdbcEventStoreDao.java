@@ -0,0 +1,506 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.util.DomainEventDocumentMapper;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * The JDBC implementation of {@link EventStoreDao}, compatible with PostgreSQL
+ * and testable against embedded H2.
+ *
+ * <p>All channels share a single table, every timestamp is persisted as epoch
+ * milliseconds so the event store is independent of the database and JVM timezone.
+ * The header and payload are persisted together as a BSON binary.</p>
+ *
+ * <p>A {@code state} column ({@code PENDING}, {@code PRODUCED}, {@code CONSUMED}) is
+ * maintained with every update, the pending event scan is served by an index on
+ * {@code (channel, written_on)} restricted to the rows not yet consumed (a partial
+ * index on PostgreSQL), so the index stays small regardless of the table size.</p>
+ *
+ * <p>The SQL is selected by the database product, a database other than PostgreSQL
+ * and H2 gets standard SQL only: standard types, {@code FETCH FIRST} instead of
+ * {@code LIMIT}, and the table is only created if it is missing from the database
+ * metadata.</p>
+ *
+ * <p>The pending events are claimed with {@code SELECT ... FOR UPDATE SKIP LOCKED} on
+ * PostgreSQL, rows locked by another node are skipped rather than waited for, so several
+ * nodes could drain the backlog in parallel. On any other database the locked rows are
+ * waited for, and skipped once the claim holding them is committed.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("JdbcEventStoreDao")
+public class JdbcEventStoreDao extends AbstractEventStoreDao {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcEventStoreDao.class);
+
+    private static final String PENDING = "PENDING";
+
+    private static final String PRODUCED = "PRODUCED";
+
+    private static final String CONSUMED = "CONSUMED";
+
+    private static final String COLUMNS = "id, channel, created_on, body, payload_type, encoding, compression, " +
+            "written_on, attempt_count, returned_on, producer_ack_on, consumer_ack_on";
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.expired.seconds:60}") // message sending expiry default to 60s
+    private long messageExpiredTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.batchSize:1000}") // default message count per retry to 1000
+    private int retryMessageBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.expiredTimeInSec:0}") // default to 0s if not defined
+    private int messageConsumerExpiryTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.jdbc.tableName:event_store}") // default table name if not defined
+    private String tableName;
+
+    @Value("${com.jeffrey.example.eventstore.jdbc.skipLocked:true}") // skip rows locked by other nodes if supported
+    private boolean skipLocked;
+
+    private Clock clock;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Dialect dialect;
+
+    public JdbcEventStoreDao(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired @Qualifier("eventStoreJdbcTemplate") JdbcTemplate jdbcTemplate,
+            @Autowired @Qualifier("eventStoreTransactionManager") PlatformTransactionManager transactionManager
+    ) {
+        this.clock = clock;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The database specific SQL
+     */
+    private enum Dialect {
+        POSTGRES(true, true, true, "BYTEA", "LIMIT ?"),
+        H2(false, false, true, "BYTEA", "LIMIT ?"),
+        // standard SQL only, the existence of the table is checked with the database metadata
+        GENERIC(false, false, false, "BLOB", "FETCH FIRST ? ROWS ONLY");
+
+        private final boolean partialIndexSupported;
+        private final boolean skipLockedSupported;
+        private final boolean ifNotExistsSupported;
+        private final String binaryType;
+        private final String limitClause;
+
+        Dialect(boolean partialIndexSupported, boolean skipLockedSupported, boolean ifNotExistsSupported,
+                String binaryType, String limitClause) {
+            this.partialIndexSupported = partialIndexSupported;
+            this.skipLockedSupported = skipLockedSupported;
+            this.ifNotExistsSupported = ifNotExistsSupported;
+            this.binaryType = binaryType;
+            this.limitClause = limitClause;
+        }
+
+        private static Dialect of(String databaseProductName) {
+            if (databaseProductName == null) return GENERIC;
+            String name = databaseProductName.toLowerCase(Locale.ROOT);
+            if (name.contains("postgres")) return POSTGRES;
+            if (name.equals("h2")) return H2;
+            return GENERIC;
+        }
+    }
+
+    private Dialect getDialect() {
+        if (dialect == null) {
+            try {
+                String databaseProductName = JdbcUtils.extractDatabaseMetaData(
+                        jdbcTemplate.getDataSource(), "getDatabaseProductName");
+                dialect = Dialect.of(databaseProductName);
+            } catch (MetaDataAccessException e) {
+                LOGGER.warn("unable to detect database product: {}", e.getMessage());
+                dialect = Dialect.GENERIC;
+            }
+            LOGGER.debug("event store jdbc dialect: {}", dialect);
+        }
+        return dialect;
+    }
+
+    @Override
+    public boolean isTransactionSupported() {
+        return true;
+    }
+
+    private boolean tableExists() {
+        try {
+            Boolean exists = (Boolean) JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), metaData -> {
+                // the table name may be stored in upper or lower case depending on the database
+                for (String name:Arrays.asList(tableName, tableName.toUpperCase(Locale.ROOT), tableName.toLowerCase(Locale.ROOT))) {
+                    try (ResultSet rs = metaData.getTables(null, null, name, new String[] {"TABLE"})) {
+                        if (rs.next()) return true;
+                    }
+                }
+                return false;
+            });
+            return Boolean.TRUE.equals(exists);
+        } catch (MetaDataAccessException e) {
+            LOGGER.warn("unable to lookup table: {} {}", tableName, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void initializeDb(Collection<String> outputChannelNames) {
+        Dialect dialect = getDialect();
+        if (!dialect.ifNotExistsSupported && tableExists()) {
+            LOGGER.debug("event store table already exists: {}", tableName);
+            return;
+        }
+        String ifNotExists = dialect.ifNotExistsSupported ? "IF NOT EXISTS " : "";
+
+        // a single table is shared by all channels
+        jdbcTemplate.execute("CREATE TABLE " + ifNotExists + tableName + " (" +
+                "id VARCHAR(64) NOT NULL PRIMARY KEY, " +
+                "channel VARCHAR(255) NOT NULL, " +
+                "created_on BIGINT NOT NULL, " +
+                "body " + dialect.binaryType + " NOT NULL, " +
+                "payload_type VARCHAR(255) NOT NULL, " +
+                "encoding VARCHAR(32), " +
+                "compression VARCHAR(32), " +
+                "state VARCHAR(16) NOT NULL, " +
+                "written_on BIGINT NOT NULL, " +
+                "attempt_count BIGINT NOT NULL, " +
+                "returned_on BIGINT, " +
+                "producer_ack_on BIGINT, " +
+                "consumer_ack_on BIGINT, " +
+                "consuming_by VARCHAR(64), " +
+                "consume_lease_expires_on BIGINT)");
+
+        if (dialect.partialIndexSupported) {
+            jdbcTemplate.execute("CREATE INDEX " + ifNotExists + tableName + "_pending_idx ON " + tableName +
+                    " (channel, written_on) WHERE state <> '" + CONSUMED + "'");
+        } else {
+            jdbcTemplate.execute("CREATE INDEX " + ifNotExists + tableName + "_pending_idx ON " + tableName +
+                    " (channel, state, written_on)");
+        }
+    }
+
+    @Override
+    public void configureClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public DomainEvent createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
+    {
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(eventId)
+                .channel(outputChannelName)
+                .header(header)
+                .payload(payload)
+                .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compression)
+                .writtenOn(ZonedDateTime.now(clock).toInstant())
+                .build();
+
+        return createEvents(Collections.singletonList(domainEvent), outputChannelName).get(0);
+    }
+
+    @Override
+    public List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName) {
+        final List<DomainEvent> batch = new ArrayList<>(domainEvents);
+
+        // a single JDBC batch for the entire collection
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO " + tableName + " (" + COLUMNS + ", state) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        DomainEvent domainEvent = batch.get(i);
+                        Document body = new Document()
+                                .append("header", domainEvent.getHeader())
+                                .append("payload", domainEvent.getPayload());
+
+                        ps.setString(1, domainEvent.getId());
+                        ps.setString(2, outputChannelName);
+                        ps.setLong(3, domainEvent.getCreatedOn().toEpochMilli());
+                        ps.setBytes(4, DomainEventDocumentMapper.toBytes(body));
+                        ps.setString(5, domainEvent.getPayloadType());
+                        ps.setString(6, domainEvent.getEncoding());
+                        ps.setString(7, domainEvent.getCompression());
+                        ps.setLong(8, domainEvent.getWrittenOn().toEpochMilli());
+                        ps.setLong(9, domainEvent.getAttemptCount());
+                        setEpochMilli(ps, 10, domainEvent.getReturnedOn());
+                        setEpochMilli(ps, 11, domainEvent.getProducerAckOn());
+                        setEpochMilli(ps, 12, domainEvent.getConsumerAckOn());
+                        ps.setString(13, PENDING);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                });
+
+        return batch;
+    }
+
+    @Override
+    public DomainEvent updateReturnedTimestamp(String eventId, String outputChannelName) {
+        markReturned(eventId, outputChannelName);
+        return findById(eventId, outputChannelName);
+    }
+
+    @Override
+    public boolean markReturned(String eventId, String outputChannelName) {
+        // a returned event is pending for resend unless it has been consumed
+        return jdbcTemplate.update(
+                "UPDATE " + tableName + " SET returned_on = ?, " +
+                        "state = CASE WHEN state = '" + CONSUMED + "' THEN state ELSE '" + PENDING + "' END " +
+                        "WHERE id = ? AND channel = ?",
+                now(), eventId, outputChannelName) > 0;
+    }
+
+    @Override
+    public DomainEvent updateProducedTimestamp(String eventId, String outputChannelName) {
+        markProduced(eventId, outputChannelName);
+        return findById(eventId, outputChannelName);
+    }
+
+    @Override
+    public boolean markProduced(String eventId, String outputChannelName) {
+        // a returned message would also produce a positive ack, it remains pending
+        return jdbcTemplate.update(
+                "UPDATE " + tableName + " SET producer_ack_on = ?, " +
+                        "state = CASE WHEN state = '" + CONSUMED + "' OR returned_on IS NOT NULL THEN state " +
+                        "ELSE '" + PRODUCED + "' END " +
+                        "WHERE id = ? AND channel = ?",
+                now(), eventId, outputChannelName) > 0;
+    }
+
+    @Override
+    public boolean hasConsumedTimeStamp(String eventId, String outputChannelName) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + tableName + " WHERE id = ? AND channel = ? AND consumer_ack_on IS NOT NULL",
+                Integer.class, eventId, outputChannelName);
+        return count != null && count > 0;
+    }
+
+    @Override
+    public DomainEvent updateConsumedTimestamp(String eventId, String outputChannelName) {
+        markConsumed(eventId, outputChannelName);
+        return findById(eventId, outputChannelName);
+    }
+
+    @Override
+    public boolean markConsumed(String eventId, String outputChannelName) {
+        // commit the consume claim if any
+        return jdbcTemplate.update(
+                "UPDATE " + tableName + " SET consumer_ack_on = ?, state = '" + CONSUMED + "', " +
+                        "consuming_by = NULL, consume_lease_expires_on = NULL WHERE id = ? AND channel = ?",
+                now(), eventId, outputChannelName) > 0;
+    }
+
+    @Override
+    public ConsumeClaim claimConsume(String eventId, String consumerId, long leaseTimeInSec, String outputChannelName) {
+        final long currentDateTime = now();
+
+        // claim the unconsumed event if it's not claimed, or the claim has expired
+        int updated = jdbcTemplate.update(
+                "UPDATE " + tableName + " SET consuming_by = ?, consume_lease_expires_on = ? " +
+                        "WHERE id = ? AND channel = ? AND consumer_ack_on IS NULL " +
+                        "AND (consuming_by IS NULL OR consume_lease_expires_on < ?)",
+                consumerId, currentDateTime + leaseTimeInSec * 1000L, eventId, outputChannelName, currentDateTime);
+        if (updated > 0) {
+            return ConsumeClaim.CLAIMED;
+        }
+
+        // the claim is refused, lookup the reason
+        List<Boolean> consumed = jdbcTemplate.query(
+                "SELECT consumer_ack_on FROM " + tableName + " WHERE id = ? AND channel = ?",
+                (rs, rowNum) -> getDate(rs, "consumer_ack_on") != null, eventId, outputChannelName);
+        if (consumed.isEmpty()) {
+            return ConsumeClaim.NOT_FOUND;
+        }
+        return consumed.get(0) ? ConsumeClaim.CONSUMED : ConsumeClaim.CLAIMED_BY_OTHERS;
+    }
+
+    @Override
+    public void releaseConsume(String eventId, String consumerId, String outputChannelName) {
+        jdbcTemplate.update(
+                "UPDATE " + tableName + " SET consuming_by = NULL, consume_lease_expires_on = NULL " +
+                        "WHERE id = ? AND channel = ? AND consuming_by = ?",
+                eventId, outputChannelName, consumerId);
+    }
+
+    @Override
+    public void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand) {
+        LOGGER.debug("filter pending event operation");
+
+        /**
+         * Claim the pending events in a short transaction, the claimed rows are locked until
+         * the claim is committed and are skipped by any other node scanning concurrently.
+         * The callback is executed after the claim is committed, so no row lock is held
+         * while the messages are being sent.
+         */
+        List<DomainEvent> claimedEvents = transactionTemplate.execute(status -> {
+            final long currentDateTime = now();
+            final long writtenBefore = currentDateTime - messageExpiredTimeInSec * 1000L;
+
+            StringBuilder sql = new StringBuilder()
+                    .append("SELECT ").append(COLUMNS).append(" FROM ").append(tableName)
+                    .append(" WHERE channel = ? AND state <> '").append(CONSUMED).append("' AND written_on < ?");
+
+            List<Object> args = new ArrayList<>();
+            args.add(outputChannelName);
+            args.add(writtenBefore);
+
+            if (messageConsumerExpiryTimeInSec>0) {
+                // an additional query routine to fetch message that has not been consumed after a prolonged period of time
+                sql.append(" AND (state = '").append(PENDING).append("' OR producer_ack_on < ?)");
+                args.add(currentDateTime - messageConsumerExpiryTimeInSec * 1000L);
+            } else {
+                sql.append(" AND state = '").append(PENDING).append("'");
+            }
+
+            sql.append(" ORDER BY written_on DESC ").append(getDialect().limitClause).append(" FOR UPDATE");
+            args.add(retryMessageBatchSize);
+            if (skipLocked && getDialect().skipLockedSupported) {
+                sql.append(" SKIP LOCKED");
+            }
+
+            List<DomainEvent> pendingEvents = jdbcTemplate.query(sql.toString(), args.toArray(), domainEventRowMapper());
+            LOGGER.debug("total no. of events eligible for retry: {}", pendingEvents.size());
+            if (pendingEvents.isEmpty()) {
+                return pendingEvents;
+            }
+
+            final long writtenOn = now();
+            jdbcTemplate.batchUpdate(
+                    "UPDATE " + tableName + " SET attempt_count = attempt_count + 1, written_on = ?, " +
+                            "producer_ack_on = NULL, returned_on = NULL, state = '" + PENDING + "' WHERE id = ?",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, writtenOn);
+                            ps.setString(2, pendingEvents.get(i).getId());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return pendingEvents.size();
+                        }
+                    });
+
+            List<DomainEvent> claimed = new ArrayList<>(pendingEvents.size());
+            for (DomainEvent pendingEvent:pendingEvents) {
+                claimed.add(DomainEventDocumentMapper
+                        .fromDocument(DomainEventDocumentMapper.toDocument(pendingEvent))
+                        .attemptCount(pendingEvent.getAttemptCount() + 1)
+                        .writtenOn(Instant.ofEpochMilli(writtenOn))
+                        .producerAckOn(null)
+                        .returnedOn(null)
+                        .build());
+            }
+            return claimed;
+        });
+
+        long retrySuccessfulCount = 0L;
+        for (DomainEvent domainEvent:claimedEvents) {
+            try {
+                LOGGER.debug("retry callback event id: {}", domainEvent.getId());
+                callbackCommand.pendingEventFetched(domainEvent);
+                retrySuccessfulCount++;
+
+            } catch (Exception e) {
+                // one event fail shouldn't affect the entire retry operation
+                LOGGER.warn("error while sending event: {} {}", domainEvent.getId(), e.getMessage());
+            }
+        }
+        LOGGER.debug("total no. of successful retry: {}", retrySuccessfulCount);
+    }
+
+    @Override
+    public void deleteAll(String outputChannelName) {
+        jdbcTemplate.update("DELETE FROM " + tableName + " WHERE channel = ?", outputChannelName);
+    }
+
+    @Override
+    public List<DomainEvent> findAll(String outputChannelName) {
+        return jdbcTemplate.query(
+                "SELECT " + COLUMNS + " FROM " + tableName + " WHERE channel = ? ORDER BY created_on, id",
+                domainEventRowMapper(), outputChannelName);
+    }
+
+    private DomainEvent findById(String eventId, String outputChannelName) {
+        List<DomainEvent> domainEvents = jdbcTemplate.query(
+                "SELECT " + COLUMNS + " FROM " + tableName + " WHERE id = ? AND channel = ?",
+                domainEventRowMapper(), eventId, outputChannelName);
+        return domainEvents.isEmpty() ? null : domainEvents.get(0);
+    }
+
+    private RowMapper<DomainEvent> domainEventRowMapper() {
+        return (rs, rowNum) -> {
+            Document body = DomainEventDocumentMapper.fromBytes(rs.getBytes("body"));
+            Assert.notNull(body, "body should not be null");
+
+            Document document = new Document()
+                    .append("_id", rs.getString("id"))
+                    .append("createdOn", getDate(rs, "created_on"))
+                    .append("channel", rs.getString("channel"))
+                    .append("header", body.get("header"))
+                    .append("payload", body.get("payload"))
+                    .append("payloadType", rs.getString("payload_type"))
+                    .append("encoding", rs.getString("encoding"))
+                    .append("compression", rs.getString("compression"))
+                    .append("writtenOn", getDate(rs, "written_on"))
+                    .append("attemptCount", rs.getLong("attempt_count"))
+                    .append("returnedOn", getDate(rs, "returned_on"))
+                    .append("producerAckOn", getDate(rs, "producer_ack_on"))
+                    .append("consumerAckOn", getDate(rs, "consumer_ack_on"));
+            return DomainEventDocumentMapper.fromDocument(document).build();
+        };
+    }
+
+    private long now() {
+        return ZonedDateTime.now(clock).toInstant().toEpochMilli();
+    }
+
+    private static Date getDate(ResultSet rs, String column) throws SQLException {
+        long epochMilli = rs.getLong(column);
+        return rs.wasNull() ? null : new Date(epochMilli);
+    }
+
+    private static void setEpochMilli(PreparedStatement ps, int index, Instant instant) throws SQLException {
+        if (instant == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, instant.toEpochMilli());
+        }
+    }
+
+}
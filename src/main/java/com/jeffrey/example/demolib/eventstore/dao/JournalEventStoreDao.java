@@ -0,0 +1,668 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.util.DomainEventDocumentMapper;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A file based implementation of {@link EventStoreDao} for single-node deployment,
+ * where a local durable log is sufficient and the network round-trip to a database
+ * is not desired.
+ *
+ * <p>Each output channel has its own append-only journal, made of fixed size segment
+ * files which are memory-mapped. A record is either an {@code EVENT} holding the entire
+ * {@link DomainEvent} or a {@code STATE} holding the timestamps and attempt count of an
+ * event whenever they are updated, both encoded as BSON and guarded by a CRC32 checksum.
+ * An in-memory index keeps the offset of the {@code EVENT} record and the latest state of
+ * every event, it is rebuilt by replaying the segments upon startup. A record torn by a
+ * crash fails its checksum, the segment is truncated at the last good record.</p>
+ *
+ * <p>A new segment is rolled when the active segment is full. The oldest segments are
+ * deleted once every event written into them has been consumed and their number reaches
+ * {@code journal.compactionThreshold}, only a prefix of the journal is compacted so that
+ * any {@code STATE} record in a deleted segment always belongs to a deleted event.</p>
+ *
+ * <p>The journal doesn't support transaction, publisher always write the event without
+ * transaction and rely on the retry operation for resending. Records are flushed to disk
+ * by the OS unless {@code journal.forceOnWrite} is enabled.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("JournalEventStoreDao")
+public class JournalEventStoreDao extends AbstractEventStoreDao implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalEventStoreDao.class);
+
+    private static final byte EVENT = 1;
+
+    private static final byte STATE = 2;
+
+    // record length (int) followed by record type (byte) and checksum (int)
+    private static final int RECORD_HEADER_SIZE = 9;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.expired.seconds:60}") // message sending expiry default to 60s
+    private long messageExpiredTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.journal.segmentPrefix:DefaultEventStore}") // use default segment prefix if not defined
+    private String segmentPrefix;
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.batchSize:1000}") // default message count per retry to 1000
+    private int retryMessageBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.expiredTimeInSec:0}") // default to 0s if not defined
+    private int messageConsumerExpiryTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.journal.directory:eventstore-journal}") // relative to working directory if undefined
+    private String journalDirectory;
+
+    @Value("${com.jeffrey.example.eventstore.journal.segmentSizeBytes:67108864}") // default segment size to 64MB
+    private int segmentSizeBytes;
+
+    @Value("${com.jeffrey.example.eventstore.journal.forceOnWrite:false}") // default to let OS flush the pages
+    private boolean forceOnWrite;
+
+    @Value("${com.jeffrey.example.eventstore.journal.compactionThreshold:4}") // default to delete every 4 consumed segments
+    private int compactionThreshold;
+
+    private final ConcurrentMap<String, Journal> journals = new ConcurrentHashMap<>();
+
+    private Clock clock;
+
+    public JournalEventStoreDao(
+            @Autowired @Qualifier("eventStoreClock") Clock clock
+    ) {
+        this.clock = clock;
+    }
+
+    /**
+     * Create a journal outside of the application context, every record is forced
+     * to disk before returning. Used as the local spill journal of another event store.
+     *
+     * @param clock the {@link Clock} of the event store
+     * @param journalDirectory the directory of the journal segments
+     * @param segmentSizeBytes the size of each segment file
+     * @param messageExpiredTimeInSec message sending expiry for the retry operation
+     * @param retryMessageBatchSize max no. of events per retry operation
+     * @param messageConsumerExpiryTimeInSec message consuming expiry for the retry operation, 0 if disabled
+     * @return the {@link JournalEventStoreDao}, the caller is responsible for destroying it
+     */
+    public static JournalEventStoreDao createForcedJournal(
+            Clock clock, String journalDirectory, int segmentSizeBytes,
+            long messageExpiredTimeInSec, int retryMessageBatchSize, int messageConsumerExpiryTimeInSec)
+    {
+        JournalEventStoreDao journalEventStoreDao = new JournalEventStoreDao(clock);
+        journalEventStoreDao.segmentPrefix = "SpillJournal";
+        journalEventStoreDao.journalDirectory = journalDirectory;
+        journalEventStoreDao.segmentSizeBytes = segmentSizeBytes;
+        journalEventStoreDao.forceOnWrite = true;
+        journalEventStoreDao.compactionThreshold = 1;
+        journalEventStoreDao.messageExpiredTimeInSec = messageExpiredTimeInSec;
+        journalEventStoreDao.retryMessageBatchSize = retryMessageBatchSize;
+        journalEventStoreDao.messageConsumerExpiryTimeInSec = messageConsumerExpiryTimeInSec;
+        return journalEventStoreDao;
+    }
+
+    private String getStoreName(String outputChannelName) {
+        return String.format("%s-%s", segmentPrefix, outputChannelName);
+    }
+
+    private Journal getJournal(String outputChannelName) {
+        return journals.computeIfAbsent(outputChannelName, Journal::new);
+    }
+
+    @Override
+    public boolean isTransactionSupported() {
+        return false;
+    }
+
+    @Override
+    public void initializeDb(Collection<String> outputChannelNames) {
+        // open the journal and rebuild the index
+        for (String outputChannelName:outputChannelNames) {
+            getJournal(outputChannelName);
+        }
+    }
+
+    @Override
+    public void configureClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public DomainEvent createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
+    {
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(eventId)
+                .channel(outputChannelName)
+                .header(header)
+                .payload(payload)
+                .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compression)
+                .writtenOn(ZonedDateTime.now(clock).toInstant())
+                .build();
+
+        return createEvents(Collections.singletonList(domainEvent), outputChannelName).get(0);
+    }
+
+    @Override
+    public List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName) {
+        Journal journal = getJournal(outputChannelName);
+        synchronized (journal) {
+            for (DomainEvent domainEvent:domainEvents) {
+                journal.appendEvent(domainEvent);
+            }
+            journal.force();
+        }
+        return new ArrayList<>(domainEvents);
+    }
+
+    @Override
+    public DomainEvent updateReturnedTimestamp(String eventId, String outputChannelName) {
+        return updateState(eventId, outputChannelName, entry -> entry.returnedOn = ZonedDateTime.now(clock).toInstant());
+    }
+
+    @Override
+    public DomainEvent updateProducedTimestamp(String eventId, String outputChannelName) {
+        return updateState(eventId, outputChannelName, entry -> entry.producerAckOn = ZonedDateTime.now(clock).toInstant());
+    }
+
+    @Override
+    public boolean hasConsumedTimeStamp(String eventId, String outputChannelName) {
+        Journal journal = getJournal(outputChannelName);
+        synchronized (journal) {
+            IndexEntry entry = journal.index.get(eventId);
+            return entry != null && entry.consumerAckOn != null;
+        }
+    }
+
+    @Override
+    public DomainEvent updateConsumedTimestamp(String eventId, String outputChannelName) {
+        Journal journal = getJournal(outputChannelName);
+        synchronized (journal) {
+            IndexEntry consumedEntry = journal.index.get(eventId);
+            boolean wasConsumed = consumedEntry == null || consumedEntry.consumerAckOn != null;
+            DomainEvent domainEvent = updateState(eventId, outputChannelName, entry -> {
+                if (entry.consumerAckOn == null) {
+                    entry.segment.unconsumedCount--;
+                }
+                entry.consumerAckOn = ZonedDateTime.now(clock).toInstant();
+            });
+            // only a segment which has just been fully consumed could make the prefix compactable
+            if (!wasConsumed && consumedEntry.segment.unconsumedCount == 0) {
+                journal.compact(compactionThreshold);
+            }
+            return domainEvent;
+        }
+    }
+
+    private DomainEvent updateState(String eventId, String outputChannelName, StateUpdate stateUpdate) {
+        Journal journal = getJournal(outputChannelName);
+        synchronized (journal) {
+            IndexEntry entry = journal.index.get(eventId);
+            if (entry == null) {
+                return null;
+            }
+            stateUpdate.apply(entry);
+            journal.appendState(entry);
+            journal.force();
+            return journal.read(entry);
+        }
+    }
+
+    @Override
+    public void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand) {
+        LOGGER.debug("filter pending event operation");
+
+        Journal journal = getJournal(outputChannelName);
+        long retrySuccessfulCount = 0L;
+
+        Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
+        Instant writtenBefore = currentDateTime.minusSeconds(messageExpiredTimeInSec);
+        Instant producerAckBefore = currentDateTime.minusSeconds(messageConsumerExpiryTimeInSec);
+
+        List<DomainEvent> pendingEvents = new ArrayList<>();
+        synchronized (journal) {
+            List<IndexEntry> entries = journal.index.values().stream()
+                    .filter(entry -> entry.consumerAckOn == null)
+                    .filter(entry -> entry.writtenOn.isBefore(writtenBefore))
+                    .filter(entry -> entry.producerAckOn == null || entry.returnedOn != null ||
+                            (messageConsumerExpiryTimeInSec>0 && entry.producerAckOn.isBefore(producerAckBefore)))
+                    // sort the results based on writtenOn timestamp in descending order as the mongo implementation
+                    .sorted(Comparator.comparing((IndexEntry entry) -> entry.writtenOn).reversed())
+                    // limit the result set to avoid overwhelming the broker
+                    .limit(retryMessageBatchSize)
+                    .collect(Collectors.toList());
+
+            LOGGER.debug("total no. of events eligible for retry: {}", entries.size());
+
+            for (IndexEntry entry:entries) {
+                entry.attemptCount++;
+                entry.writtenOn = ZonedDateTime.now(clock).toInstant();
+                entry.producerAckOn = null; // remove the producer ack timestamp upon resend
+                entry.returnedOn = null; // remove the return timestamp upon resend
+                journal.appendState(entry);
+                pendingEvents.add(journal.read(entry));
+            }
+            journal.force();
+        }
+
+        // the callback is executed outside the lock, it may update the same journal
+        for (DomainEvent domainEvent:pendingEvents) {
+            try {
+                LOGGER.debug("retry callback event id: {}", domainEvent.getId());
+                callbackCommand.pendingEventFetched(domainEvent);
+                retrySuccessfulCount++;
+
+            } catch (Exception e) {
+                // one event fail shouldn't affect the entire retry operation
+                LOGGER.warn("error while sending event: {} {}", domainEvent.getId(), e.getMessage());
+            }
+        }
+
+        LOGGER.debug("total no. of successful retry: {}", retrySuccessfulCount);
+    }
+
+    @Override
+    public void deleteAll(String outputChannelName) {
+        Journal journal = journals.remove(outputChannelName);
+        if (journal != null) {
+            synchronized (journal) {
+                journal.delete();
+            }
+        } else {
+            new Journal(outputChannelName).delete();
+        }
+    }
+
+    @Override
+    public List<DomainEvent> findAll(String outputChannelName) {
+        Journal journal = getJournal(outputChannelName);
+        synchronized (journal) {
+            return journal.index.values().stream().map(journal::read).collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Journal journal:journals.values()) {
+            synchronized (journal) {
+                journal.close();
+            }
+        }
+        journals.clear();
+    }
+
+    private static int checksum(byte type, byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(type);
+        crc32.update(bytes);
+        return (int) crc32.getValue();
+    }
+
+    @FunctionalInterface
+    private interface StateUpdate {
+        void apply(IndexEntry entry);
+    }
+
+    /**
+     * The offset of the event record and the latest state of the event
+     */
+    private static class IndexEntry {
+        private final String eventId;
+        private final Segment segment;
+        private final int offset;
+        private Instant writtenOn;
+        private long attemptCount;
+        private Instant returnedOn;
+        private Instant producerAckOn;
+        private Instant consumerAckOn;
+
+        private IndexEntry(String eventId, Segment segment, int offset) {
+            this.eventId = eventId;
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        private void applyState(Document state) {
+            writtenOn = toInstant(state.getDate("writtenOn"));
+            attemptCount = state.get("attemptCount", Number.class).longValue();
+            returnedOn = toInstant(state.getDate("returnedOn"));
+            producerAckOn = toInstant(state.getDate("producerAckOn"));
+            consumerAckOn = toInstant(state.getDate("consumerAckOn"));
+        }
+
+        private Document toState() {
+            return new Document()
+                    .append("_id", eventId)
+                    .append("writtenOn", toDate(writtenOn))
+                    .append("attemptCount", attemptCount)
+                    .append("returnedOn", toDate(returnedOn))
+                    .append("producerAckOn", toDate(producerAckOn))
+                    .append("consumerAckOn", toDate(consumerAckOn));
+        }
+
+        private static Instant toInstant(Date date) {
+            return date == null ? null : date.toInstant();
+        }
+
+        private static Date toDate(Instant instant) {
+            return instant == null ? null : Date.from(instant);
+        }
+    }
+
+    /**
+     * A fixed size memory-mapped segment file of the journal
+     */
+    private static class Segment {
+        private final long sequence;
+        private final Path path;
+        private final FileChannel fileChannel;
+        private final MappedByteBuffer buffer;
+        private int unconsumedCount = 0;
+
+        private Segment(long sequence, Path path, int size) throws IOException {
+            this.sequence = sequence;
+            this.path = path;
+            this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // a new file is zero-filled, a zero record length marks the end of the segment
+            this.buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, fileChannel.size()));
+        }
+
+        private boolean hasRemaining(int recordSize) {
+            // keep space for the zero record length which marks the end of the segment
+            return buffer.remaining() >= recordSize + Integer.BYTES;
+        }
+
+        private int append(byte type, byte[] bytes) {
+            int offset = buffer.position();
+            buffer.putInt(bytes.length);
+            buffer.put(type);
+            buffer.putInt(checksum(type, bytes));
+            buffer.put(bytes);
+            return offset;
+        }
+
+        private byte[] read(int offset) {
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset);
+            byte[] bytes = new byte[record.getInt()];
+            record.get(); // record type
+            record.getInt(); // checksum
+            record.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Discard the records from the offset onward, such that the remains of a torn
+         * record are never mistaken for a record appended afterwards.
+         */
+        private void truncate(int offset) {
+            byte[] zeros = new byte[4096];
+            buffer.position(offset);
+            while (buffer.hasRemaining()) {
+                buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+            }
+            buffer.force();
+            buffer.position(offset);
+        }
+
+        private void close() throws IOException {
+            buffer.force();
+            // the mapped buffer is released once garbage collected
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * The journal of a specific output channel
+     */
+    private class Journal {
+        private final String outputChannelName;
+        private final Path directory;
+        private final LinkedList<Segment> segments = new LinkedList<>();
+        // preserve the insertion order of events
+        private final Map<String, IndexEntry> index = new LinkedHashMap<>();
+
+        private Journal(String outputChannelName) {
+            this.outputChannelName = outputChannelName;
+            this.directory = Paths.get(journalDirectory);
+            try {
+                Files.createDirectories(directory);
+                recover();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private String getSegmentPrefix() {
+            return getStoreName(outputChannelName) + "-";
+        }
+
+        private List<Path> listSegmentFiles() throws IOException {
+            if (!Files.isDirectory(directory)) {
+                return Collections.emptyList();
+            }
+            try (Stream<Path> paths = Files.list(directory)) {
+                return paths.filter(path -> isSegmentFile(path.getFileName().toString()))
+                        .sorted(Comparator.comparingLong(path -> getSequence(path.getFileName().toString())))
+                        .collect(Collectors.toList());
+            }
+        }
+
+        private boolean isSegmentFile(String fileName) {
+            if (!fileName.startsWith(getSegmentPrefix()) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+                return false;
+            }
+            String sequence = fileName.substring(getSegmentPrefix().length(), fileName.length() - SEGMENT_SUFFIX.length());
+            return !sequence.isEmpty() && sequence.chars().allMatch(Character::isDigit);
+        }
+
+        private long getSequence(String fileName) {
+            return Long.parseLong(fileName.substring(getSegmentPrefix().length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        }
+
+        /**
+         * Replay all segments to rebuild the index and position the active segment at its end
+         */
+        private void recover() throws IOException {
+            for (Path path:listSegmentFiles()) {
+                Segment segment = new Segment(getSequence(path.getFileName().toString()), path, segmentSizeBytes);
+                segments.add(segment);
+
+                MappedByteBuffer buffer = segment.buffer;
+                while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                    int offset = buffer.position();
+                    int length = buffer.getInt();
+                    if (length == 0) {
+                        // end of segment
+                        buffer.position(offset);
+                        break;
+                    }
+                    if (length < 0 || length > buffer.remaining() - (RECORD_HEADER_SIZE - Integer.BYTES)) {
+                        LOGGER.warn("torn journal record at offset: {} of segment: {}, truncated", offset, path);
+                        segment.truncate(offset);
+                        break;
+                    }
+                    byte type = buffer.get();
+                    int checksum = buffer.getInt();
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    Document document = checksum == checksum(type, bytes) ? decode(bytes) : null;
+                    if (document == null) {
+                        LOGGER.warn("torn journal record at offset: {} of segment: {}, truncated", offset, path);
+                        segment.truncate(offset);
+                        break;
+                    }
+                    String eventId = document.get("_id", String.class);
+
+                    if (type == EVENT) {
+                        IndexEntry entry = new IndexEntry(eventId, segment, offset);
+                        entry.applyState(document);
+                        index.put(eventId, entry);
+                        segment.unconsumedCount++;
+                    } else if (type == STATE) {
+                        IndexEntry entry = index.get(eventId);
+                        if (entry == null) continue; // event already compacted
+                        boolean wasConsumed = entry.consumerAckOn != null;
+                        entry.applyState(document);
+                        if (!wasConsumed && entry.consumerAckOn != null) {
+                            entry.segment.unconsumedCount--;
+                        }
+                    }
+                }
+            }
+            LOGGER.debug("recovered {} events from {} segments of channel: {}", index.size(), segments.size(), outputChannelName);
+            compact(1);
+        }
+
+        private Document decode(byte[] bytes) {
+            try {
+                return DomainEventDocumentMapper.fromBytes(bytes);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        private Segment getActiveSegment(int recordSize) {
+            if (recordSize + Integer.BYTES > segmentSizeBytes) {
+                throw new IllegalArgumentException("record size: " + recordSize + " exceeds journal segment size: " + segmentSizeBytes);
+            }
+            Segment active = segments.peekLast();
+            if (active == null || !active.hasRemaining(recordSize)) {
+                // roll a new segment
+                long sequence = active == null ? 0L : active.sequence + 1;
+                Path path = directory.resolve(String.format("%s%020d%s", getSegmentPrefix(), sequence, SEGMENT_SUFFIX));
+                try {
+                    if (active != null) active.buffer.force();
+                    active = new Segment(sequence, path, segmentSizeBytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                segments.add(active);
+                LOGGER.debug("rolled journal segment: {}", path);
+            }
+            return active;
+        }
+
+        private void appendEvent(DomainEvent domainEvent) {
+            if (index.containsKey(domainEvent.getId())) {
+                throw new IllegalStateException("duplicated event id: " + domainEvent.getId());
+            }
+            byte[] bytes = DomainEventDocumentMapper.toBytes(DomainEventDocumentMapper.toDocument(domainEvent));
+            Segment segment = getActiveSegment(RECORD_HEADER_SIZE + bytes.length);
+            int offset = segment.append(EVENT, bytes);
+
+            IndexEntry entry = new IndexEntry(domainEvent.getId(), segment, offset);
+            entry.writtenOn = domainEvent.getWrittenOn();
+            entry.attemptCount = domainEvent.getAttemptCount();
+            index.put(domainEvent.getId(), entry);
+            segment.unconsumedCount++;
+        }
+
+        private void appendState(IndexEntry entry) {
+            byte[] bytes = DomainEventDocumentMapper.toBytes(entry.toState());
+            getActiveSegment(RECORD_HEADER_SIZE + bytes.length).append(STATE, bytes);
+        }
+
+        private DomainEvent read(IndexEntry entry) {
+            Document document = DomainEventDocumentMapper.fromBytes(entry.segment.read(entry.offset));
+            return DomainEventDocumentMapper.fromDocument(document)
+                    .writtenOn(entry.writtenOn)
+                    .attemptCount(entry.attemptCount)
+                    .returnedOn(entry.returnedOn)
+                    .producerAckOn(entry.producerAckOn)
+                    .consumerAckOn(entry.consumerAckOn)
+                    .build();
+        }
+
+        private void force() {
+            if (forceOnWrite && !segments.isEmpty()) {
+                segments.peekLast().buffer.force();
+            }
+        }
+
+        /**
+         * Delete the oldest segments as long as all events written into them are consumed,
+         * provided that there are at least the threshold no. of such segments. The active
+         * segment is never deleted.
+         *
+         * @param threshold min no. of consumed segments to delete at once
+         */
+        private void compact(int threshold) {
+            int consumedCount = 0;
+            for (Segment segment:segments) {
+                if (segment == segments.peekLast() || segment.unconsumedCount > 0) break;
+                consumedCount++;
+            }
+            if (consumedCount == 0 || consumedCount < threshold) {
+                return;
+            }
+
+            Set<Segment> compacted = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i=0; i<consumedCount; i++) {
+                Segment segment = segments.removeFirst();
+                compacted.add(segment);
+                try {
+                    segment.close();
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    LOGGER.warn("error deleting journal segment: {} {}", segment.path, e.getMessage());
+                }
+                LOGGER.debug("compacted journal segment: {}", segment.path);
+            }
+            // a single pass over the index for all the deleted segments
+            index.values().removeIf(entry -> compacted.contains(entry.segment));
+        }
+
+        private void close() throws IOException {
+            for (Segment segment:segments) {
+                segment.close();
+            }
+        }
+
+        private void delete() {
+            try {
+                close();
+                for (Path path:listSegmentFiles()) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+}
@@ -1,15 +1,22 @@
 package com.jeffrey.example.demolib.eventstore.dao;
 
-import com.google.common.collect.Iterables;
 import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
-import com.jeffrey.example.demolib.eventstore.config.MongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreDurabilityProperties;
 import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
 import com.jeffrey.example.demolib.eventstore.repository.MongoEventStoreRepository;
+import com.jeffrey.example.demolib.eventstore.util.DomainEventDocumentMapper;
+import com.jeffrey.example.demolib.eventstore.util.TimeOrderedIdGenerator;
 import com.mongodb.BasicDBObject;
-import com.mongodb.client.ClientSession;
-import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoClient;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -18,8 +25,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.index.IndexResolver;
 import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
@@ -29,12 +39,21 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.IdGenerator;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Updates.*;
@@ -44,6 +63,11 @@ import static com.mongodb.client.model.Updates.*;
 public class MongoEventStoreDao extends AbstractEventStoreDao {
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoEventStoreDao.class);
 
+    // the ack and consume claim fields are not required for resending
+    private static final Bson PENDING_EVENT_PROJECTION = Projections.exclude(
+            "returnedOn", "producerAckOn", "consumerAckOn", "consumingBy", "consumeLeaseExpiresOn",
+            "resendLeaseToken", "resendLeaseExpiresOn", "nextAttemptAt");
+
     @Value("${com.jeffrey.example.eventstore.retry.message.expired.seconds:60}") // message sending expiry default to 60s
     private long messageExpiredTimeInSec;
 
@@ -56,34 +80,85 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
     @Value("${com.jeffrey.example.eventstore.consumer.expiredTimeInSec:0}") // default to 0s if not defined
     private int messageConsumerExpiryTimeInSec;
 
-    private Clock clock;
+    @Value("${com.jeffrey.example.eventstore.retry.message.cursorBatchSize:200}") // no. of events per cursor batch and bulk claim
+    private int cursorBatchSize;
 
-    private MongoDbConfig mongoDbConfig;
+    // resend claim expiry default to the message sending expiry, an event resent is not eligible before then anyway
+    @Value("${com.jeffrey.example.eventstore.retry.message.leaseTimeInSec:${com.jeffrey.example.eventstore.retry.message.expired.seconds:60}}")
+    private long resendLeaseTimeInSec;
+
+    private Clock clock;
 
     private MongoEventStoreRepository mongoRepository;
 
     private MongoTemplate mongoTemplate;
 
+    // the templates applying the durability profile of each operation outside transaction
+    private Map<EventStoreOperation, MongoTemplate> durableMongoTemplates = new EnumMap<>(EventStoreOperation.class);
+
+    private WriteConcern retryClaimWriteConcern; // null if the default write concern applies
+
     private MongoMappingContext mongoMappingContext;
 
+    private IdGenerator eventIdGenerator;
+
     public MongoEventStoreDao(
             @Autowired @Qualifier("eventStoreClock") Clock clock,
-            @Autowired MongoDbConfig mongoDbConfig,
             @Autowired MongoEventStoreRepository mongoRepository,
             @Autowired MongoTemplate mongoTemplate,
-            @Autowired MongoMappingContext mongoMappingContext
+            @Autowired MongoMappingContext mongoMappingContext,
+            @Autowired @Qualifier("eventIdGenerator") IdGenerator eventIdGenerator,
+            @Autowired EventStoreDurabilityProperties durabilityProperties
     ) {
         this.clock = clock;
-        this.mongoDbConfig = mongoDbConfig;
         this.mongoRepository = mongoRepository;
         this.mongoTemplate = mongoTemplate;
+        // write concern is not allowed on individual operation inside transaction
+        for (EventStoreOperation operation:EventStoreOperation.values()) {
+            WriteConcern writeConcern = durabilityProperties.getWriteConcern(operation);
+            if (writeConcern == null) {
+                durableMongoTemplates.put(operation, mongoTemplate);
+            } else {
+                MongoTemplate durableMongoTemplate = new MongoTemplate(mongoTemplate.getMongoDbFactory(), mongoTemplate.getConverter());
+                durableMongoTemplate.setWriteConcern(writeConcern);
+                durableMongoTemplates.put(operation, durableMongoTemplate);
+                LOGGER.debug("durability of {}: {}", operation, writeConcern);
+            }
+        }
+        this.retryClaimWriteConcern = durabilityProperties.getWriteConcern(EventStoreOperation.RETRY_CLAIM);
         this.mongoMappingContext = mongoMappingContext;
+        this.eventIdGenerator = eventIdGenerator;
     }
 
     private String getStoreName(String outputChannelName) {
         return String.format("%s-%s", eventStorePrefix, outputChannelName);
     }
 
+    private String getQuarantineName(String outputChannelName) {
+        return String.format("%s-%s-quarantine", eventStorePrefix, outputChannelName);
+    }
+
+    private MongoCollection<Document> getCollection(String collectionName) {
+        MongoCollection<Document> collection = mongoTemplate.getMongoDbFactory().getDb().getCollection(collectionName);
+        if (retryClaimWriteConcern != null) {
+            collection = collection.withWriteConcern(retryClaimWriteConcern);
+        }
+        return collection;
+    }
+
+    private MongoTemplate getMongoTemplate(EventStoreOperation operation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // governed by the write concern of the transaction
+            return mongoTemplate;
+        }
+        return durableMongoTemplates.get(operation);
+    }
+
+    @Override
+    public boolean isTransactionSupported() {
+        return true;
+    }
+
     @Override
     public void initializeDb(Collection<String> outputChannelNames) {
         // create the event store collections if not exist
@@ -97,10 +172,28 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
             // consider taking over more control by setting up indices manually via IndexOperations.
             IndexOperations indexOps = mongoTemplate.indexOps(eventStoreName);
             IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
-            resolver.resolveIndexFor(DomainEvent.class).forEach(indexOps::ensureIndex);
+            resolver.resolveIndexFor(DomainEvent.class).forEach(indexDefinition -> {
+                if (isRangedIdIndex() && "hashed".equals(indexDefinition.getIndexKeys().get("_id"))) {
+                    // time-ordered ids are served by the default ascending _id index,
+                    // skip the hashed index which only scatter the inserts
+                    return;
+                }
+                indexOps.ensureIndex(indexDefinition);
+            });
+            // only the returned events awaiting their backoff carry the next attempt
+            indexOps.ensureIndex(new Index().on("nextAttemptAt", Sort.Direction.ASC).sparse());
+            // the pending filter matches the unclaimed events by a missing lease, the index
+            // can't be sparse otherwise it's not eligible for the null lookup
+            indexOps.ensureIndex(new Index().on("resendLeaseExpiresOn", Sort.Direction.ASC));
+            mongoTemplate.indexOps(getQuarantineName(outputChannelName))
+                    .ensureIndex(new Index().on("quarantinedOn", Sort.Direction.ASC));
         }
     }
 
+    private boolean isRangedIdIndex() {
+        return eventIdGenerator instanceof TimeOrderedIdGenerator;
+    }
+
     @Override
     public void configureClock(Clock clock) {
         this.clock = clock;
@@ -108,7 +201,8 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
 
     @Override
     public DomainEvent createEvent(
-            String eventId, String header, String payload, String payloadClassName, String outputChannelName)
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
     {
         DomainEvent domainEvent = new DomainEvent.Builder()
                 .id(eventId)
@@ -116,42 +210,51 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
                 .header(header)
                 .payload(payload)
                 .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compression)
                 .writtenOn(ZonedDateTime.now(clock).toInstant())
                 .build();
 
-        return mongoTemplate.save(domainEvent, getStoreName(outputChannelName));
+        // outside transaction, a single-document insert acknowledged by the majority by default
+        return getMongoTemplate(EventStoreOperation.CREATE).insert(domainEvent, getStoreName(outputChannelName));
+    }
+
+    @Override
+    public List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName) {
+        // a single insertMany round-trip for the entire batch
+        return new ArrayList<>(getMongoTemplate(EventStoreOperation.CREATE).insert(domainEvents, getStoreName(outputChannelName)));
     }
 
     @Override
     public DomainEvent updateReturnedTimestamp(String eventId, String outputChannelName) {
         // atomically query and update the document
         Query query = new Query();
-        query.addCriteria(Criteria.where("id").is(eventId));
+        query.addCriteria(Criteria.where("_id").is(eventId));
         Update update = new Update();
         update.set("returnedOn", ZonedDateTime.now(clock).toInstant());
-        return mongoTemplate.findAndModify(
+        return toDomainEvent(getMongoTemplate(EventStoreOperation.RETURNED_ACK).findAndModify(
                 query,
                 update,
                 new FindAndModifyOptions().returnNew(true),
-                DomainEvent.class,
+                Document.class,
                 getStoreName(outputChannelName)
-        );
+        ));
     }
 
     @Override
     public DomainEvent updateProducedTimestamp(String eventId, String outputChannelName) {
         // atomically query and update the document
         Query query = new Query();
-        query.addCriteria(Criteria.where("id").is(eventId));
+        query.addCriteria(Criteria.where("_id").is(eventId));
         Update update = new Update();
         update.set("producerAckOn", ZonedDateTime.now(clock).toInstant());
-        return mongoTemplate.findAndModify(
+        return toDomainEvent(getMongoTemplate(EventStoreOperation.PRODUCED_ACK).findAndModify(
                 query,
                 update,
                 new FindAndModifyOptions().returnNew(true),
-                DomainEvent.class,
+                Document.class,
                 getStoreName(outputChannelName)
-        );
+        ));
     }
 
     @Override
@@ -170,137 +273,421 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
     public DomainEvent updateConsumedTimestamp(String eventId, String outputChannelName) {
         // atomically query and update the document
         Query query = new Query();
-        query.addCriteria(Criteria.where("id").is(eventId));
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        Update update = timestampUpdate("consumerAckOn", ZonedDateTime.now(clock).toInstant());
+        return toDomainEvent(getMongoTemplate(EventStoreOperation.CONSUMED_ACK).findAndModify(
+                query,
+                update,
+                new FindAndModifyOptions().returnNew(true),
+                Document.class,
+                getStoreName(outputChannelName)
+        ));
+    }
+
+    @Override
+    public boolean markReturned(String eventId, String outputChannelName) {
+        return markTimestamp(eventId, EventAckUpdate.Type.RETURNED, outputChannelName);
+    }
+
+    @Override
+    public boolean markReturned(String eventId, long retryDelayMillis, String outputChannelName) {
+        Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
+
+        // the send is over, release the resend claim if any so that the event could be claimed again
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
         Update update = new Update();
-        update.set("consumerAckOn", ZonedDateTime.now(clock).toInstant());
-        return mongoTemplate.findAndModify(
+        update.set("returnedOn", currentDateTime);
+        update.set("nextAttemptAt", currentDateTime.plusMillis(retryDelayMillis));
+        update.unset("resendLeaseToken");
+        update.unset("resendLeaseExpiresOn");
+        UpdateResult result = getMongoTemplate(EventStoreOperation.RETURNED_ACK).updateFirst(
+                query, update, getStoreName(outputChannelName));
+        return result.getMatchedCount() > 0;
+    }
+
+    @Override
+    public long claimReturned(String eventId, String outputChannelName) {
+        final Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
+
+        // the claim is refused if the event is acknowledged, consumed, or claimed by the retry operation
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        query.addCriteria(Criteria.where("returnedOn").ne(null));
+        query.addCriteria(Criteria.where("consumerAckOn").is(null));
+        query.addCriteria(Criteria.where("nextAttemptAt").lte(currentDateTime));
+        query.addCriteria(new Criteria().orOperator(
+                Criteria.where("resendLeaseExpiresOn").is(null),
+                Criteria.where("resendLeaseExpiresOn").lt(currentDateTime)
+        ));
+        query.fields().include("attemptCount");
+        Update update = new Update();
+        update.inc("attemptCount", 1L);
+        update.set("writtenOn", currentDateTime);
+        update.set("resendLeaseToken", UUID.randomUUID().toString());
+        update.set("resendLeaseExpiresOn", currentDateTime.plusSeconds(resendLeaseTimeInSec));
+        update.unset("producerAckOn");
+        update.unset("returnedOn");
+        update.unset("nextAttemptAt");
+
+        Document document = getMongoTemplate(EventStoreOperation.RETRY_CLAIM).findAndModify(
                 query,
                 update,
                 new FindAndModifyOptions().returnNew(true),
-                DomainEvent.class,
+                Document.class,
                 getStoreName(outputChannelName)
         );
+        if (document == null) {
+            return 0L;
+        }
+        Number attemptCount = document.get("attemptCount", Number.class);
+        return attemptCount == null ? 1L : attemptCount.longValue();
+    }
+
+    @Override
+    public boolean markProduced(String eventId, String outputChannelName) {
+        return markTimestamp(eventId, EventAckUpdate.Type.PRODUCED, outputChannelName);
+    }
+
+    @Override
+    public boolean markConsumed(String eventId, String outputChannelName) {
+        // commit the consume claim if any
+        return markTimestamp(eventId, EventAckUpdate.Type.CONSUMED, outputChannelName);
+    }
+
+    private boolean markTimestamp(String eventId, EventAckUpdate.Type type, String outputChannelName) {
+        // a plain updateOne, the updated document is not sent back
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        UpdateResult result = getMongoTemplate(type.getOperation()).updateFirst(
+                query, timestampUpdate(type.getFieldName(), ZonedDateTime.now(clock).toInstant()), getStoreName(outputChannelName));
+        return result.getMatchedCount() > 0;
+    }
+
+    /**
+     * Build the update of an acknowledgement timestamp, shared with {@link ReactiveMongoEventStoreDao}
+     * such that both release the consume claim once the event is consumed.
+     */
+    static Update timestampUpdate(String field, Instant timestamp) {
+        Update update = new Update();
+        update.set(field, timestamp);
+        if ("consumerAckOn".equals(field)) {
+            // the consume claim is no longer required once consumed
+            update.unset("consumingBy");
+            update.unset("consumeLeaseExpiresOn");
+        }
+        return update;
     }
 
+    @Override
+    public ConsumeClaim claimConsume(String eventId, String consumerId, long leaseTimeInSec, String outputChannelName) {
+        Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
+
+        // claim the unconsumed event if it's not claimed, or the claim has expired
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        query.addCriteria(Criteria.where("consumerAckOn").is(null));
+        query.addCriteria(new Criteria().orOperator(
+                Criteria.where("consumingBy").is(null),
+                Criteria.where("consumeLeaseExpiresOn").lt(currentDateTime)
+        ));
+        Update update = new Update();
+        update.set("consumingBy", consumerId);
+        update.set("consumeLeaseExpiresOn", currentDateTime.plusSeconds(leaseTimeInSec));
+
+        UpdateResult result = getMongoTemplate(EventStoreOperation.CONSUMED_ACK).updateFirst(query, update, getStoreName(outputChannelName));
+        if (result.getMatchedCount() > 0) {
+            return ConsumeClaim.CLAIMED;
+        }
+
+        // the claim is refused, lookup the reason
+        Query lookup = new Query();
+        lookup.addCriteria(Criteria.where("_id").is(eventId));
+        lookup.fields().include("consumerAckOn");
+        Document document = mongoTemplate.findOne(lookup, Document.class, getStoreName(outputChannelName));
+        if (document == null) {
+            return ConsumeClaim.NOT_FOUND;
+        }
+        return document.get("consumerAckOn") != null ? ConsumeClaim.CONSUMED : ConsumeClaim.CLAIMED_BY_OTHERS;
+    }
+
+    @Override
+    public void releaseConsume(String eventId, String consumerId, String outputChannelName) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        query.addCriteria(Criteria.where("consumingBy").is(consumerId));
+        Update update = new Update();
+        update.unset("consumingBy");
+        update.unset("consumeLeaseExpiresOn");
+        getMongoTemplate(EventStoreOperation.CONSUMED_ACK).updateFirst(query, update, getStoreName(outputChannelName));
+    }
+
+    @Override
+    public void updateTimestamps(Collection<EventAckUpdate> ackUpdates, String outputChannelName) {
+        if (ackUpdates.isEmpty()) return;
+
+        // a single unordered bulk write per durability profile, no document is returned
+        Map<MongoTemplate, BulkOperations> bulkOperationsByTemplate = new LinkedHashMap<>();
+        for (EventAckUpdate ackUpdate:ackUpdates) {
+            BulkOperations bulkOperations = bulkOperationsByTemplate.computeIfAbsent(
+                    getMongoTemplate(ackUpdate.getType().getOperation()),
+                    template -> template.bulkOps(BulkOperations.BulkMode.UNORDERED, getStoreName(outputChannelName)));
+            Query query = new Query();
+            query.addCriteria(Criteria.where("_id").is(ackUpdate.getEventId()));
+            bulkOperations.updateOne(query, timestampUpdate(ackUpdate.getType().getFieldName(), ackUpdate.getTimestamp()));
+        }
+        int matchedCount = 0;
+        for (BulkOperations bulkOperations:bulkOperationsByTemplate.values()) {
+            BulkWriteResult result = bulkOperations.execute();
+            matchedCount += result.getMatchedCount();
+        }
+        LOGGER.debug("bulk ack update: {} requested, {} matched", ackUpdates.size(), matchedCount);
+    }
+
+    /**
+     * Stream the pending events with a single cursor: the ids of the pending events are
+     * fetched in batches of {@code cursorBatchSize}, each batch is claimed with a lease by
+     * a single {@code updateMany}, the claimed events are read back by the lease token and
+     * handed to the callback before the next batch is fetched.
+     *
+     * <p>No transaction is involved, a claimed event is skipped by any other scanner until
+     * its lease has expired, so an event claimed by a crashed scanner is eventually claimed
+     * again.</p>
+     */
     @Override
     public void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand) {
+        filterPendingProducerAckOrReturned(outputChannelName, 0L, callbackCommand);
+    }
+
+    /**
+     * The events over the max no. of attempts are excluded by the scan and the claim, such
+     * that they are not resent before the quarantine moves them out of the event store.
+     */
+    @Override
+    public void filterPendingProducerAckOrReturned(String outputChannelName, long maxAttempts, EventStoreCallbackCommand callbackCommand) {
         LOGGER.debug("filter pending event operation");
 
-        MongoClient client = mongoDbConfig.mongoClient();
-        String dbName = mongoDbConfig.mongoDbFactory().getDb().getName();
-
-        try (ClientSession session = client.startSession()) {
-            /**
-             * Runs a provided lambda within a transaction, auto-retrying either the commit operation
-             * or entire transaction as needed (and when the error permits) to better ensure that
-             * the transaction can complete successfully.
-             *
-             * To coordinate read and write operations with a transaction, you must pass the session
-             * to each operation in the transaction (transactions are associated with a session.)
-             * At any given time, at most one open transaction for a session.
-             *
-             * Requires at least:
-             * - MongoDB 4.0 with Replica Sets
-             * - Spring-Data-Mongo 2.2
-             * - MongoDB Java Driver 3.8
-             */
-            session.withTransaction(() -> {
-                long retrySuccessfulCount = 0L;
-                MongoCollection<Document> collection = client
-                                                        .getDatabase(dbName)
-                                                        .getCollection(getStoreName(outputChannelName));
-
-                /**
-                 * query all message that was sent at least X (messageExpiredTimeInSec) seconds ago
-                 * X should NOT be less than the typical message sending timeout
-                 */
-                Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
-
-                /**
-                 * If queries do not include the shard key or the prefix of a compound shard key,
-                 * mongos performs a broadcast operation, querying all shards in the sharded cluster.
-                 * These scatter/gather queries can be long running operations.
-                 */
-                Bson bson;
-                if (messageConsumerExpiryTimeInSec>0) {
-                    // an additional query routine to fetch message that has not been consumed after a prolonged period of time
-                    // for example, a returned message whose returned timestamp maybe failed to record in the event store
-                    bson = combine(
-                                lt("writtenOn", currentDateTime.minusSeconds(messageExpiredTimeInSec)),
-                                or(
-                                        lt("producerAckOn", currentDateTime.minusSeconds(messageConsumerExpiryTimeInSec)),
-                                        eq("producerAckOn", null),
-                                        ne("returnedOn", null)
-                                ),
-                                eq("consumerAckOn", null)
-                            );
-                } else {
-                    bson = combine(
-                                lt("writtenOn", currentDateTime.minusSeconds(messageExpiredTimeInSec)),
-                                or(eq("producerAckOn", null),ne("returnedOn", null)),
-                                eq("consumerAckOn", null)
-                            );
-                }
+        MongoCollection<Document> collection = getCollection(getStoreName(outputChannelName));
 
-                FindIterable<Document> documents = collection.find(session, bson)
+        long claimedCount = 0L;
+        long retrySuccessfulCount = 0L;
+        try (MongoCursor<Document> cursor = collection.find(pendingEventFilter(maxAttempts))
+                // only the id is required to claim the event
+                .projection(Projections.include("_id"))
                 // sort the results based on writtenOn timestamp in ascending order
                 .sort(new BasicDBObject("writtenOn", -1))
                 // limit the result set to avoid overwhelming the broker
-                .limit(retryMessageBatchSize);
-
-                LOGGER.debug("total no. of events eligible for retry: {}", Iterables.size(documents));
-
-                for (Document document:documents) {
-                    final String eventId = document.get("_id", String.class);
-                    final String outputChannelBeanName = document.get("channel", String.class);
-                    final String header = document.get("header", String.class);
-                    final String payload = document.get("payload", String.class);
-                    final String payloadClassName = document.get("payloadType", String.class);
-
-                    final Instant writtenOn = ZonedDateTime.now(clock).toInstant();
-
-                    UpdateResult result = collection.updateOne(
-                            session,
-                            eq("_id", eventId),
-                            combine(
-                                    inc("attemptCount", +1L),
-                                    set("writtenOn", writtenOn),
-                                    unset("producerAckOn"), // remove the producer ack timestamp upon resend
-                                    unset("returnedOn") // remove the return timestamp upon resend
-                            )
-                    );
-
-                    if (result.getModifiedCount() == 1) {
-                        LOGGER.debug("retry callback event id: {}", eventId);
-
-                        DomainEvent domainEvent = new DomainEvent.Builder()
-                                .id(eventId)
-                                .channel(outputChannelBeanName)
-                                .header(header)
-                                .payload(payload)
-                                .payloadType(payloadClassName)
-                                .writtenOn(writtenOn)
-                                .build();
-
+                .limit(retryMessageBatchSize)
+                .batchSize(cursorBatchSize)
+                .iterator())
+        {
+            List<String> eventIds = new ArrayList<>(cursorBatchSize);
+            while (cursor.hasNext()) {
+                eventIds.add(cursor.next().get("_id", String.class));
+                if (eventIds.size() >= cursorBatchSize || !cursor.hasNext()) {
+                    List<DomainEvent> domainEvents = claimForResend(collection, eventIds, maxAttempts);
+                    claimedCount += domainEvents.size();
+                    for (DomainEvent domainEvent:domainEvents) {
                         try {
                             callbackCommand.pendingEventFetched(domainEvent);
-                            retrySuccessfulCount += result.getModifiedCount();
+                            retrySuccessfulCount++;
 
                         } catch (Exception e) {
                             // one event fail shouldn't affect the entire retry operation
-                            LOGGER.warn("error while sending event: {} {}", eventId, e.getMessage());
+                            LOGGER.warn("error while sending event: {} {}", domainEvent.getId(), e.getMessage());
                         }
                     }
+                    eventIds = new ArrayList<>(cursorBatchSize);
                 }
-
-                LOGGER.debug("total no. of successful retry: {}", retrySuccessfulCount);
-                return retrySuccessfulCount;
-            });
+            }
 
         } catch (RuntimeException e) {
             LOGGER.error("error processing pending event: {}", e.getMessage());
             throw e;
+
+        } finally {
+            LOGGER.debug("total no. of events claimed for retry: {}, successful retry: {}", claimedCount, retrySuccessfulCount);
+        }
+    }
+
+    /**
+     * The filter of the pending events below the max no. of attempts, 0 if unlimited.
+     */
+    private Bson pendingEventFilter(long maxAttempts) {
+        if (maxAttempts <= 0) {
+            return pendingEventFilter();
         }
+        return and(pendingEventFilter(), lt("attemptCount", maxAttempts));
+    }
+
+    /**
+     * The filter of the events eligible for resending, which are not claimed by any other
+     * scanner or whose claim has expired, and are not awaiting the backoff of a return.
+     *
+     * <p>A returned event is eligible once its next attempt is due regardless of when it
+     * was sent, in case the targeted resend scheduled upon its return is lost.</p>
+     */
+    private Bson pendingEventFilter() {
+        /**
+         * query all message that was sent at least X (messageExpiredTimeInSec) seconds ago
+         * X should NOT be less than the typical message sending timeout
+         */
+        Instant currentDateTime = ZonedDateTime.now(clock).toInstant();
+
+        /**
+         * If queries do not include the shard key or the prefix of a compound shard key,
+         * mongos performs a broadcast operation, querying all shards in the sharded cluster.
+         * These scatter/gather queries can be long running operations.
+         */
+        Bson pendingAck;
+        if (messageConsumerExpiryTimeInSec>0) {
+            // an additional query routine to fetch message that has not been consumed after a prolonged period of time
+            // for example, a returned message whose returned timestamp maybe failed to record in the event store
+            pendingAck = or(
+                    lt("producerAckOn", currentDateTime.minusSeconds(messageConsumerExpiryTimeInSec)),
+                    eq("producerAckOn", null),
+                    ne("returnedOn", null)
+            );
+        } else {
+            pendingAck = or(eq("producerAckOn", null),ne("returnedOn", null));
+        }
+
+        return and(
+                or(
+                        and(lt("writtenOn", currentDateTime.minusSeconds(messageExpiredTimeInSec)), pendingAck),
+                        and(ne("returnedOn", null), lte("nextAttemptAt", currentDateTime))
+                ),
+                or(eq("nextAttemptAt", null), lte("nextAttemptAt", currentDateTime)),
+                eq("consumerAckOn", null),
+                or(eq("resendLeaseExpiresOn", null), lt("resendLeaseExpiresOn", currentDateTime))
+        );
+    }
+
+    /**
+     * Claim a batch of pending events for resending with a lease, the pending filter is
+     * evaluated again by the update so that only one of the concurrent scanners could claim
+     * the same event, then read back the events carrying the lease token of this claim.
+     */
+    private List<DomainEvent> claimForResend(MongoCollection<Document> collection, List<String> eventIds, long maxAttempts) {
+        final String leaseToken = UUID.randomUUID().toString();
+        final Instant writtenOn = ZonedDateTime.now(clock).toInstant();
+
+        UpdateResult result = collection.updateMany(
+                and(in("_id", eventIds), pendingEventFilter(maxAttempts)),
+                combine(
+                        inc("attemptCount", +1L),
+                        set("writtenOn", writtenOn),
+                        set("resendLeaseToken", leaseToken),
+                        set("resendLeaseExpiresOn", writtenOn.plusSeconds(resendLeaseTimeInSec)),
+                        unset("producerAckOn"), // remove the producer ack timestamp upon resend
+                        unset("returnedOn"), // remove the return timestamp upon resend
+                        unset("nextAttemptAt")
+                )
+        );
+        if (result.getModifiedCount() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<DomainEvent> domainEvents = new ArrayList<>((int) result.getModifiedCount());
+        for (Document document:collection.find(and(in("_id", eventIds), eq("resendLeaseToken", leaseToken)))
+                .projection(PENDING_EVENT_PROJECTION)) {
+            LOGGER.debug("retry callback event id: {}", document.get("_id", String.class));
+            domainEvents.add(DomainEventDocumentMapper.fromDocument(document).build());
+        }
+        return domainEvents;
+    }
+
+    /**
+     * The pending events over the max no. of attempts are copied into the quarantine with
+     * an idempotent bulk upsert, then deleted from the event store only if they are still
+     * pending. An event acknowledged in between is kept in the event store and removed from
+     * the quarantine again. At most a batch of events is quarantined per invocation.
+     */
+    @Override
+    public int quarantineEvents(String outputChannelName, long maxAttempts) {
+        MongoCollection<Document> collection = getCollection(getStoreName(outputChannelName));
+        MongoCollection<Document> quarantine = getCollection(getQuarantineName(outputChannelName));
+
+        Bson exhaustedEventFilter = and(gte("attemptCount", maxAttempts), pendingEventFilter());
+        List<Document> documents = collection.find(exhaustedEventFilter)
+                .limit(retryMessageBatchSize)
+                .into(new ArrayList<>());
+        if (documents.isEmpty()) {
+            return 0;
+        }
+
+        final Instant quarantinedOn = ZonedDateTime.now(clock).toInstant();
+        List<String> eventIds = new ArrayList<>(documents.size());
+        List<WriteModel<Document>> upserts = new ArrayList<>(documents.size());
+        for (Document document:documents) {
+            String eventId = document.get("_id", String.class);
+            eventIds.add(eventId);
+            document.remove("resendLeaseToken");
+            document.remove("resendLeaseExpiresOn");
+            document.remove("nextAttemptAt");
+            document.put("quarantinedOn", quarantinedOn);
+            upserts.add(new ReplaceOneModel<>(eq("_id", eventId), document, new ReplaceOptions().upsert(true)));
+        }
+        quarantine.bulkWrite(upserts, new BulkWriteOptions().ordered(false));
+
+        DeleteResult result = collection.deleteMany(and(in("_id", eventIds), exhaustedEventFilter));
+        if (result.getDeletedCount() < eventIds.size()) {
+            List<String> remainingIds = collection.find(in("_id", eventIds))
+                    .projection(Projections.include("_id"))
+                    .map(document -> document.get("_id", String.class))
+                    .into(new ArrayList<>());
+            quarantine.deleteMany(in("_id", remainingIds));
+        }
+        LOGGER.debug("total no. of events quarantined: {}", result.getDeletedCount());
+        return (int) result.getDeletedCount();
+    }
+
+    @Override
+    public List<DomainEvent> findQuarantined(String outputChannelName, int limit) {
+        List<DomainEvent> domainEvents = new ArrayList<>();
+        for (Document document:getCollection(getQuarantineName(outputChannelName)).find()
+                .sort(new BasicDBObject("quarantinedOn", 1))
+                .limit(limit)) {
+            domainEvents.add(toDomainEvent(document));
+        }
+        return domainEvents;
+    }
+
+    @Override
+    public long countQuarantined(String outputChannelName) {
+        return getCollection(getQuarantineName(outputChannelName)).countDocuments();
+    }
+
+    /**
+     * The quarantined events are copied back with an idempotent bulk upsert before being
+     * deleted from the quarantine. The attempt count is reset while the original written
+     * timestamp is kept, so the events are eligible for the next retry operation.
+     */
+    @Override
+    public int reinjectQuarantined(String outputChannelName, Collection<String> eventIds) {
+        if (eventIds.isEmpty()) return 0;
+
+        MongoCollection<Document> collection = getCollection(getStoreName(outputChannelName));
+        MongoCollection<Document> quarantine = getCollection(getQuarantineName(outputChannelName));
+
+        List<String> reinjectedIds = new ArrayList<>(eventIds.size());
+        List<WriteModel<Document>> upserts = new ArrayList<>(eventIds.size());
+        for (Document document:quarantine.find(in("_id", eventIds))) {
+            String eventId = document.get("_id", String.class);
+            reinjectedIds.add(eventId);
+            document.remove("quarantinedOn");
+            document.remove("producerAckOn");
+            document.remove("returnedOn");
+            document.put("attemptCount", 1L);
+            upserts.add(new ReplaceOneModel<>(eq("_id", eventId), document, new ReplaceOptions().upsert(true)));
+        }
+        if (upserts.isEmpty()) {
+            return 0;
+        }
+        collection.bulkWrite(upserts, new BulkWriteOptions().ordered(false));
+        quarantine.deleteMany(in("_id", reinjectedIds));
+        LOGGER.debug("total no. of events re-injected: {}", reinjectedIds.size());
+        return reinjectedIds.size();
     }
 
     @Override
@@ -308,10 +695,24 @@ public class MongoEventStoreDao extends AbstractEventStoreDao {
         if (mongoTemplate.collectionExists(getStoreName(outputChannelName))) {
             mongoTemplate.dropCollection(getStoreName(outputChannelName));
         }
+        if (mongoTemplate.collectionExists(getQuarantineName(outputChannelName))) {
+            mongoTemplate.dropCollection(getQuarantineName(outputChannelName));
+        }
     }
 
     @Override
     public List<DomainEvent> findAll(String outputChannelName) {
-        return mongoTemplate.findAll(DomainEvent.class, getStoreName(outputChannelName));
+        return mongoTemplate.findAll(Document.class, getStoreName(outputChannelName))
+                .stream()
+                .map(this::toDomainEvent)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Read the raw BSON {@link Document} rather than mapping it to {@link DomainEvent}
+     * directly, so that any legacy event with json string header and payload is migrated.
+     */
+    private DomainEvent toDomainEvent(Document document) {
+        return document == null ? null : DomainEventDocumentMapper.fromDocument(document).build();
     }
 }
@@ -0,0 +1,76 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.Map;
+
+/**
+ * Interface to be implemented by non-blocking event store dao, the reactive
+ * counterpart of {@link EventStoreDao}.
+ *
+ * <p>None of the operations block the caller thread, the returned {@link Mono}
+ * is completed on the driver's thread once the database has responded. The
+ * pending events are resent by the blocking {@link EventStoreDao} only.</p>
+ *
+ * @see EventStoreDao
+ * @see ReactiveMongoEventStoreDao
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public interface ReactiveEventStoreDao {
+
+    /**
+     * Configure the system {@link Clock} for reading/writing records into event store based on
+     * a specified timezone
+     *
+     * @param clock
+     */
+    void configureClock(Clock clock);
+
+    /**
+     * Create a {@link DomainEvent} with the supplied attributes and write it into the event store.
+     *
+     * @see EventStoreDao#createEvent(String, Map, Object, String, String, String, String)
+     */
+    Mono<DomainEvent> createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClass,
+            String encoding, String compression, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#updateReturnedTimestamp(String, String)
+     */
+    Mono<DomainEvent> updateReturnedTimestamp(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#updateProducedTimestamp(String, String)
+     */
+    Mono<DomainEvent> updateProducedTimestamp(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#hasConsumedTimeStamp(String, String)
+     */
+    Mono<Boolean> hasConsumedTimeStamp(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#updateConsumedTimestamp(String, String)
+     */
+    Mono<DomainEvent> updateConsumedTimestamp(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#markReturned(String, String)
+     */
+    Mono<Boolean> markReturned(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#markProduced(String, String)
+     */
+    Mono<Boolean> markProduced(String eventId, String outputChannelName);
+
+    /**
+     * @see EventStoreDao#markConsumed(String, String)
+     */
+    Mono<Boolean> markConsumed(String eventId, String outputChannelName);
+
+}
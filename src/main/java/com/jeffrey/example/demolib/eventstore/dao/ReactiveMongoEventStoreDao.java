@@ -0,0 +1,155 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreDurabilityProperties;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.util.DomainEventDocumentMapper;
+import com.mongodb.WriteConcern;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The MongoDB Reactive Streams implementation of {@link ReactiveEventStoreDao}.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Component("ReactiveMongoEventStoreDao")
+public class ReactiveMongoEventStoreDao implements ReactiveEventStoreDao {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveMongoEventStoreDao.class);
+
+    @Value("${com.jeffrey.example.eventstore.mongo.collectionPrefix:DefaultEventStore}") // use default collection prefix if not defined
+    private String eventStorePrefix;
+
+    private Clock clock;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // the templates applying the durability profile of each operation
+    private Map<EventStoreOperation, ReactiveMongoTemplate> durableMongoTemplates = new EnumMap<>(EventStoreOperation.class);
+
+    public ReactiveMongoEventStoreDao(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired @Qualifier("eventStoreReactiveMongoDatabaseFactory") ReactiveMongoDatabaseFactory databaseFactory,
+            @Autowired @Qualifier("eventStoreReactiveMongoTemplate") ReactiveMongoTemplate reactiveMongoTemplate,
+            @Autowired EventStoreDurabilityProperties durabilityProperties
+    ) {
+        this.clock = clock;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        for (EventStoreOperation operation:EventStoreOperation.values()) {
+            WriteConcern writeConcern = durabilityProperties.getWriteConcern(operation);
+            if (writeConcern == null) {
+                durableMongoTemplates.put(operation, reactiveMongoTemplate);
+            } else {
+                ReactiveMongoTemplate durableMongoTemplate = new ReactiveMongoTemplate(databaseFactory, reactiveMongoTemplate.getConverter());
+                durableMongoTemplate.setWriteConcern(writeConcern);
+                durableMongoTemplates.put(operation, durableMongoTemplate);
+            }
+        }
+    }
+
+    private String getStoreName(String outputChannelName) {
+        return String.format("%s-%s", eventStorePrefix, outputChannelName);
+    }
+
+    @Override
+    public void configureClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public Mono<DomainEvent> createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
+    {
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(eventId)
+                .channel(outputChannelName)
+                .header(header)
+                .payload(payload)
+                .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compression)
+                .writtenOn(ZonedDateTime.now(clock).toInstant())
+                .build();
+
+        return durableMongoTemplates.get(EventStoreOperation.CREATE).insert(domainEvent, getStoreName(outputChannelName));
+    }
+
+    @Override
+    public Mono<DomainEvent> updateReturnedTimestamp(String eventId, String outputChannelName) {
+        return updateTimestamp(eventId, EventAckUpdate.Type.RETURNED, outputChannelName);
+    }
+
+    @Override
+    public Mono<DomainEvent> updateProducedTimestamp(String eventId, String outputChannelName) {
+        return updateTimestamp(eventId, EventAckUpdate.Type.PRODUCED, outputChannelName);
+    }
+
+    @Override
+    public Mono<Boolean> hasConsumedTimeStamp(String eventId, String outputChannelName) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        query.addCriteria(Criteria.where("consumerAckOn").ne(null));
+        return reactiveMongoTemplate.exists(query, getStoreName(outputChannelName));
+    }
+
+    @Override
+    public Mono<DomainEvent> updateConsumedTimestamp(String eventId, String outputChannelName) {
+        return updateTimestamp(eventId, EventAckUpdate.Type.CONSUMED, outputChannelName);
+    }
+
+    private Mono<DomainEvent> updateTimestamp(String eventId, EventAckUpdate.Type type, String outputChannelName) {
+        // atomically query and update the document
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        Update update = MongoEventStoreDao.timestampUpdate(type.getFieldName(), ZonedDateTime.now(clock).toInstant());
+        return durableMongoTemplates.get(type.getOperation()).findAndModify(
+                query,
+                update,
+                new FindAndModifyOptions().returnNew(true),
+                Document.class,
+                getStoreName(outputChannelName)
+        ).map(document -> DomainEventDocumentMapper.fromDocument(document).build());
+    }
+
+    @Override
+    public Mono<Boolean> markReturned(String eventId, String outputChannelName) {
+        return markTimestamp(eventId, EventAckUpdate.Type.RETURNED, outputChannelName);
+    }
+
+    @Override
+    public Mono<Boolean> markProduced(String eventId, String outputChannelName) {
+        return markTimestamp(eventId, EventAckUpdate.Type.PRODUCED, outputChannelName);
+    }
+
+    @Override
+    public Mono<Boolean> markConsumed(String eventId, String outputChannelName) {
+        return markTimestamp(eventId, EventAckUpdate.Type.CONSUMED, outputChannelName);
+    }
+
+    private Mono<Boolean> markTimestamp(String eventId, EventAckUpdate.Type type, String outputChannelName) {
+        // a plain updateOne, the updated document is not sent back
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(eventId));
+        Update update = MongoEventStoreDao.timestampUpdate(type.getFieldName(), ZonedDateTime.now(clock).toInstant());
+        return durableMongoTemplates.get(type.getOperation()).updateFirst(query, update, getStoreName(outputChannelName))
+                .map(result -> result.getMatchedCount() > 0);
+    }
+
+}
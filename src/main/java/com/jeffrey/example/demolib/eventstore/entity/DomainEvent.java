@@ -10,6 +10,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.util.Assert;
 
 import java.time.Instant;
+import java.util.Map;
 
 /**
  * The data model class of the event store
@@ -19,6 +20,16 @@ import java.time.Instant;
 @Document
 public class DomainEvent {
 
+    /**
+     * Encoding of events whose header is stored as a BSON sub-document and
+     * payload is stored as a native BSON value.
+     *
+     * Events written before the introduction of encoding stored the header and
+     * payload as json strings, these are migrated by the reader of the event
+     * store when fetched.
+     */
+    public static final String ENCODING_BSON = "bson";
+
     /**
      * The shard key to distribute the collection’s documents across shards.
      *
@@ -33,6 +44,11 @@ public class DomainEvent {
      * less likely to target a single shard, resulting in more cluster wide broadcast
      * operations
      *
+     * When the {@link com.jeffrey.example.demolib.eventstore.util.TimeOrderedIdGenerator}
+     * is active, the hashed index is skipped and the default ascending _id index
+     * is used, so inserts append to the right edge and time-range scans could run
+     * on the _id alone.
+     *
      * TODO: Isolate a specific subset of data on a specific set of shards using zone
      */
     @HashIndexed
@@ -47,14 +63,21 @@ public class DomainEvent {
     private String channel;
 
     @JsonProperty("header")
-    private String header;
+    private Map<String, Object> header;
 
     @JsonProperty("payload")
-    private String payload;
+    private Object payload;
 
     @JsonProperty("payloadType")
     private String payloadType;
 
+    @JsonProperty("encoding")
+    private String encoding;
+
+    // name of the compressor applied to the encoded payload, null if uncompressed
+    @JsonProperty("compression")
+    private String compression;
+
     @JsonProperty("writtenOn")
     private Instant writtenOn;
 
@@ -101,14 +124,22 @@ public class DomainEvent {
 
     public String getChannel() { return channel; }
 
-    public String getHeader() {
+    public Map<String, Object> getHeader() {
         return header;
     }
 
-    public String getPayload() {
+    public Object getPayload() {
         return payload;
     }
 
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
     public Instant getWrittenOn() {
         return writtenOn;
     }
@@ -133,10 +164,13 @@ public class DomainEvent {
 
     public static class Builder {
         private String id;
+        private Instant createdOn;
         private String channel;
-        private String header;
-        private String payload;
+        private Map<String, Object> header;
+        private Object payload;
         private String payloadType;
+        private String encoding = ENCODING_BSON; // default
+        private String compression;
         private Instant writtenOn;
         private long attemptCount = 1L; // default
         private Instant returnedOn;
@@ -150,21 +184,36 @@ public class DomainEvent {
             return this;
         }
 
+        public Builder createdOn(Instant createdOn) {
+            this.createdOn = createdOn;
+            return this;
+        }
+
         public Builder channel(String channel) {
             this.channel = channel;
             return this;
         }
 
-        public Builder header(String header) {
+        public Builder header(Map<String, Object> header) {
             this.header = header;
             return this;
         }
 
-        public Builder payload(String payload) {
+        public Builder payload(Object payload) {
             this.payload = payload;
             return this;
         }
 
+        public Builder encoding(String encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        public Builder compression(String compression) {
+            this.compression = compression;
+            return this;
+        }
+
         public Builder payloadType(String payloadType) {
             this.payloadType = payloadType;
             return this;
@@ -205,11 +254,14 @@ public class DomainEvent {
 
             DomainEvent domainEvent = new DomainEvent();
             domainEvent.id = this.id;
-            domainEvent.createdOn = this.writtenOn; // creation timestamp is first written timestamp
+            // creation timestamp is first written timestamp unless specified
+            domainEvent.createdOn = this.createdOn != null ? this.createdOn : this.writtenOn;
             domainEvent.channel = this.channel;
             domainEvent.header = this.header;
             domainEvent.payload = this.payload;
             domainEvent.payloadType = this.payloadType;
+            domainEvent.encoding = this.encoding;
+            domainEvent.compression = this.compression;
             domainEvent.writtenOn = this.writtenOn;
             domainEvent.attemptCount = this.attemptCount;
             domainEvent.returnedOn = this.returnedOn;
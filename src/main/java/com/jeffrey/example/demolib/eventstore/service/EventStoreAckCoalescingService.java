@@ -0,0 +1,241 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.dao.EventAckUpdate;
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The service class for coalescing the ack updates of the event store.
+ *
+ * <p>The returned, produced and consumed acks are not written one by one, instead the
+ * update is captured with the time it is received and gathered into the buffer of the
+ * output channel. The buffered updates of an output channel are written with a single
+ * bulk operation at the end of every window, or earlier once the buffer is full, by the
+ * shared {@link EventStoreScheduler}.</p>
+ *
+ * <p>Within a window, the updates of the same event and the same ack type are collapsed
+ * into one, the latest update wins. The buffered updates are flushed upon shutdown, an
+ * update submitted afterwards is written directly. A bulk update which failed is applied
+ * to the {@link EventStoreSpilloverService} instead, as the events could have been spilled
+ * while the event store is unavailable. An update lost due to a crash leaves the event
+ * pending, which is eventually picked up by the retry operation.</p>
+ *
+ * <p>The consumed ack is not coalesced if {@code consumer.ignoreDuplicate} is enabled,
+ * it commits the consume claim of the event and must be visible to the redeliveries at
+ * once.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreAckCoalescingService")
+public class EventStoreAckCoalescingService implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreAckCoalescingService.class);
+
+    @Value("${com.jeffrey.example.eventstore.ackCoalescing.enabled:false}") // ack coalescing is opt-in
+    boolean enabled;
+
+    @Value("${com.jeffrey.example.eventstore.ackCoalescing.windowMillis:20}") // max time an ack waits for its bulk update
+    long windowMillis;
+
+    @Value("${com.jeffrey.example.eventstore.ackCoalescing.maxBatchSize:1000}") // max no. of updates per bulk update
+    int maxBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.ignoreDuplicate:false}")
+    boolean ignoreDuplicate;
+
+    private final ConcurrentMap<String, AckBuffer> buffers = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown = false;
+
+    private Clock clock;
+
+    private EventStoreDao eventStoreDao;
+
+    private EventStoreSpilloverService eventStoreSpilloverService;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    public EventStoreAckCoalescingService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired EventStoreDao eventStoreDao,
+            @Autowired EventStoreSpilloverService eventStoreSpilloverService,
+            @Autowired EventStoreScheduler eventStoreScheduler
+    ) {
+        this.clock = clock;
+        this.eventStoreDao = eventStoreDao;
+        this.eventStoreSpilloverService = eventStoreSpilloverService;
+        this.eventStoreScheduler = eventStoreScheduler;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param type the {@link EventAckUpdate.Type} of the ack
+     * @return true if the ack of the type should be submitted to this service
+     */
+    public boolean isCoalesced(EventAckUpdate.Type type) {
+        return enabled && !(type == EventAckUpdate.Type.CONSUMED && ignoreDuplicate);
+    }
+
+    /**
+     * Capture an ack update of an event and hand it to the buffer of the output channel,
+     * this method doesn't wait for the update to be written.
+     *
+     * @param eventId the event's ID to update
+     * @param type the {@link EventAckUpdate.Type} of the ack
+     * @param outputChannelName the name of the output channel the event was written
+     */
+    public void submit(String eventId, EventAckUpdate.Type type, String outputChannelName) {
+        EventAckUpdate ackUpdate = new EventAckUpdate(eventId, type, ZonedDateTime.now(clock).toInstant());
+
+        if (!shutdown && buffers.computeIfAbsent(outputChannelName, AckBuffer::new).add(ackUpdate)) {
+            return;
+        }
+        // flusher is no longer available, write the update directly
+        write(Collections.singletonList(ackUpdate), outputChannelName);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // the buffers refuse any update from now on
+        shutdown = true;
+        for (AckBuffer buffer:buffers.values()) {
+            // write the remaining updates
+            buffer.flush();
+        }
+    }
+
+    private void write(List<EventAckUpdate> batch, String outputChannelName) {
+        // write in chunks no larger than the max batch size
+        for (int i=0; i<batch.size(); i+=maxBatchSize) {
+            List<EventAckUpdate> chunk = batch.subList(i, Math.min(i + maxBatchSize, batch.size()));
+            try {
+                eventStoreDao.updateTimestamps(chunk, outputChannelName);
+                LOGGER.debug("coalesced {} ack updates into channel: {}", chunk.size(), outputChannelName);
+
+            } catch (RuntimeException e) {
+                LOGGER.warn("error writing coalesced ack updates: {}", e.getMessage());
+                spill(chunk, outputChannelName);
+            }
+        }
+    }
+
+    /**
+     * Apply the updates to the spilled events, any other event remains pending and
+     * will be picked up by the retry operation.
+     */
+    private void spill(List<EventAckUpdate> chunk, String outputChannelName) {
+        if (!eventStoreSpilloverService.isEnabled()) {
+            LOGGER.error("{} ack updates not written into channel: {}", chunk.size(), outputChannelName);
+            return;
+        }
+        for (EventAckUpdate ackUpdate:chunk) {
+            try {
+                switch (ackUpdate.getType()) {
+                    case RETURNED:
+                        eventStoreSpilloverService.updateReturnedTimestamp(ackUpdate.getEventId(), outputChannelName);
+                        break;
+                    case PRODUCED:
+                        eventStoreSpilloverService.updateProducedTimestamp(ackUpdate.getEventId(), outputChannelName);
+                        break;
+                    default:
+                        // the spill journal doesn't track the consumed ack
+                        break;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("error spilling ack update of event: {} {}", ackUpdate.getEventId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The buffered updates of a specific output channel
+     */
+    private class AckBuffer {
+        private final String outputChannelName;
+        // serialize the flushes of the channel, such that the latest update is written last
+        private final Object flushLock = new Object();
+        // keyed by event id and ack type, preserving the arrival order
+        private Map<String, EventAckUpdate> updates = new LinkedHashMap<>();
+        private boolean windowFlushScheduled = false;
+        private boolean fullFlushScheduled = false;
+
+        private AckBuffer(String outputChannelName) {
+            this.outputChannelName = outputChannelName;
+        }
+
+        /**
+         * @return false if the update is refused as the service is shutting down
+         */
+        private synchronized boolean add(EventAckUpdate ackUpdate) {
+            if (shutdown) {
+                // checked under the lock of the buffer, so that the final flush never misses an update
+                return false;
+            }
+            String key = ackUpdate.getEventId() + ":" + ackUpdate.getType();
+            // the latest update wins
+            updates.remove(key);
+            updates.put(key, ackUpdate);
+            if (updates.size() >= maxBatchSize) {
+                if (!fullFlushScheduled) {
+                    fullFlushScheduled = true;
+                    eventStoreScheduler.execute(EventStoreScheduler.priorityQueue(outputChannelName), this::flushFull);
+                }
+            } else if (!windowFlushScheduled) {
+                windowFlushScheduled = true;
+                eventStoreScheduler.schedule(EventStoreScheduler.priorityQueue(outputChannelName), this::flushWindow, windowMillis);
+            }
+            return true;
+        }
+
+        private void flushWindow() {
+            synchronized (this) {
+                windowFlushScheduled = false;
+            }
+            flush();
+        }
+
+        private void flushFull() {
+            synchronized (this) {
+                fullFlushScheduled = false;
+            }
+            flush();
+        }
+
+        private synchronized List<EventAckUpdate> drain() {
+            if (updates.isEmpty()) {
+                return null;
+            }
+            List<EventAckUpdate> batch = new ArrayList<>(updates.values());
+            updates = new LinkedHashMap<>();
+            return batch;
+        }
+
+        private void flush() {
+            synchronized (flushLock) {
+                List<EventAckUpdate> batch = drain();
+                if (batch != null) {
+                    write(batch, outputChannelName);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jeffrey.example.demolib.eventstore.dao.ConsumeClaim;
+import com.jeffrey.example.demolib.eventstore.util.RotatingBloomFilter;
+import com.jeffrey.example.demolib.eventstore.util.TimeOrderedIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service class for answering whether an event had been consumed without
+ * querying the event store.
+ *
+ * <p>The ids of the events consumed by this node are kept in two tiers:</p>
+ * <ul>
+ *     <li>a bounded LRU cache of the recently consumed events with expiry, a hit is a
+ *     definite positive answer since a consumed event never become un-consumed</li>
+ *     <li>a rotating time-partitioned bloom filter, a miss is a definite negative answer
+ *     provided that this node is the only consumer of the channel, and the event was
+ *     written after this node started and within the retention of the bloom filter,
+ *     which is determined from the time-ordered event id</li>
+ * </ul>
+ *
+ * <p>Any other lookup falls back to the event store. The bloom filter is opt-in on top
+ * of the cache since the negative answer is only valid with a single consumer.</p>
+ *
+ * <p>An event with a negative answer is claimed in memory rather than with a lease in the
+ * event store, since only a concurrent delivery to this node could process the same event.
+ * The in-memory claim is discarded once the event is recorded as consumed or released.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreConsumedCacheService")
+public class EventStoreConsumedCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreConsumedCacheService.class);
+
+    private static final String METRIC_NAME = "eventstore.consumed.cache";
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.enabled:false}") // consumed cache is opt-in
+    boolean enabled;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.maxSize:100000}") // max no. of consumed event ids to cache
+    long maxSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.expireAfterInSec:3600}") // cached event id expiry default to 1hr
+    long expireAfterInSec;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.enabled:false}") // enable only with a single consumer
+    boolean bloomFilterEnabled;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.partitions:4}") // no. of partitions retained
+    int bloomFilterPartitions;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.partitionTimeInSec:900}") // time slot of a partition default to 15min
+    long bloomFilterPartitionTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.expectedInsertions:1000000}") // expected no. of event ids per partition
+    int bloomFilterExpectedInsertions;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.falsePositiveProbability:0.01}") // per partition
+    double bloomFilterFalsePositiveProbability;
+
+    @Value("${com.jeffrey.example.eventstore.consumedCache.bloomFilter.maxClockSkewMillis:1000}") // max clock skew between producer and consumer
+    long maxClockSkewMillis;
+
+    private Clock clock;
+
+    private MeterRegistry meterRegistry; // null if metrics is not available
+
+    private Instant trackedSince;
+
+    private Cache<String, Boolean> consumedCache;
+
+    private RotatingBloomFilter consumedBloomFilter; // null if the bloom filter is not enabled
+
+    // the events claimed in memory and not yet consumed
+    private final Set<String> claimedKeys = ConcurrentHashMap.newKeySet();
+
+    private Counter hitCounter;
+
+    private Counter negativeCounter;
+
+    private Counter missCounter;
+
+    public EventStoreConsumedCacheService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired ObjectProvider<MeterRegistry> meterRegistryProvider
+    ) {
+        this.clock = clock;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        trackedSince = clock.instant();
+        consumedCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterInSec, TimeUnit.SECONDS)
+                .build();
+
+        if (bloomFilterEnabled) {
+            consumedBloomFilter = new RotatingBloomFilter(
+                    clock,
+                    bloomFilterPartitions,
+                    TimeUnit.SECONDS.toMillis(bloomFilterPartitionTimeInSec),
+                    bloomFilterExpectedInsertions,
+                    bloomFilterFalsePositiveProbability);
+            LOGGER.info("consumed bloom filter occupies approximately {} bytes", consumedBloomFilter.getApproximateSizeInBytes());
+        }
+
+        if (meterRegistry != null) {
+            hitCounter = Counter.builder(METRIC_NAME).tag("result", "hit").register(meterRegistry);
+            negativeCounter = Counter.builder(METRIC_NAME).tag("result", "negative").register(meterRegistry);
+            missCounter = Counter.builder(METRIC_NAME).tag("result", "miss").register(meterRegistry);
+            Gauge.builder(METRIC_NAME + ".size", consumedCache, Cache::size).register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lookup whether an event had been consumed without querying the event store.
+     *
+     * @param eventId the event's ID to lookup
+     * @param outputChannelName the name of the output channel the event was written
+     * @return true if the event had been consumed, false if the event had not been
+     * consumed, null if it's undetermined and the event store should be queried
+     */
+    public Boolean lookup(String eventId, String outputChannelName) {
+        String key = keyOf(eventId, outputChannelName);
+        if (consumedCache.getIfPresent(key) != null) {
+            increment(hitCounter);
+            return Boolean.TRUE;
+        }
+        if (consumedBloomFilter != null && !consumedBloomFilter.mightContain(key) && isTracked(eventId)) {
+            increment(negativeCounter);
+            return Boolean.FALSE;
+        }
+        increment(missCounter);
+        return null;
+    }
+
+    /**
+     * Claim an event for consuming in memory, provided that the lookup has answered that
+     * the event had not been consumed.
+     *
+     * @param eventId the event's ID to claim
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link ConsumeClaim#CLAIMED} if claimed, {@link ConsumeClaim#CLAIMED_BY_OTHERS}
+     * if it's being consumed by another thread of this node, null if it's undetermined and
+     * the event should be claimed in the event store
+     */
+    public ConsumeClaim claim(String eventId, String outputChannelName) {
+        String key = keyOf(eventId, outputChannelName);
+        if (!claimedKeys.add(key)) {
+            return ConsumeClaim.CLAIMED_BY_OTHERS;
+        }
+        // the event could have been consumed and its claim discarded since the lookup
+        if (consumedCache.getIfPresent(key) != null ||
+                consumedBloomFilter == null || consumedBloomFilter.mightContain(key))
+        {
+            claimedKeys.remove(key);
+            return null;
+        }
+        return ConsumeClaim.CLAIMED;
+    }
+
+    /**
+     * Release the in-memory claim of an event made by {@link #claim(String, String)} if any.
+     *
+     * @param eventId the event's ID claimed
+     * @param outputChannelName the name of the output channel the event was written
+     */
+    public void release(String eventId, String outputChannelName) {
+        claimedKeys.remove(keyOf(eventId, outputChannelName));
+    }
+
+    /**
+     * Record an event as consumed, this should be invoked no later than the consumed
+     * ack is written into the event store.
+     *
+     * @param eventId the event's ID consumed
+     * @param outputChannelName the name of the output channel the event was written
+     */
+    public void recordConsumed(String eventId, String outputChannelName) {
+        String key = keyOf(eventId, outputChannelName);
+        consumedCache.put(key, Boolean.TRUE);
+        if (consumedBloomFilter != null) {
+            consumedBloomFilter.put(key);
+        }
+        // discard the in-memory claim only once the event is visible as consumed
+        claimedKeys.remove(key);
+    }
+
+    /**
+     * Every consumption of an event tracked by this node must be recorded in the bloom
+     * filter, the event must be written after this node started and no earlier than the
+     * oldest partition retained, allowing for the clock skew of the producer.
+     */
+    private boolean isTracked(String eventId) {
+        Instant writtenOn = TimeOrderedIdGenerator.timestampOf(eventId);
+        if (writtenOn == null) {
+            return false;
+        }
+        Instant retainedSince = consumedBloomFilter.getRetainedSince();
+        Instant since = retainedSince.isAfter(trackedSince) ? retainedSince : trackedSince;
+        return !writtenOn.isBefore(since.plusMillis(maxClockSkewMillis));
+    }
+
+    private static String keyOf(String eventId, String outputChannelName) {
+        return outputChannelName + ":" + eventId;
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The service class for writing events into the event store with group commit.
+ *
+ * <p>Concurrent publishers hand their {@link DomainEvent} to a bounded buffer of the
+ * output channel, a flush of the buffer is submitted to the priority queue of the output
+ * channel on the shared {@link EventStoreScheduler}, which writes the events with a single
+ * bulk insert once either the batch size or the maximum delay is reached, such that no
+ * thread is created per output channel. Each publisher stays blocked until the batch containing its own event is
+ * durable, so the at-least-once guarantee is preserved while the number of round-trips
+ * to the database drops to one per batch.</p>
+ *
+ * <p>The bulk insert is executed by the scheduler, it does not participate in any
+ * transaction opened by the publisher. If a batch failed, every publisher of the batch
+ * is informed with the failure, any event which was partially written will be picked
+ * up by the retry operation.</p>
+ *
+ * <p>An event is either taken by the flusher or withdrawn by its publisher, never both.
+ * A publisher whose wait has timed out withdraws its event and fails, unless the flusher
+ * has already taken it, in which case the publisher waits for the outcome of the write.
+ * An event handed over while the service is shutting down is withdrawn and written
+ * directly if the flusher did not take it, the events remaining in the buffers upon
+ * shutdown are flushed by the shutting down thread.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreGroupCommitService")
+public class EventStoreGroupCommitService implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreGroupCommitService.class);
+
+    @Value("${com.jeffrey.example.eventstore.groupCommit.enabled:false}") // group commit is opt-in
+    boolean enabled;
+
+    @Value("${com.jeffrey.example.eventstore.groupCommit.batchSize:100}") // max no. of events per bulk insert
+    int batchSize;
+
+    @Value("${com.jeffrey.example.eventstore.groupCommit.maxDelayMillis:5}") // max time an event waits for its batch
+    long maxDelayMillis;
+
+    @Value("${com.jeffrey.example.eventstore.groupCommit.bufferCapacity:1000}") // max no. of buffered events per channel
+    int bufferCapacity;
+
+    @Value("${com.jeffrey.example.eventstore.groupCommit.timeoutMillis:10000}") // max time a publisher is blocked
+    long timeoutMillis;
+
+    private final ConcurrentMap<String, GroupCommitBuffer> buffers = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown = false;
+
+    private Clock clock;
+
+    private EventStoreDao eventStoreDao;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    public EventStoreGroupCommitService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired EventStoreDao eventStoreDao,
+            @Autowired EventStoreScheduler eventStoreScheduler
+    ) {
+        this.clock = clock;
+        this.eventStoreDao = eventStoreDao;
+        this.eventStoreScheduler = eventStoreScheduler;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Create a {@link DomainEvent} with the supplied attributes and hand it to the group commit
+     * buffer of the output channel. This method is blocking until the batch containing the event
+     * is written into the event store.
+     *
+     * @param eventId the unique ID of the event
+     * @param header the message's header as a BSON compatible {@link Map}
+     * @param payload the message's payload encoded by the payload codec
+     * @param payloadClassName the {@link Class} name of the payload
+     * @param encoding name of the payload codec which encoded the payload
+     * @param compression name of the compressor applied to the payload, null if uncompressed
+     * @param outputChannelName name of channel where the message is published to
+     * @return the {@link DomainEvent} written
+     */
+    public DomainEvent createEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
+    {
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(eventId)
+                .channel(outputChannelName)
+                .header(header)
+                .payload(payload)
+                .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compression)
+                .writtenOn(ZonedDateTime.now(clock).toInstant())
+                .build();
+
+        if (shutdown) {
+            // flusher is no longer available, write the event directly
+            eventStoreDao.createEvents(Collections.singletonList(domainEvent), outputChannelName);
+            return domainEvent;
+        }
+
+        PendingEvent pendingEvent = new PendingEvent(domainEvent);
+        GroupCommitBuffer buffer = buffers.computeIfAbsent(outputChannelName, GroupCommitBuffer::new);
+        try {
+            if (!buffer.queue.offer(pendingEvent, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("group commit buffer is full for channel: " + outputChannelName);
+            }
+            buffer.scheduleFlush();
+            if (shutdown && pendingEvent.withdraw()) {
+                // the flusher could have exited before the event is handed over
+                eventStoreDao.createEvents(Collections.singletonList(domainEvent), outputChannelName);
+                return domainEvent;
+            }
+            awaitGroupCommit(pendingEvent);
+            return domainEvent;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void awaitGroupCommit(PendingEvent pendingEvent) throws InterruptedException, ExecutionException {
+        try {
+            pendingEvent.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException e) {
+            if (pendingEvent.withdraw()) {
+                // the event will never be written, the publisher could safely retry
+                throw new IllegalStateException("timeout while waiting for group commit", e);
+            }
+            // the event is being written by the flusher, failing now could result in a duplicate upon retry
+            pendingEvent.future.get();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        shutdown = true;
+        for (GroupCommitBuffer buffer:buffers.values()) {
+            // the scheduler may no longer run the flush, drain the remaining events at once
+            buffer.flushAll();
+        }
+    }
+
+    private static class PendingEvent {
+        private static final int PENDING = 0;
+        private static final int TAKEN = 1;
+        private static final int WITHDRAWN = 2;
+
+        private final DomainEvent domainEvent;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private PendingEvent(DomainEvent domainEvent) {
+            this.domainEvent = domainEvent;
+        }
+
+        /**
+         * @return true if the event is taken by the flusher, false if it's withdrawn by the publisher
+         */
+        private boolean take() {
+            return state.compareAndSet(PENDING, TAKEN);
+        }
+
+        /**
+         * @return true if the event is withdrawn by the publisher, false if it's taken by the flusher
+         */
+        private boolean withdraw() {
+            return state.compareAndSet(PENDING, WITHDRAWN);
+        }
+    }
+
+    /**
+     * A bounded buffer of a specific output channel and its flush on the scheduler
+     */
+    private class GroupCommitBuffer {
+        private final String outputChannelName;
+        private final String queueName;
+        private final BlockingQueue<PendingEvent> queue;
+        private final AtomicBoolean delayedFlushScheduled = new AtomicBoolean(false);
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+        private GroupCommitBuffer(String outputChannelName) {
+            this.outputChannelName = outputChannelName;
+            this.queueName = EventStoreScheduler.priorityQueue(outputChannelName);
+            this.queue = new ArrayBlockingQueue<>(bufferCapacity);
+        }
+
+        /**
+         * Flush at once if a full batch is buffered, otherwise once the max delay is reached.
+         * At most one flush of each kind is pending at any time.
+         */
+        private void scheduleFlush() {
+            if (queue.size() >= batchSize) {
+                if (flushScheduled.compareAndSet(false, true)) {
+                    eventStoreScheduler.execute(queueName, () -> {
+                        flushScheduled.set(false);
+                        flushBatches();
+                    });
+                }
+            } else if (delayedFlushScheduled.compareAndSet(false, true)) {
+                eventStoreScheduler.schedule(queueName, () -> {
+                    delayedFlushScheduled.set(false);
+                    flushBatches();
+                }, maxDelayMillis);
+            }
+        }
+
+        /**
+         * Write the full batches buffered and the partial batch remaining if any, the events
+         * buffered in the meantime are flushed by a subsequent flush.
+         */
+        private void flushBatches() {
+            final List<PendingEvent> batch = new ArrayList<>(batchSize);
+            int remaining = queue.size();
+            while (remaining > 0) {
+                queue.drainTo(batch, batchSize);
+                if (batch.isEmpty()) break;
+                remaining -= batch.size();
+                try {
+                    flush(batch);
+                } finally {
+                    batch.clear();
+                }
+            }
+            if (!queue.isEmpty()) {
+                scheduleFlush();
+            }
+        }
+
+        private void flushAll() {
+            final List<PendingEvent> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                try {
+                    flush(batch);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void flush(List<PendingEvent> batch) {
+            // skip the events withdrawn by their publisher
+            batch.removeIf(pendingEvent -> !pendingEvent.take());
+            if (batch.isEmpty()) return;
+
+            List<DomainEvent> domainEvents = new ArrayList<>(batch.size());
+            for (PendingEvent pendingEvent:batch) {
+                domainEvents.add(pendingEvent.domainEvent);
+            }
+
+            try {
+                eventStoreDao.createEvents(domainEvents, outputChannelName);
+                LOGGER.debug("group commit {} events into channel: {}", domainEvents.size(), outputChannelName);
+                batch.forEach(pendingEvent -> pendingEvent.future.complete(null));
+
+            } catch (RuntimeException e) {
+                LOGGER.error("error writing group commit batch: {}", e.getMessage());
+                batch.forEach(pendingEvent -> pendingEvent.future.completeExceptionally(e));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.util.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The service class for tracking the published messages until their publisher confirms
+ * arrive, so that an unconfirmed message is resent from memory without reading the
+ * event store.
+ *
+ * <p>Every message published is registered in a {@link HashedTimingWheel} keyed by the
+ * event id, holding the message already built. A positive confirm cancels the timeout,
+ * a message not confirmed within the timeout is resent with an incremented attempt
+ * count, and registered again until the max no. of resends is reached.</p>
+ *
+ * <p>The tracking is best-effort: nothing is written to the event store upon an in-memory
+ * resend, and a message is not tracked once the max no. of tracked messages is reached or
+ * the node restarts. The retry operation scanning the event store remains as the backstop
+ * for any event not confirmed, and is expected to find nothing most of the time, in which
+ * case its cadence backs off to the ceiling.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStorePublishTrackerService")
+public class EventStorePublishTrackerService implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStorePublishTrackerService.class);
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.enabled:false}") // in-memory tracking is opt-in
+    boolean enabled;
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.timeoutMillis:5000}") // should be shorter than the message sending expiry
+    long timeoutMillis;
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.tickMillis:100}") // precision of the timeout
+    long tickMillis;
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.wheelSize:512}") // no. of ticks per rotation of the wheel
+    int wheelSize;
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.maxTracked:100000}") // max no. of messages held in memory
+    int maxTracked;
+
+    @Value("${com.jeffrey.example.eventstore.publishTracker.maxResends:3}") // left to the retry operation afterwards
+    int maxResends;
+
+    private Clock clock;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreResendService eventStoreResendService;
+
+    private HashedTimingWheel<String, TrackedPublish> timingWheel; // null if the tracking is not enabled
+
+    private BiConsumer<Message<?>, String> sender;
+
+    private EventStoreScheduler.PeriodicTask ticker;
+
+    public EventStorePublishTrackerService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired EventStoreScheduler eventStoreScheduler,
+            @Autowired EventStoreResendService eventStoreResendService
+    ) {
+        this.clock = clock;
+        this.eventStoreScheduler = eventStoreScheduler;
+        this.eventStoreResendService = eventStoreResendService;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        timingWheel = new HashedTimingWheel<>(clock, tickMillis, wheelSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start firing the timeouts of the messages tracked.
+     *
+     * @param sender the sender which resend the {@link Message} to the output channel
+     */
+    public synchronized void start(BiConsumer<Message<?>, String> sender) {
+        if (!enabled || ticker != null) {
+            return;
+        }
+        this.sender = sender;
+        ticker = eventStoreScheduler.scheduleWithFixedDelay(
+                EventStoreScheduler.HOUSEKEEPING_QUEUE, this::fireTimeouts, tickMillis, tickMillis);
+    }
+
+    /**
+     * Track a message published until its publisher confirm arrives.
+     *
+     * @param eventId the event's ID of the message
+     * @param outputChannelName the name of the output channel the message is sent to
+     * @param message the {@link Message} published
+     * @return true if the message is tracked, false if it's left to the retry operation
+     */
+    public boolean track(String eventId, String outputChannelName, Message<?> message) {
+        if (!enabled) {
+            return false;
+        }
+        if (timingWheel.size() >= maxTracked) {
+            LOGGER.debug("max no. of tracked messages reached, event is left to the retry operation: {}", eventId);
+            return false;
+        }
+        timingWheel.schedule(eventId, new TrackedPublish(outputChannelName, message, 0), timeoutMillis);
+        return true;
+    }
+
+    /**
+     * Stop tracking a message, upon its publisher confirm or if it's not published.
+     *
+     * @param eventId the event's ID of the message
+     */
+    public void untrack(String eventId) {
+        if (!enabled || eventId == null) {
+            return;
+        }
+        timingWheel.cancel(eventId);
+    }
+
+    public int getTrackedCount() {
+        return enabled ? timingWheel.size() : 0;
+    }
+
+    private void fireTimeouts() {
+        Map<String, TrackedPublish> expired = timingWheel.advance();
+        for (Map.Entry<String, TrackedPublish> entry:expired.entrySet()) {
+            String eventId = entry.getKey();
+            TrackedPublish trackedPublish = entry.getValue();
+            if (trackedPublish.resendCount >= maxResends) {
+                LOGGER.debug("publisher confirm not received after {} resends, event is left to the retry operation: {}",
+                        trackedPublish.resendCount, eventId);
+                continue;
+            }
+
+            // a resent message could be a duplicate to the consumer
+            Object attemptCount = trackedPublish.message.getHeaders().get(EventStoreService.ATTEMPT_COUNT_HEADER);
+            Message<?> message = MessageBuilder.fromMessage(trackedPublish.message)
+                    .setHeader(EventStoreService.ATTEMPT_COUNT_HEADER,
+                            (attemptCount instanceof Number ? ((Number) attemptCount).longValue() : 1L) + 1L)
+                    .build();
+
+            // tracked again before sending, so that a prompt confirm is not missed
+            timingWheel.schedule(eventId,
+                    new TrackedPublish(trackedPublish.outputChannelName, message, trackedPublish.resendCount + 1),
+                    timeoutMillis);
+            LOGGER.debug("publisher confirm timeout, resend event: {}", eventId);
+            eventStoreResendService.resendAsync(trackedPublish.outputChannelName, eventId, 0L, () -> {
+                sender.accept(message, trackedPublish.outputChannelName);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (ticker != null) {
+            ticker.cancel();
+        }
+    }
+
+    private static class TrackedPublish {
+        private final String outputChannelName;
+        private final Message<?> message;
+        private final int resendCount;
+
+        private TrackedPublish(String outputChannelName, Message<?> message, int resendCount) {
+            this.outputChannelName = outputChannelName;
+            this.message = message;
+            this.resendCount = resendCount;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The service class for quarantining the poison events which are never accepted by the
+ * broker (for example, unroutable), such that they do not occupy the retry operation forever.
+ *
+ * <p>A pending event is quarantined once its attempt count reaches the max no. of attempts
+ * of its output channel, configured by {@code retry.maxAttempts} which could be overridden
+ * per output channel under {@code com.jeffrey.example.eventstore.channels.<channel>}, 0 if
+ * unlimited. The quarantined events are kept in a separate collection per output channel,
+ * and could be re-injected in bulk once the cause has been fixed.</p>
+ *
+ * <p>The retry operation neither quarantines nor skips the exhausted events while the resends
+ * of the output channel are recovering from a failure, see
+ * {@link EventStoreResendService#isRecovering(String)}, so that the healthy events are not
+ * quarantined by the attempts made during a broker outage.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreQuarantineService")
+public class EventStoreQuarantineService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreQuarantineService.class);
+
+    private static final String MAX_ATTEMPTS_PROPERTY = "retry.maxAttempts";
+
+    private EventStoreDao eventStoreDao;
+
+    private EventStoreChannelProperties channelProperties;
+
+    public EventStoreQuarantineService(
+            @Autowired EventStoreDao eventStoreDao,
+            @Autowired EventStoreChannelProperties channelProperties
+    ) {
+        this.eventStoreDao = eventStoreDao;
+        this.channelProperties = channelProperties;
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the max no. of attempts of an event, 0 if unlimited
+     */
+    public long getMaxAttempts(String outputChannelName) {
+        return channelProperties.getProperty(outputChannelName, MAX_ATTEMPTS_PROPERTY, Long.class, 0L);
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @param attemptCount the attempt count of an event
+     * @return true if the event should not be resent anymore
+     */
+    public boolean isAttemptExhausted(String outputChannelName, long attemptCount) {
+        long maxAttempts = getMaxAttempts(outputChannelName);
+        return maxAttempts > 0 && attemptCount >= maxAttempts;
+    }
+
+    /**
+     * Quarantine the pending events of the output channel which have reached the max
+     * no. of attempts, nothing is quarantined if the attempts are unlimited.
+     *
+     * @param outputChannelName the name of the output channel
+     * @return the no. of events quarantined
+     */
+    public int quarantineExhaustedEvents(String outputChannelName) {
+        long maxAttempts = getMaxAttempts(outputChannelName);
+        if (maxAttempts <= 0) {
+            return 0;
+        }
+        int quarantinedCount = eventStoreDao.quarantineEvents(outputChannelName, maxAttempts);
+        if (quarantinedCount > 0) {
+            LOGGER.warn("{} events of {} quarantined after {} attempts", quarantinedCount, outputChannelName, maxAttempts);
+        }
+        return quarantinedCount;
+    }
+
+    /**
+     * Retrieve the quarantined events of the output channel in the order they are quarantined.
+     *
+     * @param outputChannelName the name of the output channel
+     * @param limit the max no. of events to retrieve
+     * @return list of {@link DomainEvent} quarantined
+     */
+    public List<DomainEvent> findQuarantinedEvents(String outputChannelName, int limit) {
+        return eventStoreDao.findQuarantined(outputChannelName, limit);
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the no. of events quarantined
+     */
+    public long countQuarantinedEvents(String outputChannelName) {
+        return eventStoreDao.countQuarantined(outputChannelName);
+    }
+
+    /**
+     * Re-inject the quarantined events back to the event store, they are resent by the
+     * next retry operation with the attempt count reset.
+     *
+     * @param outputChannelName the name of the output channel
+     * @param eventIds the ids of the events to re-inject
+     * @return the no. of events re-injected
+     */
+    public int reinjectEvents(String outputChannelName, Collection<String> eventIds) {
+        int reinjectedCount = eventStoreDao.reinjectQuarantined(outputChannelName, eventIds);
+        LOGGER.info("{} events of {} re-injected", reinjectedCount, outputChannelName);
+        return reinjectedCount;
+    }
+
+}
@@ -0,0 +1,532 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The service class for resending the pending events of each output channel with a
+ * bounded no. of workers and a rate limit.
+ *
+ * <p>The resends are queued per output channel and executed by the shared
+ * {@link EventStoreScheduler}, each channel has its own scheduler queue so that a slow
+ * channel does not hold back the others, and no thread is created per channel. A worker
+ * of a channel runs one resend per turn of the scheduler, the no. of workers of a channel
+ * is limited by its concurrency. The workers of a channel share a {@link TokenBucket} of
+ * messages per second and another of bytes per second if configured, a worker waiting
+ * for the permits gives its thread back to the scheduler until the permits are due. The
+ * scan is throttled by resending in the scanning thread once the queue of the channel
+ * is full, and {@link #awaitResends(String, Collection)} runs the queued resends in the
+ * waiting thread, such that the resends progress even if every thread of the scheduler
+ * is waiting for them.</p>
+ *
+ * <p>A failed resend is taken as the broker being unavailable, the rate limit of the
+ * channel is then reduced to a fraction and ramped up linearly to the configured rate
+ * after the last failure, so that the backlog accumulated during an outage does not
+ * hit the broker all at once upon its recovery. If the channel is not limited by any
+ * rate, the no. of concurrent resends is ramped up the same way instead, starting from
+ * a single worker.</p>
+ *
+ * <p>Upon shutdown, no more resend is accepted and the resends not yet started complete
+ * with false, the running resends are given the shutdown timeout of the scheduler.</p>
+ *
+ * <p>The following properties could be overridden per output channel under
+ * {@code com.jeffrey.example.eventstore.channels.<channel>}:</p>
+ * <ul>
+ *     <li>{@code retry.send.concurrency}: the max no. of workers</li>
+ *     <li>{@code retry.send.queueCapacity}: the max no. of events waiting for the workers</li>
+ *     <li>{@code retry.send.maxMessagesPerSec}: the rate limit in messages, 0 if unlimited</li>
+ *     <li>{@code retry.send.maxBytesPerSec}: the rate limit in payload bytes, 0 if unlimited</li>
+ * </ul>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreResendService")
+public class EventStoreResendService implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreResendService.class);
+
+    private static final String CONCURRENCY_PROPERTY = "retry.send.concurrency";
+
+    private static final String QUEUE_CAPACITY_PROPERTY = "retry.send.queueCapacity";
+
+    private static final String MAX_MESSAGES_PER_SEC_PROPERTY = "retry.send.maxMessagesPerSec";
+
+    private static final String MAX_BYTES_PER_SEC_PROPERTY = "retry.send.maxBytesPerSec";
+
+    private static final String RESEND_QUEUE_PREFIX = "resend-";
+
+    @Value("${com.jeffrey.example.eventstore.retry.send.rampUpTimeInSec:30}") // time to restore the full rate after a failure
+    long rampUpTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.retry.send.rampUpInitialRatio:0.1}") // fraction of the rate right after a failure
+    double rampUpInitialRatio;
+
+    @Value("${com.jeffrey.example.eventstore.scheduler.shutdownTimeoutMillis:10000}") // max time to wait for the running resends upon shutdown
+    long shutdownTimeoutMillis;
+
+    private volatile boolean shutdown = false;
+
+    private final ConcurrentMap<String, ResendWorkers> channelWorkers = new ConcurrentHashMap<>();
+
+    private Clock clock;
+
+    private EventStoreChannelProperties channelProperties;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    public EventStoreResendService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired EventStoreChannelProperties channelProperties,
+            @Autowired EventStoreScheduler eventStoreScheduler
+    ) {
+        this.clock = clock;
+        this.channelProperties = channelProperties;
+        this.eventStoreScheduler = eventStoreScheduler;
+    }
+
+    /**
+     * Whether the resend of an output channel is limited by bytes per second, such that
+     * the size of the event should be supplied.
+     *
+     * @param outputChannelName the name of the output channel
+     * @return true if the bytes per second is limited
+     */
+    public boolean isByteRateLimited(String outputChannelName) {
+        return getResendWorkers(outputChannelName).byteBucket != null;
+    }
+
+    /**
+     * Whether the resends of an output channel are recovering from a failure, that is the
+     * last resend failed or the rate is still ramping up after the last failure. The attempts
+     * of the pending events made in the meantime are likely failed by the broker being
+     * unavailable rather than by the events themselves.
+     *
+     * @param outputChannelName the name of the output channel
+     * @return true if the resends are recovering from a failure
+     */
+    public boolean isRecovering(String outputChannelName) {
+        ResendWorkers resendWorkers = getResendWorkers(outputChannelName);
+        return resendWorkers.lastResendFailed || resendWorkers.getRampUpRatio() < 1d;
+    }
+
+    /**
+     * Resend a pending event asynchronously by the workers of the output channel, once
+     * the permits of the rate limit are acquired.
+     *
+     * @param outputChannelName the name of the output channel the event is resent to
+     * @param domainEvent the {@link DomainEvent} to resend
+     * @param sizeInBytes the size of the event, only required if the bytes per second is limited
+     * @param resendCommand the {@link EventStoreCallbackCommand} which resend the event
+     * @return a {@link CompletableFuture} which completes with true if the event is resent,
+     * false if the resend failed
+     */
+    public CompletableFuture<Boolean> resendAsync(
+            String outputChannelName,
+            DomainEvent domainEvent,
+            long sizeInBytes,
+            EventStoreCallbackCommand resendCommand
+    ) {
+        return resendAsync(outputChannelName, domainEvent.getId(), sizeInBytes, () -> {
+            resendCommand.pendingEventFetched(domainEvent);
+            return null;
+        });
+    }
+
+    /**
+     * Resend an event asynchronously by the workers of the output channel, once the
+     * permits of the rate limit are acquired.
+     *
+     * @param outputChannelName the name of the output channel the event is resent to
+     * @param eventId the event's ID to resend
+     * @param sizeInBytes the size of the event, only required if the bytes per second is limited
+     * @param resendTask the {@link Callable} which resend the event
+     * @return a {@link CompletableFuture} which completes with true if the event is resent,
+     * false if the resend failed
+     */
+    public CompletableFuture<Boolean> resendAsync(
+            String outputChannelName,
+            String eventId,
+            long sizeInBytes,
+            Callable<?> resendTask
+    ) {
+        ResendTask task = new ResendTask(eventId, sizeInBytes, resendTask);
+        if (shutdown) {
+            LOGGER.debug("resend workers are shutdown, event not resent: {}", eventId);
+            task.future.complete(false);
+            return task.future;
+        }
+        ResendWorkers resendWorkers = getResendWorkers(outputChannelName);
+        if (!resendWorkers.offer(task)) {
+            // throttle the scan by resending in the scanning thread
+            resendWorkers.runNow(task);
+            return task.future;
+        }
+        resendWorkers.startWorkers();
+        return task.future;
+    }
+
+    /**
+     * Wait for the resends of an output channel to complete, the waiting thread runs the
+     * queued resends of the channel in the meantime.
+     *
+     * @param outputChannelName the name of the output channel the events are resent to
+     * @param resends the {@link CompletableFuture} returned by the resends
+     * @return the no. of events resent
+     */
+    public long awaitResends(String outputChannelName, Collection<CompletableFuture<Boolean>> resends) {
+        ResendWorkers resendWorkers = getResendWorkers(outputChannelName);
+        long resentCount = 0;
+        for (CompletableFuture<Boolean> resend:resends) {
+            while (!resend.isDone()) {
+                ResendTask task = resendWorkers.pendingResends.poll();
+                if (task != null) {
+                    resendWorkers.runNow(task);
+                    continue;
+                }
+                // being resent by a worker, which could be waiting for the permits
+                try {
+                    resend.get(100L, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // check the queue again
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("interrupted while waiting for the resends of {}", outputChannelName);
+                    return resentCount;
+                } catch (Exception e) {
+                    break;
+                }
+            }
+            if (Boolean.TRUE.equals(resend.getNow(false))) {
+                resentCount++;
+            }
+        }
+        return resentCount;
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the name of the scheduler queue of the resends of the output channel
+     */
+    static String getResendQueue(String outputChannelName) {
+        return RESEND_QUEUE_PREFIX + outputChannelName;
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the fraction of the configured rate or concurrency currently applied
+     */
+    double getRampUpRatio(String outputChannelName) {
+        return getResendWorkers(outputChannelName).getRampUpRatio();
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the max no. of concurrent resends currently allowed
+     */
+    int getConcurrencyLimit(String outputChannelName) {
+        return getResendWorkers(outputChannelName).getConcurrencyLimit();
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the messages per second currently applied, 0 if unlimited
+     */
+    double getMessageRate(String outputChannelName) {
+        TokenBucket messageBucket = getResendWorkers(outputChannelName).messageBucket;
+        return messageBucket == null ? 0d : messageBucket.getRate();
+    }
+
+    private ResendWorkers getResendWorkers(String outputChannelName) {
+        return channelWorkers.computeIfAbsent(outputChannelName, ResendWorkers::new);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        shutdown = true;
+        for (ResendWorkers resendWorkers:channelWorkers.values()) {
+            resendWorkers.discardPendingResends();
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        for (ResendWorkers resendWorkers:channelWorkers.values()) {
+            if (!resendWorkers.awaitRunningResends(deadline)) {
+                LOGGER.warn("resends still running upon shutdown: {}", resendWorkers.outputChannelName);
+            }
+        }
+    }
+
+    private static class ResendTask {
+        private final String eventId;
+        private final long sizeInBytes;
+        private final Callable<?> callable;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private boolean reserved = false;
+        private long dueNanos;
+
+        private ResendTask(String eventId, long sizeInBytes, Callable<?> callable) {
+            this.eventId = eventId;
+            this.sizeInBytes = sizeInBytes;
+            this.callable = callable;
+        }
+    }
+
+    private class ResendWorkers {
+        private final String outputChannelName;
+
+        private final String queueName;
+
+        private final int concurrency;
+
+        private final int queueCapacity;
+
+        private final double maxMessagesPerSec;
+
+        private final double maxBytesPerSec;
+
+        private final TokenBucket messageBucket; // null if unlimited
+
+        private final TokenBucket byteBucket; // null if unlimited
+
+        private final BlockingDeque<ResendTask> pendingResends = new LinkedBlockingDeque<>();
+
+        private volatile long lastFailureMillis = -1L; // -1 if not ramping up
+
+        private volatile boolean lastResendFailed = false;
+
+        private int activeWorkers = 0; // guarded by this, the workers scheduled or running
+
+        private int runningResends = 0; // guarded by this
+
+        private ResendWorkers(String outputChannelName) {
+            this.outputChannelName = outputChannelName;
+            this.queueName = getResendQueue(outputChannelName);
+            concurrency = channelProperties.getProperty(outputChannelName, CONCURRENCY_PROPERTY, Integer.class, 4);
+            queueCapacity = channelProperties.getProperty(outputChannelName, QUEUE_CAPACITY_PROPERTY, Integer.class, 1000);
+            maxMessagesPerSec = channelProperties.getProperty(outputChannelName, MAX_MESSAGES_PER_SEC_PROPERTY, Double.class, 0d);
+            maxBytesPerSec = channelProperties.getProperty(outputChannelName, MAX_BYTES_PER_SEC_PROPERTY, Double.class, 0d);
+            messageBucket = maxMessagesPerSec > 0 ? new TokenBucket(clock, maxMessagesPerSec) : null;
+            byteBucket = maxBytesPerSec > 0 ? new TokenBucket(clock, maxBytesPerSec) : null;
+            LOGGER.debug("resend workers of {}: concurrency {}, {} messages/s, {} bytes/s",
+                    outputChannelName, concurrency, maxMessagesPerSec, maxBytesPerSec);
+        }
+
+        private boolean offer(ResendTask task) {
+            // the capacity is not strict, a task waiting for the permits is put back regardless
+            return pendingResends.size() < queueCapacity && pendingResends.offerLast(task);
+        }
+
+        /**
+         * Schedule more workers while there are more queued resends than workers, up to the
+         * no. of workers currently allowed.
+         */
+        private synchronized void startWorkers() {
+            int workerLimit = getWorkerLimit();
+            while (activeWorkers < workerLimit && activeWorkers < pendingResends.size()) {
+                activeWorkers++;
+                eventStoreScheduler.execute(queueName, this::work);
+            }
+        }
+
+        /**
+         * Run the next queued resend, once its permits are due, then give the thread back
+         * to the scheduler so that the queues of the other channels are served in turn.
+         */
+        private void work() {
+            ResendTask task = nextTask();
+            if (task == null) return;
+
+            long waitNanos = reserve(task);
+            if (waitNanos > 0) {
+                // wait for the permits without holding the thread of the scheduler
+                putBack(task);
+                eventStoreScheduler.schedule(queueName, this::work, Math.max(TimeUnit.NANOSECONDS.toMillis(waitNanos), 1L));
+                return;
+            }
+            resend(task);
+            eventStoreScheduler.execute(queueName, this::work);
+        }
+
+        /**
+         * @return the next queued resend, null if the worker should retire
+         */
+        private synchronized ResendTask nextTask() {
+            if (!shutdown && activeWorkers <= getWorkerLimit()) {
+                ResendTask task = pendingResends.pollFirst();
+                if (task != null) {
+                    runningResends++;
+                    return task;
+                }
+            }
+            activeWorkers--;
+            return null;
+        }
+
+        private synchronized void putBack(ResendTask task) {
+            pendingResends.offerFirst(task);
+            runningResends--;
+            notifyAll();
+        }
+
+        /**
+         * Run a resend in the calling thread, waiting for its permits if necessary.
+         */
+        private void runNow(ResendTask task) {
+            synchronized (this) {
+                runningResends++;
+            }
+            long waitNanos = reserve(task);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("interrupted while resending event: {}", task.eventId);
+                    task.future.complete(false);
+                    finished();
+                    return;
+                }
+            }
+            resend(task);
+        }
+
+        /**
+         * Reserve the permits of a resend once.
+         *
+         * @return the time in nanoseconds before the permits are due
+         */
+        private long reserve(ResendTask task) {
+            if (!task.reserved) {
+                double ratio = getRampUpRatio();
+                long waitMillis = 0L;
+                if (messageBucket != null) {
+                    adjustRate(messageBucket, maxMessagesPerSec * ratio);
+                    waitMillis = messageBucket.reserve(1d);
+                }
+                if (byteBucket != null && task.sizeInBytes > 0) {
+                    adjustRate(byteBucket, maxBytesPerSec * ratio);
+                    waitMillis = Math.max(waitMillis, byteBucket.reserve(task.sizeInBytes));
+                }
+                task.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+                task.reserved = true;
+            }
+            return task.dueNanos - System.nanoTime();
+        }
+
+        private void resend(ResendTask task) {
+            try {
+                if (shutdown) {
+                    LOGGER.debug("resend workers are shutdown, event not resent: {}", task.eventId);
+                    task.future.complete(false);
+                    return;
+                }
+                task.callable.call();
+                lastResendFailed = false;
+                task.future.complete(true);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("interrupted while resending event: {}", task.eventId);
+                task.future.complete(false);
+
+            } catch (Exception e) {
+                // one event fail shouldn't affect the entire retry operation
+                LOGGER.warn("error while sending event: {} {}", task.eventId, e.getMessage());
+                failed();
+                task.future.complete(false);
+
+            } finally {
+                finished();
+            }
+        }
+
+        private synchronized void finished() {
+            runningResends--;
+            notifyAll();
+        }
+
+        private void discardPendingResends() {
+            ResendTask task;
+            while ((task = pendingResends.pollFirst()) != null) {
+                LOGGER.debug("resend workers are shutdown, event not resent: {}", task.eventId);
+                task.future.complete(false);
+            }
+        }
+
+        /**
+         * @param deadline the {@link System#nanoTime()} to wait until
+         * @return true if no resend is running anymore
+         */
+        private synchronized boolean awaitRunningResends(long deadline) throws InterruptedException {
+            while (runningResends > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) return false;
+                wait(remainingMillis);
+            }
+            return true;
+        }
+
+        /**
+         * The no. of workers, ramped up after a failure if the channel is not limited by any rate.
+         */
+        private int getWorkerLimit() {
+            return messageBucket == null && byteBucket == null ? getConcurrencyLimit() : concurrency;
+        }
+
+        /**
+         * The no. of workers scaled by the ramp up ratio, at least one.
+         */
+        private int getConcurrencyLimit() {
+            return Math.max((int) Math.ceil(concurrency * getRampUpRatio()), 1);
+        }
+
+        private void failed() {
+            lastFailureMillis = clock.millis();
+            lastResendFailed = true;
+        }
+
+        /**
+         * The fraction of the configured rate, which grows linearly from the initial
+         * ratio to 1 within the ramp up time after the last failure.
+         */
+        private double getRampUpRatio() {
+            long failureMillis = lastFailureMillis;
+            if (failureMillis < 0) {
+                return 1d;
+            }
+            long rampUpMillis = TimeUnit.SECONDS.toMillis(rampUpTimeInSec);
+            long elapsedMillis = clock.millis() - failureMillis;
+            if (rampUpMillis <= 0 || elapsedMillis >= rampUpMillis) {
+                lastFailureMillis = -1L;
+                return 1d;
+            }
+            return rampUpInitialRatio + (1d - rampUpInitialRatio) * Math.max(elapsedMillis, 0L) / rampUpMillis;
+        }
+
+        private void adjustRate(TokenBucket tokenBucket, double permitsPerSecond) {
+            // the rate should never drop to zero, otherwise the workers could wait forever
+            double rate = Math.max(permitsPerSecond, 1d);
+            if (tokenBucket.getRate() != rate) {
+                tokenBucket.setRate(rate);
+            }
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.jeffrey.example.demolib.eventstore.service;
 
+import com.jeffrey.example.demolib.eventstore.command.EventStoreRetryCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,23 +17,53 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The service class for coordinating the retry routine of event store.
+ *
+ * <p>The retry routine of event store is scheduled with an adaptive cadence, see
+ * {@link #startAdaptiveAsync(Map, int)}, on the shared {@link EventStoreScheduler}. The
+ * {@link RetryTemplate} remains available to execute any {@link RetryCallback} with a
+ * fixed cadence.</p>
+ *
  * @Author Jeffrey Garcia Wong
  */
 @Service("EventStoreRetryService")
 public class EventStoreRetryService {
     private final static Logger LOGGER = LoggerFactory.getLogger(EventStoreRetryService.class);
 
+    @Value("${com.jeffrey.example.eventstore.retry.backoff.milliseconds:90000}") // backoff after a partial batch default to 90s
+    long initialBackoffMillis;
+
+    @Value("${com.jeffrey.example.eventstore.retry.backoff.maxMilliseconds:600000}") // ceiling of the backoff default to 10min
+    long maxBackoffMillis;
+
+    @Value("${com.jeffrey.example.eventstore.retry.backoff.multiplier:2}") // growth of the backoff after each empty cycle
+    double backoffMultiplier;
+
     private RetryTemplate retryTemplate;
 
+    private EventStoreScheduler eventStoreScheduler; // null if the adaptive retry is not available
+
+    /**
+     * Instantiate the event store retry service without the adaptive retry.
+     *
+     * @param retryTemplate {@link RetryTemplate}
+     */
+    public EventStoreRetryService(RetryTemplate retryTemplate) {
+        this(retryTemplate, null);
+    }
+
     /**
      * Instantiate the event store retry service.
      *
      * @param retryTemplate {@link RetryTemplate}
+     * @param eventStoreScheduler the {@link EventStoreScheduler} executing the adaptive retry
      */
+    @Autowired
     public EventStoreRetryService(
-            @Autowired @Qualifier("eventStoreRetryTemplate") RetryTemplate retryTemplate
+            @Qualifier("eventStoreRetryTemplate") RetryTemplate retryTemplate,
+            EventStoreScheduler eventStoreScheduler
     ) {
         this.retryTemplate = retryTemplate;
+        this.eventStoreScheduler = eventStoreScheduler;
     }
 
     /**
@@ -57,9 +87,84 @@ public class EventStoreRetryService {
      * @param retryCallbacks
      */
     public void startAsync(Collection<RetryCallback<Void, RuntimeException>> retryCallbacks) {
-        final ExecutorService executorService = Executors.newFixedThreadPool(retryCallbacks.size());
+        // the callbacks may block indefinitely, they are not executed by the bounded scheduler
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(retryCallbacks.size(), runnable ->
+                new Thread(runnable, "eventstore-retry-callback-" + threadCount.incrementAndGet()));
         for (RetryCallback<Void, RuntimeException> retryCallback:retryCallbacks) {
             executorService.execute(() -> start(retryCallback));
         }
+        // the threads are released once every callback is finished
+        executorService.shutdown();
+    }
+
+    /**
+     * Schedule the {@link EventStoreRetryCommand} of each output channel with an adaptive
+     * cadence, each command is scheduled independently and never overlaps with itself:
+     * <ul>
+     *     <li>a cycle which resent a full batch is followed by the next cycle at once, until
+     *     the backlog is drained</li>
+     *     <li>a cycle which resent a partial batch, e.g. some sends failed, is followed by the
+     *     next cycle after the initial backoff</li>
+     *     <li>a cycle which resent nothing or failed multiplies the backoff up to the ceiling</li>
+     * </ul>
+     *
+     * @param retryCommands the {@link EventStoreRetryCommand} to schedule keyed by the output channel name
+     * @param batchSize the max no. of pending events fetched by a cycle
+     */
+    public void startAdaptiveAsync(Map<String, EventStoreRetryCommand> retryCommands, int batchSize) {
+        if (eventStoreScheduler == null) {
+            throw new IllegalStateException("event store scheduler is not available");
+        }
+        for (Map.Entry<String, EventStoreRetryCommand> retryCommand:retryCommands.entrySet()) {
+            eventStoreScheduler.execute(retryCommand.getKey(),
+                    new AdaptiveRetryCycle(retryCommand.getKey(), retryCommand.getValue(), batchSize));
+        }
+    }
+
+    /**
+     * Determine the delay before the next cycle.
+     *
+     * @param previousBackoffMillis the delay before the cycle just finished
+     * @param fetchedCount the no. of pending events resent by the cycle, negative if it failed
+     * @param batchSize the max no. of pending events fetched by a cycle
+     * @return the delay in milliseconds before the next cycle
+     */
+    long nextBackoffMillis(long previousBackoffMillis, int fetchedCount, int batchSize) {
+        if (fetchedCount >= batchSize) {
+            return 0L;
+        }
+        if (fetchedCount > 0 || previousBackoffMillis < initialBackoffMillis) {
+            return initialBackoffMillis;
+        }
+        long backoffMillis = (long) Math.min(previousBackoffMillis * backoffMultiplier, (double) Long.MAX_VALUE);
+        return Math.max(initialBackoffMillis, Math.min(backoffMillis, maxBackoffMillis));
+    }
+
+    private class AdaptiveRetryCycle implements Runnable {
+        private final String outputChannelName;
+        private final EventStoreRetryCommand retryCommand;
+        private final int batchSize;
+        private long backoffMillis = 0L;
+
+        private AdaptiveRetryCycle(String outputChannelName, EventStoreRetryCommand retryCommand, int batchSize) {
+            this.outputChannelName = outputChannelName;
+            this.retryCommand = retryCommand;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void run() {
+            int fetchedCount;
+            try {
+                fetchedCount = retryCommand.fetchAndResend();
+            } catch (RuntimeException e) {
+                LOGGER.warn("error while executing retry: {}", e.getMessage());
+                fetchedCount = -1;
+            }
+            backoffMillis = nextBackoffMillis(backoffMillis, fetchedCount, batchSize);
+            LOGGER.debug("pending events resent: {}, next retry in {} ms", fetchedCount, backoffMillis);
+            eventStoreScheduler.schedule(outputChannelName, this, backoffMillis);
+        }
     }
 }
@@ -0,0 +1,369 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared scheduler of the event store background work, such as the retry routine,
+ * the resends, the flush of the group commits and the coalesced acks, and the drain of
+ * the spill journal.
+ *
+ * <p>The tasks are executed by a bounded no. of worker threads regardless of the no.
+ * of output channels. Each task is submitted to a named queue, usually the output
+ * channel it works on, and the workers take the tasks from the queues by weighted
+ * round-robin: a queue is served up to its weight of consecutive tasks before the
+ * next queue is served, so that a busy channel cannot starve the others. A delayed
+ * task is held by a timer and enqueued once it's due.</p>
+ *
+ * <p>The short latency-sensitive tasks, such as the flush of the coalesced acks, are
+ * submitted to a priority queue named by {@link #priorityQueue(String)}. The priority
+ * queues are served before any other queue by all the workers, in addition a number
+ * of reserved workers serve the priority queues only, so that they are not held back
+ * by the long running tasks like a retry cycle occupying all the other workers.</p>
+ *
+ * <p>The weight of a queue defaults to 1 and could be configured per output channel by
+ * {@code com.jeffrey.example.eventstore.channels.<channel>.scheduler.weight}. The depth
+ * of each queue is published as the gauge {@code eventstore.scheduler.queue} if metrics
+ * is available.</p>
+ *
+ * <p>Upon shutdown, no more task is accepted, the delayed and queued tasks are discarded,
+ * and the tasks being executed are given the shutdown timeout to finish. Any service
+ * which must complete its work upon shutdown should do so in its own destroy method,
+ * which is invoked before this scheduler is destroyed.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreScheduler")
+public class EventStoreScheduler implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreScheduler.class);
+
+    private static final String METRIC_NAME = "eventstore.scheduler.queue";
+
+    private static final String WEIGHT_PROPERTY = "scheduler.weight";
+
+    /**
+     * The queue of the background work not specific to any output channel
+     */
+    public static final String HOUSEKEEPING_QUEUE = "housekeeping";
+
+    private static final String PRIORITY_QUEUE_PREFIX = "priority-";
+
+    @Value("${com.jeffrey.example.eventstore.scheduler.poolSize:4}") // max no. of threads executing the background work
+    int poolSize;
+
+    @Value("${com.jeffrey.example.eventstore.scheduler.reservedPoolSize:1}") // no. of threads serving the priority queues only
+    int reservedPoolSize;
+
+    @Value("${com.jeffrey.example.eventstore.scheduler.shutdownTimeoutMillis:10000}") // max time to wait for the running tasks upon shutdown
+    long shutdownTimeoutMillis;
+
+    // the queues in the order of creation, guarded by this
+    private final List<TaskQueue> taskQueues = new ArrayList<>();
+
+    private final List<TaskQueue> priorityQueues = new ArrayList<>();
+
+    private final Map<String, TaskQueue> taskQueuesByName = new HashMap<>();
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private int queuedCount = 0;
+
+    private int priorityQueuedCount = 0;
+
+    private int rotationIndex = 0;
+
+    private int priorityRotationIndex = 0;
+
+    private int servedInTurn = 0;
+
+    private volatile boolean shutdown = false;
+
+    private ScheduledExecutorService timer;
+
+    private EventStoreChannelProperties channelProperties;
+
+    private MeterRegistry meterRegistry; // null if metrics is not available
+
+    public EventStoreScheduler(
+            @Autowired EventStoreChannelProperties channelProperties,
+            @Autowired ObjectProvider<MeterRegistry> meterRegistryProvider
+    ) {
+        this.channelProperties = channelProperties;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable();
+    }
+
+    @PostConstruct
+    public synchronized void initialize() {
+        if (timer != null) return;
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eventstore-scheduler-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i=1; i<=Math.max(poolSize, 1); i++) {
+            startWorker("eventstore-scheduler-" + i, false);
+        }
+        for (int i=1; i<=reservedPoolSize; i++) {
+            startWorker("eventstore-scheduler-reserved-" + i, true);
+        }
+    }
+
+    private void startWorker(String name, boolean reserved) {
+        Thread worker = new Thread(() -> workLoop(reserved), name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    /**
+     * @param queueName the name of the queue, usually an output channel
+     * @return the name of the priority queue of the supplied queue
+     */
+    public static String priorityQueue(String queueName) {
+        return PRIORITY_QUEUE_PREFIX + queueName;
+    }
+
+    /**
+     * Execute a task as soon as a worker is available.
+     *
+     * @param queueName the name of the queue, usually the output channel the task works on
+     * @param task the {@link Runnable} to execute
+     */
+    public void execute(String queueName, Runnable task) {
+        enqueue(queueName, task);
+    }
+
+    /**
+     * Execute a task once the delay has elapsed and a worker is available.
+     *
+     * @param queueName the name of the queue, usually the output channel the task works on
+     * @param task the {@link Runnable} to execute
+     * @param delayMillis the delay in milliseconds
+     */
+    public void schedule(String queueName, Runnable task, long delayMillis) {
+        if (delayMillis <= 0) {
+            enqueue(queueName, task);
+            return;
+        }
+        if (shutdown) return;
+        try {
+            timer.schedule(() -> enqueue(queueName, task), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("scheduler is shutdown, task discarded");
+        }
+    }
+
+    /**
+     * Execute a task repeatedly with a fixed delay between the end of an execution and
+     * the start of the next.
+     *
+     * @param queueName the name of the queue, usually the output channel the task works on
+     * @param task the {@link Runnable} to execute
+     * @param initialDelayMillis the delay in milliseconds before the first execution
+     * @param delayMillis the delay in milliseconds between the executions
+     * @return the {@link PeriodicTask} which could be cancelled
+     */
+    public PeriodicTask scheduleWithFixedDelay(String queueName, Runnable task, long initialDelayMillis, long delayMillis) {
+        PeriodicTask periodicTask = new PeriodicTask(queueName, task, delayMillis);
+        schedule(queueName, periodicTask, initialDelayMillis);
+        return periodicTask;
+    }
+
+    /**
+     * @param queueName the name of the queue
+     * @return the no. of tasks waiting in the queue for a worker
+     */
+    public synchronized int getQueueDepth(String queueName) {
+        TaskQueue taskQueue = taskQueuesByName.get(queueName);
+        return taskQueue == null ? 0 : taskQueue.tasks.size();
+    }
+
+    private synchronized void enqueue(String queueName, Runnable task) {
+        if (shutdown) {
+            LOGGER.debug("scheduler is shutdown, task discarded: {}", queueName);
+            return;
+        }
+        TaskQueue taskQueue = taskQueuesByName.get(queueName);
+        if (taskQueue == null) {
+            taskQueue = new TaskQueue(queueName);
+            (taskQueue.priority ? priorityQueues : taskQueues).add(taskQueue);
+            taskQueuesByName.put(queueName, taskQueue);
+        }
+        taskQueue.tasks.add(task);
+        if (taskQueue.priority) {
+            priorityQueuedCount++;
+        } else {
+            queuedCount++;
+        }
+        // wake up all the workers, a reserved worker may not take the task
+        notifyAll();
+    }
+
+    /**
+     * Take the next task of the priority queues by round-robin, otherwise by weighted
+     * round-robin across the other queues unless the worker is reserved.
+     *
+     * @param reserved true if the worker serves the priority queues only
+     * @return the next task, null if the scheduler is shutdown
+     */
+    private synchronized Runnable take(boolean reserved) throws InterruptedException {
+        while (priorityQueuedCount == 0 && (reserved || queuedCount == 0)) {
+            if (shutdown) return null;
+            wait();
+        }
+        if (shutdown) return null;
+
+        if (priorityQueuedCount > 0) {
+            for (int i=0; i<=priorityQueues.size(); i++) {
+                TaskQueue taskQueue = priorityQueues.get(priorityRotationIndex);
+                priorityRotationIndex = (priorityRotationIndex + 1) % priorityQueues.size();
+                if (!taskQueue.tasks.isEmpty()) {
+                    priorityQueuedCount--;
+                    return taskQueue.tasks.poll();
+                }
+            }
+            throw new IllegalStateException("no task found in " + priorityQueuedCount + " priority tasks");
+        }
+
+        // at least one queue is non-empty, it's reached within one rotation
+        for (int i=0; i<=taskQueues.size(); i++) {
+            TaskQueue taskQueue = taskQueues.get(rotationIndex);
+            if (!taskQueue.tasks.isEmpty() && servedInTurn < taskQueue.weight) {
+                servedInTurn++;
+                queuedCount--;
+                return taskQueue.tasks.poll();
+            }
+            rotationIndex = (rotationIndex + 1) % taskQueues.size();
+            servedInTurn = 0;
+        }
+        throw new IllegalStateException("no task found in " + queuedCount + " queued tasks");
+    }
+
+    private void workLoop(boolean reserved) {
+        while (true) {
+            Runnable task;
+            try {
+                task = take(reserved);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) return;
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.error("error executing background task: {}", t.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (shutdown) return;
+            shutdown = true;
+            if (queuedCount + priorityQueuedCount > 0) {
+                LOGGER.debug("discard {} queued tasks upon shutdown", queuedCount + priorityQueuedCount);
+            }
+            for (TaskQueue taskQueue:taskQueuesByName.values()) {
+                taskQueue.tasks.clear();
+            }
+            queuedCount = 0;
+            priorityQueuedCount = 0;
+            notifyAll();
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        for (Thread worker:workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis > 0) {
+                worker.join(remainingMillis);
+            }
+            if (worker.isAlive()) {
+                LOGGER.warn("background task still running upon shutdown: {}", worker.getName());
+                worker.interrupt();
+            }
+        }
+    }
+
+    private class TaskQueue {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final boolean priority;
+        private final int weight;
+
+        private TaskQueue(String queueName) {
+            this.priority = queueName.startsWith(PRIORITY_QUEUE_PREFIX);
+            // the priority queues are served in turn regardless of weight
+            this.weight = priority ? 1 : Math.max(1, channelProperties.getProperty(queueName, WEIGHT_PROPERTY, Integer.class, 1));
+            if (meterRegistry != null) {
+                Gauge.builder(METRIC_NAME, this, taskQueue -> getQueueDepth(queueName))
+                        .tag("queue", queueName)
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * A task executed repeatedly with a fixed delay until it's cancelled.
+     */
+    public class PeriodicTask implements Runnable {
+        private final String queueName;
+        private final Runnable task;
+        private final long delayMillis;
+        private volatile boolean cancelled = false;
+
+        private PeriodicTask(String queueName, Runnable task, long delayMillis) {
+            this.queueName = queueName;
+            this.task = task;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled) return;
+            try {
+                task.run();
+            } finally {
+                if (!cancelled) {
+                    schedule(queueName, this, delayMillis);
+                }
+            }
+        }
+
+        /**
+         * Cancel the subsequent executions, wait for the execution in progress if any.
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (this) {
+                // the execution in progress has finished
+            }
+        }
+    }
+
+}
@@ -1,14 +1,26 @@
 package com.jeffrey.example.demolib.eventstore.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableSet;
+import com.jeffrey.example.demolib.eventstore.codec.EventPayloadCodec;
+import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
+import com.jeffrey.example.demolib.eventstore.command.EventStoreRetryCommand;
+import com.jeffrey.example.demolib.eventstore.codec.EventPayloadCodecRegistry;
+import com.jeffrey.example.demolib.eventstore.codec.PayloadCompressor;
 import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.dao.ConsumeClaim;
+import com.jeffrey.example.demolib.eventstore.dao.EventAckUpdate;
 import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.ReactiveEventStoreDao;
 import com.jeffrey.example.demolib.eventstore.util.ChannelBindingAccessor;
 import com.jeffrey.example.demolib.eventstore.util.ObjectMapperFactory;
+import com.jeffrey.example.demolib.eventstore.util.ProducerSequenceTracker;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.bson.types.Binary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,29 +29,95 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
 import org.springframework.integration.channel.AbstractMessageChannel;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.MessageBuilder;
-import org.springframework.retry.RetryCallback;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.IdGenerator;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service("EventStoreService")
 public class EventStoreService<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreService.class);
 
+    private static final TypeReference<Map<String, Object>> HEADER_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    public static final String ATTEMPT_COUNT_HEADER = "attemptCount";
+
+    public static final String PRODUCER_ID_HEADER = "producerId";
+
+    public static final String PRODUCER_SEQUENCE_HEADER = "producerSequence";
+
+    private static final String RETURNED_RESEND_QUEUE_PREFIX = "returned-";
+
     @Value("${com.jeffrey.example.eventstore.retry.autoStart:true}")
     boolean autoStart;
 
+    @Value("${com.jeffrey.example.eventstore.retry.message.batchSize:1000}") // default message count per retry to 1000
+    int retryMessageBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.retry.returned.enabled:false}") // resend a returned message without waiting for the retry operation
+    boolean returnedResendEnabled;
+
+    @Value("${com.jeffrey.example.eventstore.retry.returned.backoff.milliseconds:1000}") // backoff of the first return
+    long returnedBackoffMillis;
+
+    @Value("${com.jeffrey.example.eventstore.retry.returned.backoff.maxMilliseconds:60000}") // ceiling of the backoff
+    long returnedMaxBackoffMillis;
+
+    @Value("${com.jeffrey.example.eventstore.retry.returned.backoff.multiplier:2}") // growth of the backoff per attempt
+    double returnedBackoffMultiplier;
+
     @Value("${com.jeffrey.example.eventstore.consumer.ignoreDuplicate:false}")
     boolean ignoreDuplicate;
 
+    @Value("${com.jeffrey.example.eventstore.writeMode:transactional}") // transactional or outbox
+    String writeMode;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.leaseTimeInSec:60}") // consume claim expiry default to 60s
+    long consumerLeaseTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.redeliveryFastPath:false}") // skip the duplicate check on first delivery
+    boolean redeliveryFastPath;
+
+    @Value("${com.jeffrey.example.eventstore.producer.stampSequence:false}") // stamp producer id and sequence on outgoing messages
+    boolean stampSequence;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.sequenceDedup.enabled:false}") // enable only if all messages of a producer are consumed by this node
+    boolean sequenceDedup;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.sequenceDedup.windowSize:1024}") // no. of sequences tracked below the high-water mark
+    int sequenceWindowSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.sequenceDedup.maxProducers:10000}") // max no. of producers tracked
+    long sequenceMaxProducers;
+
+    // identify the consume claims made by this instance
+    private final String consumerId = UUID.randomUUID().toString();
+
+    // identify the messages sent by this instance, the sequence is monotonic per output channel
+    private final String producerId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, AtomicLong> producerSequences = new ConcurrentHashMap<>();
+
+    private volatile ProducerSequenceTracker producerSequenceTracker; // lazily created if sequence de-duplication is enabled
+
     private ApplicationContext applicationContext;
 
     private ChannelBindingAccessor channelBindingAccessor;
@@ -50,18 +128,58 @@ public class EventStoreService<T> {
 
     private IdGenerator eventIdGenerator;
 
+    private EventStoreGroupCommitService eventStoreGroupCommitService;
+
+    private EventPayloadCodecRegistry eventPayloadCodecRegistry;
+
+    private EventStoreSpilloverService eventStoreSpilloverService;
+
+    private EventStoreAckCoalescingService eventStoreAckCoalescingService;
+
+    private EventStoreConsumedCacheService eventStoreConsumedCacheService;
+
+    private EventStoreResendService eventStoreResendService;
+
+    private EventStorePublishTrackerService eventStorePublishTrackerService;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreQuarantineService eventStoreQuarantineService;
+
+    private ReactiveEventStoreDao reactiveEventStoreDao; // null if the reactive dao is not enabled
+
     public EventStoreService(
             @Autowired ApplicationContext applicationContext,
             @Autowired ChannelBindingAccessor channelBindingAccessor,
             @Autowired @Qualifier("eventIdGenerator") IdGenerator eventIdGenerator,
             @Autowired EventStoreDao eventStoreDao,
-            @Autowired EventStoreRetryService eventStoreRetryService
+            @Autowired EventStoreRetryService eventStoreRetryService,
+            @Autowired EventStoreGroupCommitService eventStoreGroupCommitService,
+            @Autowired EventPayloadCodecRegistry eventPayloadCodecRegistry,
+            @Autowired EventStoreSpilloverService eventStoreSpilloverService,
+            @Autowired EventStoreAckCoalescingService eventStoreAckCoalescingService,
+            @Autowired EventStoreConsumedCacheService eventStoreConsumedCacheService,
+            @Autowired EventStoreResendService eventStoreResendService,
+            @Autowired EventStorePublishTrackerService eventStorePublishTrackerService,
+            @Autowired EventStoreScheduler eventStoreScheduler,
+            @Autowired EventStoreQuarantineService eventStoreQuarantineService,
+            @Autowired ObjectProvider<ReactiveEventStoreDao> reactiveEventStoreDaoProvider
     ) {
         this.applicationContext = applicationContext;
         this.channelBindingAccessor = channelBindingAccessor;
         this.eventIdGenerator = eventIdGenerator;
         this.eventStoreDao = eventStoreDao;
         this.eventStoreRetryService = eventStoreRetryService;
+        this.eventStoreGroupCommitService = eventStoreGroupCommitService;
+        this.eventPayloadCodecRegistry = eventPayloadCodecRegistry;
+        this.eventStoreSpilloverService = eventStoreSpilloverService;
+        this.eventStoreAckCoalescingService = eventStoreAckCoalescingService;
+        this.eventStoreConsumedCacheService = eventStoreConsumedCacheService;
+        this.eventStoreResendService = eventStoreResendService;
+        this.eventStorePublishTrackerService = eventStorePublishTrackerService;
+        this.eventStoreScheduler = eventStoreScheduler;
+        this.eventStoreQuarantineService = eventStoreQuarantineService;
+        this.reactiveEventStoreDao = reactiveEventStoreDaoProvider.getIfAvailable();
     }
 
     /**
@@ -77,10 +195,69 @@ public class EventStoreService<T> {
      * @return a generic {@link Object} returned by the {@link ProceedingJoinPoint} if any
      * @throws Throwable a generic {@link Throwable} thrown by the {@link ProceedingJoinPoint} if any
      */
-    @Transactional
+    @Transactional("eventStoreTransactionManager")
     public Object createEventFromMessageAndSend(Message message, String outputChannelName, ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
         message = createEventFromMessage(message, outputChannelName);
-        return proceedingJoinPoint.proceed(new Object[] {message});
+        return trackAndSend(message, outputChannelName, proceedingJoinPoint);
+    }
+
+    /**
+     * Write the message into event store and send it to the specified output channel
+     * without any transaction (outbox write mode).
+     *
+     * <p>The event is written with a single-document majority insert before sending,
+     * no session or transaction is held open while the message is being sent to the
+     * broker. If the sending failed after the event is written, the event is not rolled
+     * back but remains pending, and will be resent by the retry operation.</p>
+     *
+     * @param message the {@link Message} to send
+     * @param outputChannelName the name of the output channel the {@link Message} is being sent to
+     * @param proceedingJoinPoint the {@link ProceedingJoinPoint} advice to execute at the {@link org.springframework.aop.Pointcut}
+     * @return a generic {@link Object} returned by the {@link ProceedingJoinPoint} if any
+     * @throws Throwable a generic {@link Throwable} thrown by the {@link ProceedingJoinPoint} if any
+     */
+    public Object createEventFromMessageAndSendWithoutTransaction(
+            Message message, String outputChannelName, ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        message = createEventFromMessage(message, outputChannelName);
+        return trackAndSend(message, outputChannelName, proceedingJoinPoint);
+    }
+
+    /**
+     * Track the message with the {@link EventStorePublishTrackerService} before sending,
+     * such that a publisher confirm arriving promptly is not missed. The message is not
+     * tracked anymore if the sending failed, or the transaction writing the event is
+     * rolled back.
+     */
+    private Object trackAndSend(Message message, String outputChannelName, ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        final String eventId = message.getHeaders().get("eventId", String.class);
+        if (!eventStorePublishTrackerService.track(eventId, outputChannelName, message)) {
+            return proceedingJoinPoint.proceed(new Object[] {message});
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        eventStorePublishTrackerService.untrack(eventId);
+                    }
+                }
+            });
+        }
+        try {
+            return proceedingJoinPoint.proceed(new Object[] {message});
+        } catch (Throwable t) {
+            eventStorePublishTrackerService.untrack(eventId);
+            throw t;
+        }
+    }
+
+    /**
+     * Stop tracking a published message in memory upon its positive publisher confirm.
+     *
+     * @param eventId the event's ID of the message confirmed
+     */
+    public void confirmEventPublished(String eventId) {
+        eventStorePublishTrackerService.untrack(eventId);
     }
 
     /**
@@ -91,6 +268,13 @@ public class EventStoreService<T> {
      * read-only headers and cannot be overridden, build a new message
      * which insert eventId to message's header.
      *
+     * If group commit is enabled, the event is handed to the {@link EventStoreGroupCommitService}
+     * and this method is blocked until the batch containing the event is written.
+     *
+     * If spillover is enabled, the write is governed by the {@link EventStoreSpilloverService}
+     * and the event is spilled into the local journal if the write is not part of a transaction
+     * and the event store is unavailable.
+     *
      * @param message the {@link Message} to send
      * @param outputChannelName the name of the output channel the {@link Message} is being sent to
      * @return the re-generated {@link Message}
@@ -99,21 +283,75 @@ public class EventStoreService<T> {
     Message createEventFromMessage(Message message, String outputChannelName) throws IOException {
         String eventId = eventIdGenerator.generateId().toString();
 
-        message = MessageBuilder
+        MessageBuilder messageBuilder = MessageBuilder
                 .withPayload(message.getPayload())
                 .copyHeaders(message.getHeaders())
                 .setHeader("eventId", eventId)
-                .setHeader("outputChannelName", outputChannelName)
-                .build();
+                .setHeader("outputChannelName", outputChannelName);
+        if (stampSequence) {
+            // persisted with the event header, a resend carries the same sequence
+            messageBuilder
+                    .setHeader(PRODUCER_ID_HEADER, producerId)
+                    .setHeader(PRODUCER_SEQUENCE_HEADER, producerSequences
+                            .computeIfAbsent(outputChannelName, key -> new AtomicLong())
+                            .incrementAndGet());
+        }
+        message = messageBuilder.build();
 
-        String jsonHeader = ObjectMapperFactory.getMapper().toJson(message.getHeaders());
-        String jsonPayload = ObjectMapperFactory.getMapper().toJson(message.getPayload());
+        // convert into BSON compatible structure instead of json string
+        Map<String, Object> header = ObjectMapperFactory.getObjectMapper().convertValue(message.getHeaders(), HEADER_TYPE);
+        EventPayloadCodec payloadCodec = eventPayloadCodecRegistry.getCodecForChannel(outputChannelName);
+        Object payload = payloadCodec.encode(message.getPayload());
         String payloadClassName = message.getPayload().getClass().getName();
 
-        eventStoreDao.createEvent(eventId, jsonHeader, jsonPayload, payloadClassName, outputChannelName);
+        // compress the encoded payload if it's large enough
+        String compression = null;
+        PayloadCompressor compressor = eventPayloadCodecRegistry.getCompressorForChannel(outputChannelName);
+        if (compressor != null) {
+            byte[] bytes = payloadCodec.toBytes(payload);
+            if (bytes.length >= eventPayloadCodecRegistry.getCompressionThreshold(outputChannelName)) {
+                payload = compressor.compress(bytes);
+                compression = compressor.getName();
+            }
+        }
+
+        final Object encodedPayload = payload;
+        final String encoding = payloadCodec.getName();
+        final String compressionName = compression;
+
+        if (!eventStoreSpilloverService.isEnabled()) {
+            writeEvent(eventId, header, encodedPayload, payloadClassName, encoding, compressionName, outputChannelName);
+            return message;
+        }
+
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(eventId)
+                .channel(outputChannelName)
+                .header(header)
+                .payload(encodedPayload)
+                .payloadType(payloadClassName)
+                .encoding(encoding)
+                .compression(compressionName)
+                .build();
+        eventStoreSpilloverService.createEvent(
+                () -> writeEvent(eventId, header, encodedPayload, payloadClassName, encoding, compressionName, outputChannelName),
+                domainEvent,
+                !TransactionSynchronizationManager.isActualTransactionActive());
         return message;
     }
 
+    private DomainEvent writeEvent(
+            String eventId, Map<String, Object> header, Object payload, String payloadClassName,
+            String encoding, String compression, String outputChannelName)
+    {
+        if (eventStoreGroupCommitService.isEnabled()) {
+            return eventStoreGroupCommitService.createEvent(
+                    eventId, header, payload, payloadClassName, encoding, compression, outputChannelName);
+        }
+        return eventStoreDao.createEvent(
+                eventId, header, payload, payloadClassName, encoding, compression, outputChannelName);
+    }
+
     /**
      * Update an event as returned (remote broker refuse to take the message).
      *
@@ -130,7 +368,12 @@ public class EventStoreService<T> {
         if (StringUtils.isEmpty(outputChannelName)) {
             throw new NullPointerException("outputChannelName should not be null");
         }
-        return eventStoreDao.updateReturnedTimestamp(eventId, outputChannelName);
+        DomainEvent domainEvent = eventStoreDao.updateReturnedTimestamp(eventId, outputChannelName);
+        if (domainEvent == null) {
+            // the event could have been spilled and not yet drained
+            domainEvent = eventStoreSpilloverService.updateReturnedTimestamp(eventId, outputChannelName);
+        }
+        return domainEvent;
     }
 
     /**
@@ -149,11 +392,18 @@ public class EventStoreService<T> {
         if (StringUtils.isEmpty(outputChannelName)) {
             throw new NullPointerException("outputChannelName should not be null");
         }
-        return eventStoreDao.updateProducedTimestamp(eventId, outputChannelName);
+        DomainEvent domainEvent = eventStoreDao.updateProducedTimestamp(eventId, outputChannelName);
+        if (domainEvent == null) {
+            // the event could have been spilled and not yet drained
+            domainEvent = eventStoreSpilloverService.updateProducedTimestamp(eventId, outputChannelName);
+        }
+        return domainEvent;
     }
 
     /**
-     * Query whether an event had been consumed.
+     * Query whether an event had been consumed. If the consumed cache is enabled, the
+     * event store is queried only if the {@link EventStoreConsumedCacheService} cannot
+     * determine the answer.
      *
      * @param eventId the event's ID to query
      * @param outputChannelName the name of the output channel the event was written
@@ -168,7 +418,68 @@ public class EventStoreService<T> {
         if (StringUtils.isEmpty(outputChannelName)) {
             throw new NullPointerException("outputChannelName should not be null");
         }
-        return eventStoreDao.hasConsumedTimeStamp(eventId, outputChannelName);
+        if (!eventStoreConsumedCacheService.isEnabled()) {
+            return eventStoreDao.hasConsumedTimeStamp(eventId, outputChannelName);
+        }
+        Boolean consumed = eventStoreConsumedCacheService.lookup(eventId, outputChannelName);
+        if (consumed != null) {
+            return consumed;
+        }
+        consumed = eventStoreDao.hasConsumedTimeStamp(eventId, outputChannelName);
+        if (consumed) {
+            eventStoreConsumedCacheService.recordConsumed(eventId, outputChannelName);
+        }
+        return consumed;
+    }
+
+    /**
+     * Atomically claim an event for consuming with a lease, so that concurrent deliveries
+     * of the same event are not processed more than once. The claim should be committed
+     * by {@link #markEventAsConsumed(String, String)} after processing, or released by
+     * {@link #releaseEventClaim(String, String)} if the processing failed. The claim of a
+     * crashed consumer expires after {@code consumer.leaseTimeInSec}.
+     *
+     * @param eventId the event's ID to claim
+     * @param outputChannelName the name of the output channel the event was written
+     * @return the {@link ConsumeClaim} outcome
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public ConsumeClaim claimEventForConsuming(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        if (!eventStoreConsumedCacheService.isEnabled()) {
+            return eventStoreDao.claimConsume(eventId, consumerId, consumerLeaseTimeInSec, outputChannelName);
+        }
+        Boolean consumed = eventStoreConsumedCacheService.lookup(eventId, outputChannelName);
+        if (Boolean.TRUE.equals(consumed)) {
+            return ConsumeClaim.CONSUMED;
+        }
+        if (Boolean.FALSE.equals(consumed)) {
+            // this node is the only consumer, the event is claimed in memory without a lease
+            ConsumeClaim consumeClaim = eventStoreConsumedCacheService.claim(eventId, outputChannelName);
+            if (consumeClaim != null) {
+                return consumeClaim;
+            }
+        }
+        ConsumeClaim consumeClaim = eventStoreDao.claimConsume(eventId, consumerId, consumerLeaseTimeInSec, outputChannelName);
+        if (consumeClaim == ConsumeClaim.CONSUMED) {
+            eventStoreConsumedCacheService.recordConsumed(eventId, outputChannelName);
+        }
+        return consumeClaim;
+    }
+
+    /**
+     * Release the consume claim of an event made by {@link #claimEventForConsuming(String, String)}.
+     *
+     * @param eventId the event's ID claimed
+     * @param outputChannelName the name of the output channel the event was written
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public void releaseEventClaim(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        if (eventStoreConsumedCacheService.isEnabled()) {
+            eventStoreConsumedCacheService.release(eventId, outputChannelName);
+        }
+        eventStoreDao.releaseConsume(eventId, consumerId, outputChannelName);
     }
 
     /**
@@ -187,20 +498,390 @@ public class EventStoreService<T> {
         if (StringUtils.isEmpty(outputChannelName)) {
             throw new NullPointerException("outputChannelName should not be null");
         }
+        recordConsumed(eventId, outputChannelName);
         return eventStoreDao.updateConsumedTimestamp(eventId, outputChannelName);
     }
 
+    /**
+     * Update an event as returned without blocking the caller thread if the
+     * {@link ReactiveEventStoreDao} is enabled, otherwise the update is executed
+     * synchronously and a completed future is returned. If ack coalescing is enabled,
+     * the update is handed to the {@link EventStoreAckCoalescingService} instead.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of the {@link DomainEvent} retrieved from event store,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<DomainEvent> updateEventAsReturnedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.RETURNED)) {
+            checkEventIdAndOutputChannelName(eventId, outputChannelName);
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.RETURNED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(updateEventAsReturned(eventId, outputChannelName));
+        }
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        return reactiveEventStoreDao.updateReturnedTimestamp(eventId, outputChannelName).toFuture()
+                .thenApply(domainEvent -> domainEvent != null ?
+                        domainEvent : eventStoreSpilloverService.updateReturnedTimestamp(eventId, outputChannelName));
+    }
+
+    /**
+     * Update an event as produced without blocking the caller thread if the
+     * {@link ReactiveEventStoreDao} is enabled, otherwise the update is executed
+     * synchronously and a completed future is returned. If ack coalescing is enabled,
+     * the update is handed to the {@link EventStoreAckCoalescingService} instead.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of the {@link DomainEvent} retrieved from event store,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<DomainEvent> updateEventAsProducedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.PRODUCED)) {
+            checkEventIdAndOutputChannelName(eventId, outputChannelName);
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.PRODUCED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(updateEventAsProduced(eventId, outputChannelName));
+        }
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        return reactiveEventStoreDao.updateProducedTimestamp(eventId, outputChannelName).toFuture()
+                .thenApply(domainEvent -> domainEvent != null ?
+                        domainEvent : eventStoreSpilloverService.updateProducedTimestamp(eventId, outputChannelName));
+    }
+
+    /**
+     * Update an event as consumed without blocking the caller thread if the
+     * {@link ReactiveEventStoreDao} is enabled, otherwise the update is executed
+     * synchronously and a completed future is returned. If ack coalescing is enabled,
+     * the update is handed to the {@link EventStoreAckCoalescingService} instead.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of the {@link DomainEvent} retrieved from event store,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<DomainEvent> updateEventAsConsumedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.CONSUMED)) {
+            checkEventIdAndOutputChannelName(eventId, outputChannelName);
+            recordConsumed(eventId, outputChannelName);
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.CONSUMED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(updateEventAsConsumed(eventId, outputChannelName));
+        }
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        recordConsumed(eventId, outputChannelName);
+        return reactiveEventStoreDao.updateConsumedTimestamp(eventId, outputChannelName).toFuture();
+    }
+
+    /**
+     * Mark an event as returned (remote broker refuse to take the message) without
+     * fetching the updated event from event store.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return true if the event is found and updated, false if otherwise
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public boolean markEventAsReturned(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        // the event could have been spilled and not yet drained
+        return eventStoreDao.markReturned(eventId, outputChannelName) ||
+                eventStoreSpilloverService.updateReturnedTimestamp(eventId, outputChannelName) != null;
+    }
+
+    /**
+     * Mark an event as produced (successfully sent and received by remote broker) without
+     * fetching the updated event from event store.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return true if the event is found and updated, false if otherwise
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public boolean markEventAsProduced(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        // the event could have been spilled and not yet drained
+        return eventStoreDao.markProduced(eventId, outputChannelName) ||
+                eventStoreSpilloverService.updateProducedTimestamp(eventId, outputChannelName) != null;
+    }
+
+    /**
+     * Mark an event as consumed (message successfully processed by consumer) without
+     * fetching the updated event from event store.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return true if the event is found and updated, false if otherwise
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public boolean markEventAsConsumed(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        recordConsumed(eventId, outputChannelName);
+        return eventStoreDao.markConsumed(eventId, outputChannelName);
+    }
+
+    /**
+     * Mark an event as returned, the asynchronous counterpart of {@link #markEventAsReturned(String, String)}
+     * following the same rules as {@link #updateEventAsReturnedAsync(String, String)}.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of whether the event is found and updated,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<Boolean> markEventAsReturnedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.RETURNED)) {
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.RETURNED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(markEventAsReturned(eventId, outputChannelName));
+        }
+        return reactiveEventStoreDao.markReturned(eventId, outputChannelName).toFuture()
+                .thenApply(matched -> matched ||
+                        eventStoreSpilloverService.updateReturnedTimestamp(eventId, outputChannelName) != null);
+    }
+
+    /**
+     * Mark an event as returned and schedule a resend of the message returned by the broker
+     * once its backoff has elapsed, rather than waiting for the retry operation to find it.
+     *
+     * <p>The backoff grows exponentially with the attempt count of the message, the time of
+     * the next attempt is persisted such that the retry operation does not resend the event
+     * before then. The event is claimed before resending, so it's resent only once even if
+     * the retry operation of any node finds it at the same time.</p>
+     *
+     * <p>The message is not tracked by the {@link EventStorePublishTrackerService} anymore, and
+     * the resend is scheduled on a queue of its own rather than the queue of the output channel,
+     * such that it's not held back by the retry operation of the channel.</p>
+     *
+     * <p>Falls back to {@link #markEventAsReturnedAsync(String, String)} if the targeted resend
+     * is not enabled, the message returned is not available or the event failed to be marked.</p>
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @param returnedMessage the {@link Message} returned by the broker, null if not available
+     * @return {@link CompletableFuture} of whether the event is found and updated
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<Boolean> resendReturnedEventAsync(
+            String eventId, String outputChannelName, Message<?> returnedMessage) throws NullPointerException
+    {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        // resent by the targeted resend or the retry operation instead of the publish tracker
+        eventStorePublishTrackerService.untrack(eventId);
+        if (!returnedResendEnabled || returnedMessage == null) {
+            return markEventAsReturnedAsync(eventId, outputChannelName);
+        }
+
+        Object attemptCountHeader = returnedMessage.getHeaders().get(ATTEMPT_COUNT_HEADER);
+        long attemptCount = attemptCountHeader instanceof Number ? ((Number) attemptCountHeader).longValue() : 1L;
+        if (eventStoreQuarantineService.isAttemptExhausted(outputChannelName, attemptCount)) {
+            // left to the retry operation to quarantine
+            return markEventAsReturnedAsync(eventId, outputChannelName);
+        }
+        long backoffMillis = getReturnedBackoffMillis(attemptCount);
+        boolean matched;
+        try {
+            matched = eventStoreDao.markReturned(eventId, backoffMillis, outputChannelName);
+        } catch (RuntimeException e) {
+            LOGGER.warn("error marking returned event: {} {}, left to the retry operation", eventId, e.getMessage());
+            return markEventAsReturnedAsync(eventId, outputChannelName);
+        }
+        if (!matched) {
+            // the event could have been spilled and not yet drained, left to the retry operation
+            return CompletableFuture.completedFuture(
+                    eventStoreSpilloverService.updateReturnedTimestamp(eventId, outputChannelName) != null);
+        }
+        eventStoreScheduler.schedule(getReturnedResendQueue(outputChannelName),
+                () -> resendReturnedEvent(eventId, outputChannelName, returnedMessage), backoffMillis);
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * @param outputChannelName the name of the output channel
+     * @return the name of the scheduler queue of the targeted resends of the output channel
+     */
+    static String getReturnedResendQueue(String outputChannelName) {
+        return RETURNED_RESEND_QUEUE_PREFIX + outputChannelName;
+    }
+
+    /**
+     * The backoff before resending a returned event, which grows exponentially from the
+     * initial backoff with the attempt count, up to the max backoff.
+     *
+     * @param attemptCount the attempt count of the event returned
+     * @return the backoff in milliseconds
+     */
+    long getReturnedBackoffMillis(long attemptCount) {
+        double backoffMillis = returnedBackoffMillis * Math.pow(returnedBackoffMultiplier, Math.max(attemptCount - 1L, 0L));
+        return (long) Math.min(backoffMillis, (double) returnedMaxBackoffMillis);
+    }
+
+    private void resendReturnedEvent(String eventId, String outputChannelName, Message<?> returnedMessage) {
+        long attemptCount;
+        try {
+            attemptCount = eventStoreDao.claimReturned(eventId, outputChannelName);
+        } catch (RuntimeException e) {
+            LOGGER.warn("error claiming returned event: {} {}, left to the retry operation", eventId, e.getMessage());
+            return;
+        }
+        if (attemptCount == 0L) {
+            LOGGER.debug("returned event: {} has been acknowledged or claimed by the retry operation", eventId);
+            return;
+        }
+
+        // the reply headers of the return should not be sent again
+        Message<?> message = MessageBuilder.fromMessage(returnedMessage)
+                .removeHeaders("amqp_*")
+                .setHeader(ATTEMPT_COUNT_HEADER, attemptCount)
+                .build();
+        long sizeInBytes = message.getPayload() instanceof byte[] ? ((byte[]) message.getPayload()).length : 0L;
+        LOGGER.debug("resend returned event: {}, attempt: {}", eventId, attemptCount);
+        eventStoreResendService.resendAsync(outputChannelName, eventId, sizeInBytes, () -> {
+            sendMessage(message, outputChannelName);
+            return null;
+        });
+    }
+
+    /**
+     * Mark an event as produced, the asynchronous counterpart of {@link #markEventAsProduced(String, String)}
+     * following the same rules as {@link #updateEventAsProducedAsync(String, String)}.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of whether the event is found and updated,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<Boolean> markEventAsProducedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.PRODUCED)) {
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.PRODUCED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(markEventAsProduced(eventId, outputChannelName));
+        }
+        return reactiveEventStoreDao.markProduced(eventId, outputChannelName).toFuture()
+                .thenApply(matched -> matched ||
+                        eventStoreSpilloverService.updateProducedTimestamp(eventId, outputChannelName) != null);
+    }
+
+    /**
+     * Mark an event as consumed, the asynchronous counterpart of {@link #markEventAsConsumed(String, String)}
+     * following the same rules as {@link #updateEventAsConsumedAsync(String, String)}.
+     *
+     * @param eventId the event's ID to update
+     * @param outputChannelName the name of the output channel the event was written
+     * @return {@link CompletableFuture} of whether the event is found and updated,
+     * completed with null if the update is coalesced
+     * @throws NullPointerException if eventId or outputChannelName is null
+     */
+    public CompletableFuture<Boolean> markEventAsConsumedAsync(String eventId, String outputChannelName) throws NullPointerException {
+        checkEventIdAndOutputChannelName(eventId, outputChannelName);
+        if (eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.CONSUMED)) {
+            recordConsumed(eventId, outputChannelName);
+            eventStoreAckCoalescingService.submit(eventId, EventAckUpdate.Type.CONSUMED, outputChannelName);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactiveEventStoreDao == null) {
+            return CompletableFuture.completedFuture(markEventAsConsumed(eventId, outputChannelName));
+        }
+        recordConsumed(eventId, outputChannelName);
+        return reactiveEventStoreDao.markConsumed(eventId, outputChannelName).toFuture();
+    }
+
+    private void recordConsumed(String eventId, String outputChannelName) {
+        if (eventStoreConsumedCacheService.isEnabled()) {
+            eventStoreConsumedCacheService.recordConsumed(eventId, outputChannelName);
+        }
+    }
+
+    private void checkEventIdAndOutputChannelName(String eventId, String outputChannelName) throws NullPointerException {
+        if (StringUtils.isEmpty(eventId)) {
+            throw new NullPointerException("eventId should not be null");
+        }
+        if (StringUtils.isEmpty(outputChannelName)) {
+            throw new NullPointerException("outputChannelName should not be null");
+        }
+    }
+
     /**
      * Lookup for any {@link DomainEvent} eligible for resending (any message that is un-certain to
-     * have reached and accepted by the remote broker.
+     * have reached and accepted by the remote broker. The events are resent by the workers of
+     * the output channel within its rate limit, the method returns once every event fetched is
+     * resent. Only the events actually resent are counted, such that the retry operation backs
+     * off instead of looping while the broker is unavailable.
      *
      * @param outputChannelName the name of the output channel to lookup
+     * @return the no. of {@link DomainEvent} resent successfully
      */
-    void fetchEventAndResend(String outputChannelName) {
-        eventStoreDao.filterPendingProducerAckOrReturned(outputChannelName, (domainEvent) -> {
-            Message<?> message = createMessageFromEvent(domainEvent);
-            sendMessage(message, domainEvent.getChannel());
-        });
+    int fetchEventAndResend(String outputChannelName) {
+        List<CompletableFuture<Boolean>> resends = new ArrayList<>();
+        EventStoreCallbackCommand resendCommand = (domainEvent) -> resends.add(eventStoreResendService.resendAsync(
+                domainEvent.getChannel(),
+                domainEvent,
+                estimateEventSize(domainEvent),
+                (event) -> sendMessage(createMessageFromEvent(event), event.getChannel())));
+        long maxAttempts = 0L;
+        if (eventStoreResendService.isRecovering(outputChannelName)) {
+            // the attempts made while the broker is unavailable should not exhaust the events
+            LOGGER.debug("resends of {} are recovering from a failure, no event is quarantined", outputChannelName);
+        } else {
+            maxAttempts = eventStoreQuarantineService.getMaxAttempts(outputChannelName);
+            try {
+                // the events over the max no. of attempts are not resent anymore
+                eventStoreQuarantineService.quarantineExhaustedEvents(outputChannelName);
+            } catch (RuntimeException e) {
+                LOGGER.warn("error quarantining events of {}: {}", outputChannelName, e.getMessage());
+            }
+        }
+        long resentCount;
+        try {
+            eventStoreDao.filterPendingProducerAckOrReturned(outputChannelName, maxAttempts, resendCommand);
+            // the spilled events which are not yet drained are pending as well
+            eventStoreSpilloverService.filterPendingProducerAckOrReturned(outputChannelName, resendCommand);
+
+        } finally {
+            // the events fetched are resent regardless of any subsequent error
+            resentCount = eventStoreResendService.awaitResends(outputChannelName, resends);
+            LOGGER.debug("total no. of events resent: {} out of {}", resentCount, resends.size());
+        }
+        return (int) resentCount;
+    }
+
+    /**
+     * Approximate the size of the {@link DomainEvent} by its encoded payload, only if
+     * the resend of its channel is limited by bytes per second.
+     */
+    private long estimateEventSize(DomainEvent domainEvent) throws IOException {
+        if (!eventStoreResendService.isByteRateLimited(domainEvent.getChannel())) {
+            return 0L;
+        }
+        Object value = domainEvent.getPayload();
+        if (value instanceof Binary) {
+            return ((Binary) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        return eventPayloadCodecRegistry.getCodec(domainEvent.getEncoding()).toBytes(value).length;
     }
 
     /**
@@ -212,11 +893,20 @@ public class EventStoreService<T> {
      * @throws ClassNotFoundException
      */
     Message<?> createMessageFromEvent(DomainEvent domainEvent) throws IOException, ClassNotFoundException {
-        Map headers = ObjectMapperFactory.getMapper().fromJson(domainEvent.getHeader(), Map.class);
+        Map<String, Object> headers = new HashMap<>(domainEvent.getHeader());
         headers.put("eventId", domainEvent.getId());
+        // allow the consumer to tell a resent message from the first delivery
+        headers.put(ATTEMPT_COUNT_HEADER, domainEvent.getAttemptCount());
 
-        Class<T> payloadClass = (Class<T>) Class.forName(domainEvent.getPayloadType());
-        T payload = ObjectMapperFactory.getMapper().fromJson(domainEvent.getPayload(), payloadClass);
+        Class<T> payloadClass = (Class<T>) eventPayloadCodecRegistry.resolvePayloadType(domainEvent.getPayloadType());
+        EventPayloadCodec payloadCodec = eventPayloadCodecRegistry.getCodec(domainEvent.getEncoding());
+        Object value = domainEvent.getPayload();
+        if (domainEvent.getCompression() != null) {
+            // decompress only when the event is actually resent
+            byte[] bytes = value instanceof Binary ? ((Binary) value).getData() : (byte[]) value;
+            value = payloadCodec.fromBytes(eventPayloadCodecRegistry.getCompressor(domainEvent.getCompression()).decompress(bytes));
+        }
+        T payload = payloadCodec.decode(value, payloadClass);
         Message message = MessageBuilder.withPayload(payload).copyHeaders(headers).build();
 
         LOGGER.debug("assemble message: {}", message);
@@ -245,6 +935,8 @@ public class EventStoreService<T> {
     protected void postApplicationStartup() {
         ImmutableCollection<String> eligibleProducerChannels = discoverEligibleProducerChannels();
         eventStoreDao.initializeDb(eligibleProducerChannels);
+        eventStoreSpilloverService.initialize(eligibleProducerChannels);
+        eventStorePublishTrackerService.start(this::sendMessage);
         if (autoStart) {
             configureAndStartRetry(eligibleProducerChannels);
         }
@@ -252,23 +944,22 @@ public class EventStoreService<T> {
     }
 
     /**
-     * Configure the {@link RetryCallback} and start it asynchronously.
+     * Configure the {@link EventStoreRetryCommand} and start it asynchronously with an
+     * adaptive cadence, the pending events are drained back-to-back while each cycle
+     * fetched a full batch.
      *
      * @param outputChannelNames a {@link Collection} of output channel names to before configured with retry
      */
     private void configureAndStartRetry(Collection<String> outputChannelNames) {
         if (outputChannelNames.size() > 0) {
-            List<RetryCallback<Void, RuntimeException>> retryCallbacks = new ArrayList<>();
+            Map<String, EventStoreRetryCommand> retryCommands = new LinkedHashMap<>();
             for (String outputChannelName:outputChannelNames) {
-                RetryCallback<Void, RuntimeException> retryCallback = retryContext -> {
-                    LOGGER.debug("retry count: {}", retryContext.getRetryCount());
+                retryCommands.put(outputChannelName, () -> {
                     LOGGER.debug("output channel: {}", outputChannelName);
-                    fetchEventAndResend(outputChannelName);
-                    throw new RuntimeException("initiate next retry");
-                };
-                retryCallbacks.add(retryCallback);
+                    return fetchEventAndResend(outputChannelName);
+                });
             }
-            eventStoreRetryService.startAsync(retryCallbacks);
+            eventStoreRetryService.startAdaptiveAsync(retryCommands, retryMessageBatchSize);
         }
     }
 
@@ -289,4 +980,93 @@ public class EventStoreService<T> {
         return ignoreDuplicate;
     }
 
+    /**
+     * Test and mark the producer sequence of a message as seen, see {@link ProducerSequenceTracker}.
+     *
+     * @param headers the {@link MessageHeaders} of the message consumed
+     * @param outputChannelName the name of the output channel the event was written
+     * @return the {@link ProducerSequenceTracker.Verdict}, or {@link ProducerSequenceTracker.Verdict#UNKNOWN}
+     * if sequence de-duplication is disabled or the message doesn't carry a producer sequence
+     */
+    public ProducerSequenceTracker.Verdict acquireEventSequence(MessageHeaders headers, String outputChannelName) {
+        String producerKey = producerKeyOf(headers, outputChannelName);
+        if (producerKey == null) {
+            return ProducerSequenceTracker.Verdict.UNKNOWN;
+        }
+        return getProducerSequenceTracker().acquire(producerKey, producerSequenceOf(headers));
+    }
+
+    /**
+     * Release the producer sequence of a message acquired by
+     * {@link #acquireEventSequence(MessageHeaders, String)} if it's not consumed.
+     *
+     * @param headers the {@link MessageHeaders} of the message
+     * @param outputChannelName the name of the output channel the event was written
+     */
+    public void releaseEventSequence(MessageHeaders headers, String outputChannelName) {
+        String producerKey = producerKeyOf(headers, outputChannelName);
+        if (producerKey != null) {
+            getProducerSequenceTracker().release(producerKey, producerSequenceOf(headers));
+        }
+    }
+
+    /**
+     * Record the producer sequence of a message confirmed to be consumed by the event store.
+     *
+     * @param headers the {@link MessageHeaders} of the message consumed
+     * @param outputChannelName the name of the output channel the event was written
+     */
+    public void recordEventSequence(MessageHeaders headers, String outputChannelName) {
+        String producerKey = producerKeyOf(headers, outputChannelName);
+        if (producerKey != null) {
+            getProducerSequenceTracker().record(producerKey, producerSequenceOf(headers));
+        }
+    }
+
+    private String producerKeyOf(MessageHeaders headers, String outputChannelName) {
+        if (!sequenceDedup || headers == null) {
+            return null;
+        }
+        String messageProducerId = headers.get(PRODUCER_ID_HEADER, String.class);
+        if (StringUtils.isEmpty(messageProducerId) || !(headers.get(PRODUCER_SEQUENCE_HEADER) instanceof Number)) {
+            return null;
+        }
+        return outputChannelName + ":" + messageProducerId;
+    }
+
+    private static long producerSequenceOf(MessageHeaders headers) {
+        // the header could be narrowed to integer once converted with the event header
+        return ((Number) headers.get(PRODUCER_SEQUENCE_HEADER)).longValue();
+    }
+
+    private ProducerSequenceTracker getProducerSequenceTracker() {
+        if (producerSequenceTracker == null) {
+            synchronized (this) {
+                if (producerSequenceTracker == null) {
+                    producerSequenceTracker = new ProducerSequenceTracker(sequenceWindowSize, sequenceMaxProducers);
+                }
+            }
+        }
+        return producerSequenceTracker;
+    }
+
+    public boolean isRedeliveryFastPath() {
+        return redeliveryFastPath;
+    }
+
+    public boolean isConsumedAckCoalesced() {
+        return eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.CONSUMED);
+    }
+
+    /**
+     * The outbox write mode is used if configured, or if the event store doesn't support transaction,
+     * or if the circuit of the event store write is opened so that the event could be spilled.
+     *
+     * @return true if the event should be written without transaction, false if otherwise
+     */
+    public boolean isOutboxWriteMode() {
+        return "outbox".equals(writeMode) || !eventStoreDao.isTransactionSupported() ||
+                eventStoreSpilloverService.isCircuitOpen();
+    }
+
 }
@@ -0,0 +1,410 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.command.EventStoreCallbackCommand;
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.netflix.hystrix.HystrixCircuitBreaker;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The service class for spilling events into a local journal when the event store
+ * is slow or unavailable.
+ *
+ * <p>Every write into the event store is executed by a {@link HystrixCommand} with
+ * semaphore isolation, the write stays on the caller thread so any transaction bound
+ * to the thread is preserved. Once the error percentage of the writes reached the
+ * threshold, the circuit is opened and the writes are short-circuited: the event is
+ * appended to a local spill journal which is forced to disk, and the message is
+ * published at once without waiting for the event store.</p>
+ *
+ * <p>Only a transient failure of the write (the event store is unreachable or timed out)
+ * spills the event and counts towards the circuit, any other error such as a mapping
+ * or codec error is thrown to the caller, as it would fail the drain of the event all
+ * the same.</p>
+ *
+ * <p>A transaction cannot span the spill journal, the event is spilled only if the
+ * write is not part of an actual transaction. The publisher is expected to send
+ * without transaction while the circuit is open.</p>
+ *
+ * <p>A background drainer on the shared {@link EventStoreScheduler} bulk-loads the
+ * spilled events into the event store once the circuit is closed again, a drained event
+ * is marked as consumed in the spill journal so that it can be compacted. Until it is
+ * drained, the spilled event is scanned by the retry operation like any other pending
+ * event.</p>
+ *
+ * <p>An ack could reach the spill journal while the event is being bulk-loaded. The
+ * acks received until the event is marked as drained are replayed into the event store,
+ * any later ack finds the event drained and is forwarded to the event store.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+@Service("EventStoreSpilloverService")
+public class EventStoreSpilloverService implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreSpilloverService.class);
+
+    private static final HystrixCommandGroupKey GROUP_KEY = HystrixCommandGroupKey.Factory.asKey("EventStore");
+
+    private static final HystrixCommandKey COMMAND_KEY = HystrixCommandKey.Factory.asKey("EventStoreWrite");
+
+    @Value("${com.jeffrey.example.eventstore.spillover.enabled:false}") // spillover is opt-in
+    boolean enabled;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.directory:eventstore-spill}") // relative to working directory if undefined
+    String spillDirectory;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.segmentSizeBytes:16777216}") // default segment size to 16MB
+    int segmentSizeBytes;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.drainIntervalMillis:1000}") // interval between each drain
+    long drainIntervalMillis;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.drainBatchSize:500}") // max no. of events per bulk load
+    int drainBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.maxConcurrentWrites:1000}") // semaphore of the write command
+    int maxConcurrentWrites;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.circuitBreaker.requestVolumeThreshold:20}") // min. no. of writes to trip the circuit
+    int requestVolumeThreshold;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.circuitBreaker.errorThresholdPercentage:50}") // error percentage to trip the circuit
+    int errorThresholdPercentage;
+
+    @Value("${com.jeffrey.example.eventstore.spillover.circuitBreaker.sleepWindowInMilliseconds:5000}") // time before a trial write
+    int sleepWindowInMilliseconds;
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.expired.seconds:60}") // message sending expiry default to 60s
+    long messageExpiredTimeInSec;
+
+    @Value("${com.jeffrey.example.eventstore.retry.message.batchSize:1000}") // default message count per retry to 1000
+    int retryMessageBatchSize;
+
+    @Value("${com.jeffrey.example.eventstore.consumer.expiredTimeInSec:0}") // default to 0s if not defined
+    int messageConsumerExpiryTimeInSec;
+
+    private final Set<String> outputChannelNames = ConcurrentHashMap.newKeySet();
+
+    private Clock clock;
+
+    private EventStoreDao eventStoreDao;
+
+    private volatile JournalEventStoreDao spillJournal;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreScheduler.PeriodicTask drainer;
+
+    public EventStoreSpilloverService(
+            @Autowired @Qualifier("eventStoreClock") Clock clock,
+            @Autowired EventStoreDao eventStoreDao,
+            @Autowired EventStoreScheduler eventStoreScheduler
+    ) {
+        this.clock = clock;
+        this.eventStoreDao = eventStoreDao;
+        this.eventStoreScheduler = eventStoreScheduler;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open the spill journal of the output channels, any event left in the journal by
+     * the previous run is recovered and drained, then start the background drainer.
+     *
+     * @param outputChannelNames a {@link Collection} of output channel names
+     */
+    public synchronized void initialize(Collection<String> outputChannelNames) {
+        if (!enabled || drainer != null) return;
+
+        this.outputChannelNames.addAll(outputChannelNames);
+        getSpillJournal().initializeDb(outputChannelNames);
+
+        drainer = eventStoreScheduler.scheduleWithFixedDelay(
+                EventStoreScheduler.HOUSEKEEPING_QUEUE, this::drainAll, drainIntervalMillis, drainIntervalMillis);
+    }
+
+    /**
+     * @return true if the circuit of the event store write is opened, false if otherwise
+     */
+    public boolean isCircuitOpen() {
+        if (!enabled) return false;
+        HystrixCircuitBreaker circuitBreaker = HystrixCircuitBreaker.Factory.getInstance(COMMAND_KEY);
+        return circuitBreaker != null && circuitBreaker.isOpen();
+    }
+
+    /**
+     * Write the event into the event store through the circuit breaker. If the write
+     * failed transiently, is rejected or short-circuited, the event is appended to the
+     * spill journal instead, unless spilling is not allowed in which case the original
+     * error is thrown.
+     *
+     * @param write the write operation into the event store
+     * @param domainEvent the {@link DomainEvent} to be written, the written timestamp is assigned by the store
+     * @param spillAllowed true if the event could be spilled, false if the write is part of a transaction
+     * @return the {@link DomainEvent} written into either the event store or the spill journal
+     */
+    public DomainEvent createEvent(Supplier<DomainEvent> write, DomainEvent domainEvent, boolean spillAllowed) {
+        if (!enabled) {
+            return write.get();
+        }
+
+        try {
+            return new EventStoreWriteCommand(write, domainEvent, spillAllowed).execute();
+
+        } catch (HystrixBadRequestException | HystrixRuntimeException e) {
+            // unwrap the original error of the write
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lookup for any spilled event eligible for resending, the spilled events are
+     * treated as pending by the retry operation until they are drained.
+     *
+     * @param outputChannelName the name of the output channel to lookup
+     * @param callbackCommand the callback to resend the event
+     */
+    void filterPendingProducerAckOrReturned(String outputChannelName, EventStoreCallbackCommand callbackCommand) {
+        if (!enabled) return;
+        getSpillJournal().filterPendingProducerAckOrReturned(outputChannelName, callbackCommand);
+    }
+
+    /**
+     * Update a spilled event as returned, the update is forwarded to the event store
+     * if the event has been drained concurrently.
+     *
+     * @return the {@link DomainEvent} updated, null if it's not found in the spill journal
+     */
+    DomainEvent updateReturnedTimestamp(String eventId, String outputChannelName) {
+        if (!enabled) return null;
+        DomainEvent domainEvent = getSpillJournal().updateReturnedTimestamp(eventId, outputChannelName);
+        if (domainEvent != null && domainEvent.getConsumerAckOn() != null) {
+            return eventStoreDao.updateReturnedTimestamp(eventId, outputChannelName);
+        }
+        return domainEvent;
+    }
+
+    /**
+     * Update a spilled event as produced, the update is forwarded to the event store
+     * if the event has been drained concurrently.
+     *
+     * @return the {@link DomainEvent} updated, null if it's not found in the spill journal
+     */
+    DomainEvent updateProducedTimestamp(String eventId, String outputChannelName) {
+        if (!enabled) return null;
+        DomainEvent domainEvent = getSpillJournal().updateProducedTimestamp(eventId, outputChannelName);
+        if (domainEvent != null && domainEvent.getConsumerAckOn() != null) {
+            return eventStoreDao.updateProducedTimestamp(eventId, outputChannelName);
+        }
+        return domainEvent;
+    }
+
+    /**
+     * Drain the spill journal of every output channel into the event store.
+     */
+    void drainAll() {
+        if (isCircuitOpen()) {
+            LOGGER.debug("circuit is opened, skip draining");
+            return;
+        }
+        for (String outputChannelName:outputChannelNames) {
+            try {
+                drain(outputChannelName);
+            } catch (RuntimeException e) {
+                // leave the remaining events in the journal for the next drain
+                LOGGER.warn("error draining spilled events of channel: {} {}", outputChannelName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bulk-load the spilled events of a specific output channel into the event store.
+     *
+     * @param outputChannelName the name of the output channel
+     * @return the no. of events drained
+     */
+    int drain(String outputChannelName) {
+        JournalEventStoreDao journal = getSpillJournal();
+        // a drained event is marked as consumed in the spill journal
+        List<DomainEvent> spilledEvents = journal.findAll(outputChannelName).stream()
+                .filter(domainEvent -> domainEvent.getConsumerAckOn() == null)
+                .collect(Collectors.toList());
+
+        int drainedCount = 0;
+        for (int i=0; i<spilledEvents.size(); i+=drainBatchSize) {
+            List<DomainEvent> batch = spilledEvents.subList(i, Math.min(i + drainBatchSize, spilledEvents.size()));
+            bulkLoad(batch, outputChannelName);
+            for (DomainEvent domainEvent:batch) {
+                // the latest state as of the drain, any later ack is forwarded to the event store
+                DomainEvent drainedEvent = journal.updateConsumedTimestamp(domainEvent.getId(), outputChannelName);
+                if (drainedEvent != null) {
+                    replayAcks(domainEvent, drainedEvent, outputChannelName);
+                }
+            }
+            drainedCount += batch.size();
+        }
+
+        if (drainedCount > 0) {
+            LOGGER.info("drained {} spilled events into channel: {}", drainedCount, outputChannelName);
+        }
+        return drainedCount;
+    }
+
+    /**
+     * Apply the acks received by the spill journal after the event was read for bulk-loading.
+     */
+    private void replayAcks(DomainEvent loadedEvent, DomainEvent drainedEvent, String outputChannelName) {
+        if (drainedEvent.getReturnedOn() != null && !Objects.equals(drainedEvent.getReturnedOn(), loadedEvent.getReturnedOn())) {
+            eventStoreDao.markReturned(drainedEvent.getId(), outputChannelName);
+        }
+        if (drainedEvent.getProducerAckOn() != null && !Objects.equals(drainedEvent.getProducerAckOn(), loadedEvent.getProducerAckOn())) {
+            eventStoreDao.markProduced(drainedEvent.getId(), outputChannelName);
+        }
+    }
+
+    private void bulkLoad(List<DomainEvent> batch, String outputChannelName) {
+        try {
+            eventStoreDao.createEvents(batch, outputChannelName);
+
+        } catch (DataAccessException e) {
+            /**
+             * A write which failed from the client's perspective could have been applied
+             * by the database, load the batch one by one and skip the duplicates.
+             */
+            LOGGER.debug("bulk load failed, fallback to load one by one: {}", e.getMessage());
+            for (DomainEvent domainEvent:batch) {
+                try {
+                    eventStoreDao.createEvents(Collections.singletonList(domainEvent), outputChannelName);
+                } catch (DuplicateKeyException duplicateKeyException) {
+                    LOGGER.debug("spilled event: {} already exist, skipping", domainEvent.getId());
+                }
+            }
+        }
+    }
+
+    private JournalEventStoreDao getSpillJournal() {
+        if (spillJournal == null) {
+            synchronized (this) {
+                if (spillJournal == null) {
+                    spillJournal = JournalEventStoreDao.createForcedJournal(
+                            clock, spillDirectory, segmentSizeBytes,
+                            messageExpiredTimeInSec, retryMessageBatchSize, messageConsumerExpiryTimeInSec);
+                }
+            }
+        }
+        return spillJournal;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (drainer != null) {
+            // wait for the drain in progress if any
+            drainer.cancel();
+        }
+        if (spillJournal != null) {
+            spillJournal.destroy();
+        }
+    }
+
+    /**
+     * @return true if the event store is unreachable or timed out, which could succeed if retried later
+     */
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof DataAccessResourceFailureException ||
+                e instanceof TransientDataAccessException ||
+                e instanceof RecoverableDataAccessException ||
+                e instanceof MongoSocketException ||
+                e instanceof MongoTimeoutException ||
+                e instanceof MongoExecutionTimeoutException;
+    }
+
+    /**
+     * The write into the event store governed by the circuit breaker
+     */
+    private class EventStoreWriteCommand extends HystrixCommand<DomainEvent> {
+        private final Supplier<DomainEvent> write;
+        private final DomainEvent domainEvent;
+        private final boolean spillAllowed;
+
+        private EventStoreWriteCommand(Supplier<DomainEvent> write, DomainEvent domainEvent, boolean spillAllowed) {
+            super(Setter.withGroupKey(GROUP_KEY)
+                    .andCommandKey(COMMAND_KEY)
+                    .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                            // execute on the caller thread to preserve the transaction bound to it
+                            .withExecutionIsolationStrategy(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE)
+                            .withExecutionIsolationSemaphoreMaxConcurrentRequests(maxConcurrentWrites)
+                            .withFallbackIsolationSemaphoreMaxConcurrentRequests(maxConcurrentWrites)
+                            // the caller thread cannot be released by a timeout, rely on the driver's timeout instead
+                            .withExecutionTimeoutEnabled(false)
+                            .withCircuitBreakerRequestVolumeThreshold(requestVolumeThreshold)
+                            .withCircuitBreakerErrorThresholdPercentage(errorThresholdPercentage)
+                            .withCircuitBreakerSleepWindowInMilliseconds(sleepWindowInMilliseconds)));
+            this.write = write;
+            this.domainEvent = domainEvent;
+            this.spillAllowed = spillAllowed;
+        }
+
+        @Override
+        protected DomainEvent run() throws Exception {
+            try {
+                return write.get();
+
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                // neither spilled nor counted as a failure by the circuit breaker
+                throw new HystrixBadRequestException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        protected DomainEvent getFallback() {
+            if (!spillAllowed) {
+                return super.getFallback();
+            }
+            String outputChannelName = domainEvent.getChannel();
+            LOGGER.warn("event store unavailable, spilling event: {} into local journal", domainEvent.getId());
+            outputChannelNames.add(outputChannelName);
+            return getSpillJournal().createEvent(
+                    domainEvent.getId(), domainEvent.getHeader(), domainEvent.getPayload(), domainEvent.getPayloadType(),
+                    domainEvent.getEncoding(), domainEvent.getCompression(), outputChannelName);
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.jeffrey.example.demolib.eventstore.config.MongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A utility class for reading the raw BSON {@link Document} of the event store
+ * into {@link DomainEvent}.
+ *
+ * <p>Events written before the introduction of {@link DomainEvent#ENCODING_BSON}
+ * stored the header and payload as json strings, these are migrated to the
+ * BSON structure while being read.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class DomainEventDocumentMapper {
+
+    private static final TypeReference<Map<String, Object>> HEADER_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    private DomainEventDocumentMapper() {}
+
+    /**
+     * Read a raw BSON {@link Document} into a {@link DomainEvent.Builder}, so the caller
+     * could further override any attributes before building the {@link DomainEvent}.
+     *
+     * @param document the raw BSON {@link Document} fetched from the event store
+     * @return {@link DomainEvent.Builder} populated with the attributes of the document
+     */
+    public static DomainEvent.Builder fromDocument(Document document) {
+        Object header = document.get("header");
+        Object payload = document.get("payload");
+        String encoding = document.get("encoding", String.class);
+        String compression = document.get("compression", String.class);
+
+        if (encoding == null) {
+            // legacy json string encoding
+            try {
+                header = header == null ? null : ObjectMapperFactory.getObjectMapper().readValue((String) header, HEADER_TYPE);
+                payload = payload == null ? null : ObjectMapperFactory.getObjectMapper().readValue((String) payload, Object.class);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            encoding = DomainEvent.ENCODING_BSON;
+        }
+
+        if (DomainEvent.ENCODING_BSON.equals(encoding) && compression == null) {
+            // payload of other encodings or compressed payload are opaque to the mapper
+            payload = restoreKeys(payload);
+        }
+
+        Number attemptCount = document.get("attemptCount", Number.class);
+
+        return new DomainEvent.Builder()
+                .id(document.get("_id", String.class))
+                .createdOn(toInstant(document.getDate("createdOn")))
+                .channel(document.get("channel", String.class))
+                .header((Map<String, Object>) restoreKeys(header))
+                .payload(payload)
+                .payloadType(document.get("payloadType", String.class))
+                .encoding(encoding)
+                .compression(compression)
+                .writtenOn(toInstant(document.getDate("writtenOn")))
+                .attemptCount(attemptCount == null ? 1L : attemptCount.longValue())
+                .returnedOn(toInstant(document.getDate("returnedOn")))
+                .producerAckOn(toInstant(document.getDate("producerAckOn")))
+                .consumerAckOn(toInstant(document.getDate("consumerAckOn")));
+    }
+
+    /**
+     * Write a {@link DomainEvent} into a raw BSON {@link Document}, the reverse of
+     * {@link #fromDocument(Document)}, for event store which is not backed by the
+     * mapping converter.
+     *
+     * @param domainEvent the {@link DomainEvent} to be written
+     * @return the raw BSON {@link Document}
+     */
+    public static Document toDocument(DomainEvent domainEvent) {
+        return new Document()
+                .append("_id", domainEvent.getId())
+                .append("createdOn", toDate(domainEvent.getCreatedOn()))
+                .append("channel", domainEvent.getChannel())
+                .append("header", domainEvent.getHeader())
+                .append("payload", domainEvent.getPayload())
+                .append("payloadType", domainEvent.getPayloadType())
+                .append("encoding", domainEvent.getEncoding())
+                .append("compression", domainEvent.getCompression())
+                .append("writtenOn", toDate(domainEvent.getWrittenOn()))
+                .append("attemptCount", domainEvent.getAttemptCount())
+                .append("returnedOn", toDate(domainEvent.getReturnedOn()))
+                .append("producerAckOn", toDate(domainEvent.getProducerAckOn()))
+                .append("consumerAckOn", toDate(domainEvent.getConsumerAckOn()));
+    }
+
+    /**
+     * Encode a {@link Document} into BSON bytes, for event store which persists
+     * the document as binary.
+     *
+     * @param document the {@link Document} to be encoded
+     * @return BSON bytes of the document
+     */
+    public static byte[] toBytes(Document document) {
+        BasicOutputBuffer outputBuffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(outputBuffer)) {
+            DOCUMENT_CODEC.encode(writer, document, EncoderContext.builder().build());
+        }
+        return outputBuffer.toByteArray();
+    }
+
+    /**
+     * Decode the BSON bytes returned by {@link #toBytes(Document)}.
+     *
+     * @param bytes BSON bytes of the document
+     * @return the decoded {@link Document}
+     */
+    public static Document fromBytes(byte[] bytes) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return DOCUMENT_CODEC.decode(reader, DecoderContext.builder().build());
+        }
+    }
+
+    private static Instant toInstant(Date date) {
+        return date == null ? null : date.toInstant();
+    }
+
+    private static Date toDate(Instant instant) {
+        return instant == null ? null : Date.from(instant);
+    }
+
+    /**
+     * Map keys containing dots are escaped when written into the event store,
+     * restore them recursively as the raw BSON {@link Document} is not read
+     * through the mapping converter.
+     *
+     * @see MongoDbConfig#MAP_KEY_DOT_REPLACEMENT
+     */
+    private static Object restoreKeys(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry:((Map<?, ?>) value).entrySet()) {
+                String key = String.valueOf(entry.getKey()).replace(MongoDbConfig.MAP_KEY_DOT_REPLACEMENT, ".");
+                map.put(key, restoreKeys(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element:(List<?>) value) {
+                list.add(restoreKeys(element));
+            }
+            return list;
+        }
+        return value;
+    }
+
+}
@@ -1,11 +1,28 @@
 package com.jeffrey.example.demolib.eventstore.util;
 
 import com.jeffrey.example.demolib.eventstore.annotation.EnableEventStore;
+import com.jeffrey.example.demolib.eventstore.annotation.EventStoreStorage;
+import com.jeffrey.example.demolib.eventstore.codec.EventPayloadCodecRegistry;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
 import com.jeffrey.example.demolib.eventstore.config.EventStoreConfig;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreDurabilityProperties;
+import com.jeffrey.example.demolib.eventstore.config.JdbcEventStoreConfig;
 import com.jeffrey.example.demolib.eventstore.config.MongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.config.ReactiveMongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.dao.JdbcEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao;
 import com.jeffrey.example.demolib.eventstore.dao.MongoEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.ReactiveMongoEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreAckCoalescingService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreConsumedCacheService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreGroupCommitService;
+import com.jeffrey.example.demolib.eventstore.service.EventStorePublishTrackerService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreQuarantineService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreResendService;
 import com.jeffrey.example.demolib.eventstore.service.EventStoreRetryService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreScheduler;
 import com.jeffrey.example.demolib.eventstore.service.EventStoreService;
+import com.jeffrey.example.demolib.eventstore.service.EventStoreSpilloverService;
 import org.springframework.cloud.commons.util.SpringFactoryImportSelector;
 import org.springframework.core.annotation.AnnotationAttributes;
 import org.springframework.core.type.AnnotationMetadata;
@@ -27,13 +44,39 @@ public class EnableEventStoreImportSelector extends SpringFactoryImportSelector<
             AnnotationAttributes attributes = AnnotationAttributes.fromMap(metadata.getAnnotationAttributes(this.getAnnotationClass().getName(), true));
             List<String> importsList = new ArrayList(Arrays.asList(imports));
 
+            EventStoreStorage storage = attributes == null ?
+                    EventStoreStorage.MONGO : attributes.getEnum("storage");
+
             importsList.add(ChannelBindingAccessor.class.getName());
-            importsList.add(MongoDbConfig.class.getName());
-            importsList.add(MongoEventStoreDao.class.getName());
+            if (storage == EventStoreStorage.JOURNAL) {
+                importsList.add(JournalEventStoreDao.class.getName());
+            } else if (storage == EventStoreStorage.JDBC) {
+                importsList.add(JdbcEventStoreConfig.class.getName());
+                importsList.add(JdbcEventStoreDao.class.getName());
+            } else {
+                importsList.add(MongoDbConfig.class.getName());
+                importsList.add(EventStoreDurabilityProperties.class.getName());
+                importsList.add(MongoEventStoreDao.class.getName());
+            }
             importsList.add(EventStoreConfig.class.getName());
+            importsList.add(EventStoreChannelProperties.class.getName());
+            importsList.add(EventPayloadCodecRegistry.class.getName());
+            importsList.add(EventStoreScheduler.class.getName());
+            importsList.add(EventStoreAckCoalescingService.class.getName());
+            importsList.add(EventStoreConsumedCacheService.class.getName());
+            importsList.add(EventStoreResendService.class.getName());
+            importsList.add(EventStorePublishTrackerService.class.getName());
+            importsList.add(EventStoreQuarantineService.class.getName());
+            importsList.add(EventStoreGroupCommitService.class.getName());
+            importsList.add(EventStoreSpilloverService.class.getName());
             importsList.add(EventStoreService.class.getName());
             importsList.add(EventStoreRetryService.class.getName());
 
+            if (storage == EventStoreStorage.MONGO && isReactiveEnabled()) {
+                importsList.add(ReactiveMongoDbConfig.class.getName());
+                importsList.add(ReactiveMongoEventStoreDao.class.getName());
+            }
+
             imports = importsList.toArray(new String[0]);
             return imports;
         }
@@ -44,6 +87,10 @@ public class EnableEventStoreImportSelector extends SpringFactoryImportSelector<
         return this.getEnvironment().getProperty("com.jeffrey.example.eventstore.enabled", Boolean.class, Boolean.TRUE);
     }
 
+    private boolean isReactiveEnabled() {
+        return this.getEnvironment().getProperty("com.jeffrey.example.eventstore.reactive.enabled", Boolean.class, Boolean.FALSE);
+    }
+
     @Override
     protected boolean hasDefaultFactory() {
         return true;
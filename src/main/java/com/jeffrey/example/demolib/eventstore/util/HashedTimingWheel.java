@@ -0,0 +1,138 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A hashed timing wheel holding a large no. of timeouts keyed by an id, such that a
+ * timeout could be scheduled and cancelled in constant time.
+ *
+ * <p>The wheel is a ring of buckets, each covering one tick. A timeout is placed into
+ * the bucket of its deadline tick with the no. of full rotations remaining before it's
+ * due. The wheel does not own any thread, it's driven by {@link #advance()} which should
+ * be invoked at least once per tick, the timeouts are therefore fired with a precision
+ * of one tick plus the delay of the driver.</p>
+ *
+ * @param <K> the type of the key identifying the timeout
+ * @param <V> the type of the value held by the timeout
+ * @author Jeffrey Garcia Wong
+ */
+public class HashedTimingWheel<K, V> {
+
+    private final Clock clock;
+
+    private final long tickMillis;
+
+    private final Map<K, Timeout<V>>[] buckets;
+
+    private final Map<K, Timeout<V>> timeouts = new HashMap<>();
+
+    private final long startMillis;
+
+    private long nextTick = 0L; // the next tick to be processed
+
+    /**
+     * @param clock the {@link Clock} to determine the current tick
+     * @param tickMillis the duration of a tick in milliseconds
+     * @param wheelSize the no. of buckets in the wheel
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(Clock clock, long tickMillis, int wheelSize) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis should be positive");
+        }
+        if (wheelSize < 1) {
+            throw new IllegalArgumentException("wheelSize should be positive");
+        }
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.buckets = new Map[wheelSize];
+        for (int i=0; i<wheelSize; i++) {
+            buckets[i] = new LinkedHashMap<>();
+        }
+        this.startMillis = clock.millis();
+    }
+
+    /**
+     * Schedule a timeout, any timeout of the same key is replaced.
+     *
+     * @param key the key identifying the timeout
+     * @param value the value held by the timeout
+     * @param delayMillis the delay in milliseconds before the timeout is due
+     */
+    public synchronized void schedule(K key, V value, long delayMillis) {
+        cancel(key);
+
+        long deadlineTick = Math.max(nextTick,
+                (clock.millis() + Math.max(delayMillis, 0L) - startMillis + tickMillis - 1) / tickMillis);
+        Timeout<V> timeout = new Timeout<>(
+                value, (int) Math.floorMod(deadlineTick, (long) buckets.length), (deadlineTick - nextTick) / buckets.length);
+        buckets[timeout.bucket].put(key, timeout);
+        timeouts.put(key, timeout);
+    }
+
+    /**
+     * Cancel a timeout.
+     *
+     * @param key the key identifying the timeout
+     * @return the value held by the timeout, null if the timeout is not found
+     */
+    public synchronized V cancel(K key) {
+        Timeout<V> timeout = timeouts.remove(key);
+        if (timeout == null) {
+            return null;
+        }
+        buckets[timeout.bucket].remove(key);
+        return timeout.value;
+    }
+
+    /**
+     * Process the ticks elapsed since the last invocation and remove the timeouts which
+     * are due.
+     *
+     * @return the key and value of the timeouts due in the order of their deadline
+     */
+    public synchronized Map<K, V> advance() {
+        Map<K, V> expired = new LinkedHashMap<>();
+        long currentTick = (clock.millis() - startMillis) / tickMillis;
+        for (; nextTick<=currentTick; nextTick++) {
+            Iterator<Map.Entry<K, Timeout<V>>> iterator =
+                    buckets[(int) Math.floorMod(nextTick, (long) buckets.length)].entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Timeout<V>> entry = iterator.next();
+                Timeout<V> timeout = entry.getValue();
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    continue;
+                }
+                iterator.remove();
+                timeouts.remove(entry.getKey());
+                expired.put(entry.getKey(), timeout.value);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the no. of timeouts pending
+     */
+    public synchronized int size() {
+        return timeouts.size();
+    }
+
+    private static class Timeout<V> {
+        private final V value;
+        private final int bucket;
+        private long remainingRounds;
+
+        private Timeout(V value, int bucket, long remainingRounds) {
+            this.value = value;
+            this.bucket = bucket;
+            this.remainingRounds = remainingRounds;
+        }
+    }
+
+}
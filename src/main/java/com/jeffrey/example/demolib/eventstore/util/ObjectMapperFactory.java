@@ -9,8 +9,20 @@ public class ObjectMapperFactory {
         return LazyLoader.instance;
     }
 
+    /**
+     * Obtain the {@link ObjectMapper} backing the {@link Jackson2JsonObjectMapper}, which
+     * is used for converting values to/from BSON compatible structure without going
+     * through the json string.
+     *
+     * @return {@link ObjectMapper}
+     */
+    public static ObjectMapper getObjectMapper() {
+        return LazyLoader.objectMapper;
+    }
+
     private static class LazyLoader {
-        private static final Jackson2JsonObjectMapper instance = new Jackson2JsonObjectMapper(new ObjectMapper());
+        private static final ObjectMapper objectMapper = new ObjectMapper();
+        private static final Jackson2JsonObjectMapper instance = new Jackson2JsonObjectMapper(objectMapper);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Track the sequence numbers consumed from each producer with a high-water mark and
+ * a sliding bitmap of the sequences below it, such that a duplicate could be detected
+ * in memory with constant time and {@code windowSize / 8} bytes per producer.
+ *
+ * <p>A sequence above the high-water mark advances the window, a sequence within the
+ * window is looked up in the bitmap, a sequence which fell behind the window cannot be
+ * determined. The producers are kept in a bounded LRU cache, a producer evicted or
+ * never seen since this node started cannot be determined either, neither could a
+ * sequence before the first one recorded for the producer.</p>
+ *
+ * <p>The answers are only valid if every message of the producer is consumed by this
+ * node, the caller should fall back to the event store for {@link Verdict#UNKNOWN}.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class ProducerSequenceTracker {
+
+    public enum Verdict {
+        /**
+         * The sequence has not been seen, it's marked as seen until released
+         */
+        NEW,
+
+        /**
+         * The sequence has been seen
+         */
+        DUPLICATE,
+
+        /**
+         * The sequence cannot be determined from memory
+         */
+        UNKNOWN
+    }
+
+    private final int windowSize;
+
+    private final Cache<String, Window> windows;
+
+    /**
+     * @param windowSize the no. of sequences tracked below the high-water mark, rounded up to multiple of 64
+     * @param maxProducers the max no. of producers tracked
+     */
+    public ProducerSequenceTracker(int windowSize, long maxProducers) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize should be positive");
+        }
+        this.windowSize = ((windowSize + Long.SIZE - 1) / Long.SIZE) * Long.SIZE;
+        this.windows = CacheBuilder.newBuilder().maximumSize(maxProducers).build();
+    }
+
+    /**
+     * Test and mark a sequence of a producer as seen.
+     *
+     * @param producerKey the key identifying the producer
+     * @param sequence the sequence of the message
+     * @return the {@link Verdict} of the sequence
+     */
+    public Verdict acquire(String producerKey, long sequence) {
+        Window window = windows.getIfPresent(producerKey);
+        if (window == null) {
+            return Verdict.UNKNOWN;
+        }
+        return window.testAndSet(sequence);
+    }
+
+    /**
+     * Release a sequence acquired by {@link #acquire(String, long)}, if the message
+     * could not be consumed.
+     *
+     * @param producerKey the key identifying the producer
+     * @param sequence the sequence of the message
+     */
+    public void release(String producerKey, long sequence) {
+        Window window = windows.getIfPresent(producerKey);
+        if (window != null) {
+            window.clear(sequence);
+        }
+    }
+
+    /**
+     * Record a sequence of a producer as seen, after the message is confirmed to be
+     * consumed by the event store. The first sequence recorded starts the tracking of
+     * the producer.
+     *
+     * @param producerKey the key identifying the producer
+     * @param sequence the sequence of the message
+     */
+    public void record(String producerKey, long sequence) {
+        try {
+            windows.get(producerKey, () -> new Window(sequence)).testAndSet(sequence);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long size() {
+        return windows.size();
+    }
+
+    private class Window {
+        private final long[] bitmap = new long[windowSize / Long.SIZE];
+        // the first sequence recorded, any sequence before it could have been consumed before tracking started
+        private final long baseline;
+        private long highWaterMark;
+
+        private Window(long baseline) {
+            this.baseline = baseline;
+            this.highWaterMark = baseline;
+        }
+
+        private synchronized Verdict testAndSet(long sequence) {
+            if (sequence < baseline) {
+                return Verdict.UNKNOWN;
+            }
+            if (sequence > highWaterMark) {
+                // clear the slots re-used by the sequences above the previous high-water mark
+                long advance = sequence - highWaterMark;
+                if (advance >= windowSize) {
+                    Arrays.fill(bitmap, 0L);
+                } else {
+                    for (long s=highWaterMark + 1; s<=sequence; s++) {
+                        setBit(s, false);
+                    }
+                }
+                highWaterMark = sequence;
+                setBit(sequence, true);
+                return Verdict.NEW;
+            }
+            if (highWaterMark - sequence >= windowSize) {
+                return Verdict.UNKNOWN;
+            }
+            if (getBit(sequence)) {
+                return Verdict.DUPLICATE;
+            }
+            setBit(sequence, true);
+            return Verdict.NEW;
+        }
+
+        private synchronized void clear(long sequence) {
+            if (sequence <= highWaterMark && highWaterMark - sequence < windowSize) {
+                setBit(sequence, false);
+            }
+        }
+
+        private boolean getBit(long sequence) {
+            int index = (int) Math.floorMod(sequence, (long) windowSize);
+            return (bitmap[index / Long.SIZE] & (1L << (index % Long.SIZE))) != 0;
+        }
+
+        private void setBit(long sequence, boolean value) {
+            int index = (int) Math.floorMod(sequence, (long) windowSize);
+            if (value) {
+                bitmap[index / Long.SIZE] |= 1L << (index % Long.SIZE);
+            } else {
+                bitmap[index / Long.SIZE] &= ~(1L << (index % Long.SIZE));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * A time-partitioned {@link BloomFilter} of strings.
+ *
+ * <p>The elements are put into the partition of the current time slot, a fixed number of
+ * partitions is retained and the oldest partition is discarded once a new time slot is
+ * entered, hence the memory is bounded regardless of how long the filter is running.
+ * An element is considered present if any retained partition might contain it.</p>
+ *
+ * <p>A negative answer is definite only for elements put no earlier than
+ * {@link #getRetainedSince()}, elements put before that could have been discarded
+ * together with their partition.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class RotatingBloomFilter {
+
+    private final Clock clock;
+
+    private final long partitionMillis;
+
+    private final int expectedInsertionsPerPartition;
+
+    private final double falsePositiveProbability;
+
+    // ordered from the newest to the oldest partition, replaced as a whole upon rotation
+    private volatile Partition[] partitions;
+
+    /**
+     * @param clock the {@link Clock} to determine the time slot
+     * @param partitions the no. of partitions to retain
+     * @param partitionMillis the duration of the time slot of each partition
+     * @param expectedInsertionsPerPartition the no. of elements expected to be put into a partition
+     * @param falsePositiveProbability the desired false positive probability of each partition
+     */
+    public RotatingBloomFilter(
+            Clock clock,
+            int partitions,
+            long partitionMillis,
+            int expectedInsertionsPerPartition,
+            double falsePositiveProbability)
+    {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions should be positive");
+        }
+        if (partitionMillis < 1) {
+            throw new IllegalArgumentException("partitionMillis should be positive");
+        }
+        this.clock = clock;
+        this.partitionMillis = partitionMillis;
+        this.expectedInsertionsPerPartition = expectedInsertionsPerPartition;
+        this.falsePositiveProbability = falsePositiveProbability;
+
+        long slot = currentSlot();
+        this.partitions = new Partition[partitions];
+        for (int i=0; i<partitions; i++) {
+            this.partitions[i] = new Partition(slot - i, newBloomFilter());
+        }
+    }
+
+    public void put(String element) {
+        rotateIfNecessary()[0].bloomFilter.put(element);
+    }
+
+    public boolean mightContain(String element) {
+        for (Partition partition:rotateIfNecessary()) {
+            if (partition.bloomFilter.mightContain(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the start of the time slot of the oldest retained partition, any element put
+     * at or after this instant is still retained.
+     *
+     * @return the {@link Instant} since when the elements are retained
+     */
+    public Instant getRetainedSince() {
+        Partition[] current = rotateIfNecessary();
+        return Instant.ofEpochMilli(current[current.length - 1].slot * partitionMillis);
+    }
+
+    /**
+     * Estimate the memory occupied by the bit arrays of all partitions, following
+     * the optimal no. of bits {@code -n * ln(p) / (ln 2)^2} of a bloom filter.
+     *
+     * @return the approximate no. of bytes occupied
+     */
+    public long getApproximateSizeInBytes() {
+        double bitsPerPartition = -expectedInsertionsPerPartition * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        return (long) Math.ceil(bitsPerPartition / Byte.SIZE) * partitions.length;
+    }
+
+    private BloomFilter<CharSequence> newBloomFilter() {
+        return BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertionsPerPartition, falsePositiveProbability);
+    }
+
+    private long currentSlot() {
+        return clock.millis() / partitionMillis;
+    }
+
+    private Partition[] rotateIfNecessary() {
+        Partition[] current = partitions;
+        long slot = currentSlot();
+        if (current[0].slot >= slot) {
+            return current;
+        }
+        synchronized (this) {
+            current = partitions;
+            if (current[0].slot >= slot) {
+                return current;
+            }
+            Partition[] rotated = new Partition[current.length];
+            for (int i=0; i<rotated.length; i++) {
+                // keep the partitions which still fall within the retained time slots
+                long expectedSlot = slot - i;
+                Partition retained = null;
+                for (Partition partition:current) {
+                    if (partition.slot == expectedSlot) {
+                        retained = partition;
+                        break;
+                    }
+                }
+                rotated[i] = retained != null ? retained : new Partition(expectedSlot, newBloomFilter());
+            }
+            partitions = rotated;
+            return rotated;
+        }
+    }
+
+    private static class Partition {
+        private final long slot;
+        private final BloomFilter<CharSequence> bloomFilter;
+
+        private Partition(long slot, BloomFilter<CharSequence> bloomFilter) {
+            this.slot = slot;
+            this.bloomFilter = bloomFilter;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import org.springframework.util.IdGenerator;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link IdGenerator} which generates time-ordered {@link UUID} following the
+ * layout of UUID version 7: the 48 most significant bits are the unix epoch
+ * milliseconds, followed by the version, a 12-bit sequence and 62 random bits.
+ *
+ * <p>The ids are strictly increasing within the same JVM, the timestamp and the
+ * sequence are advanced together with a single CAS on an {@link AtomicLong}, when
+ * the sequence overflows within the same millisecond the timestamp is borrowed
+ * from the next millisecond instead of blocking. The canonical string form of the
+ * ids is fixed-width lower case hex, hence sort lexicographically in the same
+ * order as they are generated.</p>
+ *
+ * <p>Inserts into an ascending {@code _id} index always append to its right edge,
+ * and the {@code _id} alone could be used for time-range scans, see
+ * {@link #lowerBound(Instant)}.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long VERSION = 0x7L << SEQUENCE_BITS;
+
+    private static final long VARIANT = 0x8000000000000000L;
+
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    private final Clock clock;
+
+    public TimeOrderedIdGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID generateId() {
+        final long timestampAndSequence = nextTimestampAndSequence();
+        final long timestamp = timestampAndSequence >>> SEQUENCE_BITS;
+        final long sequence = timestampAndSequence & ((1L << SEQUENCE_BITS) - 1);
+
+        long mostSigBits = (timestamp << 16) | VERSION | sequence;
+        long leastSigBits = VARIANT | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    private long nextTimestampAndSequence() {
+        final long now = clock.millis() << SEQUENCE_BITS;
+        while (true) {
+            long last = lastTimestampAndSequence.get();
+            long next = now > last ? now : last + 1;
+            if (lastTimestampAndSequence.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Obtain the smallest id which could be generated at the given instant, such
+     * that any event written at or after the instant satisfies {@code _id >= lowerBound}.
+     *
+     * @param instant the {@link Instant} of the lower bound
+     * @return the lower bound id in its canonical string form
+     */
+    public static String lowerBound(Instant instant) {
+        long mostSigBits = (instant.toEpochMilli() << 16) | VERSION;
+        return new UUID(mostSigBits, VARIANT).toString();
+    }
+
+    /**
+     * Obtain the instant an id was generated, the inverse of {@link #generateId()}.
+     *
+     * @param id the id in its canonical string form
+     * @return the {@link Instant} the id was generated, null if the id is not
+     * generated by this generator
+     */
+    public static Instant timestampOf(String id) {
+        final UUID uuid;
+        try {
+            uuid = UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (uuid.version() != 7 || uuid.variant() != 2) {
+            return null;
+        }
+        return Instant.ofEpochMilli(uuid.getMostSignificantBits() >>> 16);
+    }
+
+}
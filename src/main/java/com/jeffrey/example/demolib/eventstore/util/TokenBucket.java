@@ -0,0 +1,112 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket refilled continuously at a configurable rate, holding at most one
+ * second worth of permits so that the burst after an idle period is bounded.
+ *
+ * <p>A caller could reserve more permits than available, the bucket goes into debt
+ * and the caller is told how long to wait, such that a request larger than the
+ * capacity (e.g. a message bigger than the bytes per second) is still admitted at
+ * the configured rate.</p>
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class TokenBucket {
+
+    private final Clock clock;
+
+    private double permitsPerSecond;
+
+    private double availablePermits;
+
+    private long lastRefillMillis;
+
+    /**
+     * @param clock the {@link Clock} to refill the bucket
+     * @param permitsPerSecond the refill rate, which should be positive
+     */
+    public TokenBucket(Clock clock, double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond should be positive");
+        }
+        this.clock = clock;
+        this.permitsPerSecond = permitsPerSecond;
+        this.availablePermits = permitsPerSecond;
+        this.lastRefillMillis = clock.millis();
+    }
+
+    public synchronized double getRate() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Change the refill rate, the permits accumulated at the previous rate are kept
+     * up to the capacity of the new rate.
+     *
+     * @param permitsPerSecond the refill rate, which should be positive
+     */
+    public synchronized void setRate(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond should be positive");
+        }
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+        this.availablePermits = Math.min(availablePermits, permitsPerSecond);
+    }
+
+    /**
+     * Acquire the permits only if they are available at once.
+     *
+     * @param permits the no. of permits to acquire
+     * @return true if the permits are acquired
+     */
+    public synchronized boolean tryAcquire(double permits) {
+        refill();
+        if (availablePermits < permits) {
+            return false;
+        }
+        availablePermits -= permits;
+        return true;
+    }
+
+    /**
+     * Reserve the permits regardless of their availability.
+     *
+     * @param permits the no. of permits to reserve
+     * @return the time in milliseconds the caller should wait before proceeding
+     */
+    public synchronized long reserve(double permits) {
+        refill();
+        availablePermits -= permits;
+        if (availablePermits >= 0) {
+            return 0L;
+        }
+        return (long) Math.ceil(-availablePermits * 1000d / permitsPerSecond);
+    }
+
+    /**
+     * Reserve the permits and wait until they are available.
+     *
+     * @param permits the no. of permits to acquire
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(double permits) throws InterruptedException {
+        long waitMillis = reserve(permits);
+        if (waitMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        }
+    }
+
+    private void refill() {
+        long currentMillis = clock.millis();
+        if (currentMillis > lastRefillMillis) {
+            availablePermits = Math.min(permitsPerSecond,
+                    availablePermits + (currentMillis - lastRefillMillis) * permitsPerSecond / 1000d);
+            lastRefillMillis = currentMillis;
+        }
+    }
+
+}
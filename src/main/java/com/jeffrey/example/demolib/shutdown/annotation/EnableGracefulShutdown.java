@@ -6,7 +6,10 @@ import com.jeffrey.example.demolib.shutdown.util.EnableGracefulShutdownImportSel
 import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.annotation.AliasFor;
@@ -28,7 +31,10 @@ public @interface EnableGracefulShutdown {
     )
     Class<?>[] suppressAutoConfiguration() default {
             MongoAutoConfiguration.class,
-            MongoDataAutoConfiguration.class
+            MongoDataAutoConfiguration.class,
+            MongoReactiveAutoConfiguration.class,
+            MongoReactiveDataAutoConfiguration.class,
+            MongoReactiveRepositoriesAutoConfiguration.class
     };
 
     @AliasFor(
@@ -0,0 +1,129 @@
+package com.jeffrey.example.demolib.eventstore.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jeffrey.example.demoapp.model.DemoInsurancePolicy;
+import com.jeffrey.example.demoapp.model.DemoMessageModel;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.bson.types.Binary;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventPayloadCodecRegistryTests {
+
+    private EventPayloadCodecRegistry registry;
+
+    @Before
+    public void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("com.jeffrey.example.eventstore.payloadCodec", "json")
+                .withProperty("com.jeffrey.example.eventstore.channels.output1.payloadCodec", "smile")
+                .withProperty("com.jeffrey.example.eventstore.channels.output1.compression", "lz4")
+                .withProperty("com.jeffrey.example.eventstore.channels.output1.compressionThresholdBytes", "1024");
+        registry = new EventPayloadCodecRegistry(new EventStoreChannelProperties(environment), null);
+    }
+
+    @Test
+    public void testCodecSelectedPerChannel() {
+        Assert.assertEquals(BinaryPayloadCodec.SMILE, registry.getCodecForChannel("output1").getName());
+        Assert.assertEquals(JsonPayloadCodec.NAME, registry.getCodecForChannel("output2").getName());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DemoInsurancePolicy policy = new DemoInsurancePolicy(UUID.randomUUID().toString(), "Steve Rogers");
+        DemoMessageModel messageModel = new DemoMessageModel(policy);
+
+        for (String name:new String[] {DomainEvent.ENCODING_BSON, JsonPayloadCodec.NAME, BinaryPayloadCodec.SMILE, BinaryPayloadCodec.CBOR}) {
+            EventPayloadCodec codec = registry.getCodec(name);
+            DemoMessageModel decoded = codec.decode(codec.encode(messageModel), DemoMessageModel.class);
+            Assert.assertEquals(policy.getPolicyId(), decoded.getDemoInsurancePolicy().getPolicyId());
+            Assert.assertEquals(policy.getPolicyHolder(), decoded.getDemoInsurancePolicy().getPolicyHolder());
+        }
+    }
+
+    @Test
+    public void testBinaryCodecAcceptsBsonBinary() throws IOException {
+        EventPayloadCodec codec = registry.getCodec(BinaryPayloadCodec.CBOR);
+        byte[] bytes = (byte[]) codec.encode("testing message");
+        Assert.assertEquals("testing message", codec.decode(new Binary(bytes), String.class));
+    }
+
+    @Test
+    public void testCustomCodecOverridesBuiltIn() {
+        EventPayloadCodec customCodec = new JsonPayloadCodec(new ObjectMapper()) {
+            @Override
+            public String getName() {
+                return BinaryPayloadCodec.SMILE;
+            }
+        };
+        registry = new EventPayloadCodecRegistry(
+                new EventStoreChannelProperties(new MockEnvironment()), Collections.singletonList(customCodec));
+        Assert.assertSame(customCodec, registry.getCodec(BinaryPayloadCodec.SMILE));
+    }
+
+    @Test
+    public void testCompressionSelectedPerChannel() {
+        Assert.assertEquals(Lz4PayloadCompressor.NAME, registry.getCompressorForChannel("output1").getName());
+        Assert.assertEquals(1024, registry.getCompressionThreshold("output1"));
+        Assert.assertNull(registry.getCompressorForChannel("output2"));
+        Assert.assertEquals(4096, registry.getCompressionThreshold("output2"));
+    }
+
+    @Test
+    public void testChannelEncodingResolvedOnce() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("com.jeffrey.example.eventstore.channels.output1.payloadCodec", "smile");
+        registry = new EventPayloadCodecRegistry(new EventStoreChannelProperties(environment), null);
+        Assert.assertEquals(BinaryPayloadCodec.SMILE, registry.getCodecForChannel("output1").getName());
+
+        // the encoding of the channel is cached once resolved
+        environment.setProperty("com.jeffrey.example.eventstore.channels.output1.payloadCodec", "json");
+        Assert.assertEquals(BinaryPayloadCodec.SMILE, registry.getCodecForChannel("output1").getName());
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws IOException {
+        Map<String, Object> payload = new HashMap<>();
+        for (int i=0; i<1000; i++) {
+            payload.put("key" + i, "testing message " + i);
+        }
+
+        for (String compression:new String[] {DeflatePayloadCompressor.NAME, Lz4PayloadCompressor.NAME}) {
+            PayloadCompressor compressor = registry.getCompressor(compression);
+            for (String name:new String[] {DomainEvent.ENCODING_BSON, JsonPayloadCodec.NAME, BinaryPayloadCodec.SMILE}) {
+                EventPayloadCodec codec = registry.getCodec(name);
+                byte[] bytes = codec.toBytes(codec.encode(payload));
+                byte[] compressed = compressor.compress(bytes);
+                Assert.assertTrue(compressed.length < bytes.length);
+
+                Object value = codec.fromBytes(compressor.decompress(compressed));
+                Assert.assertEquals(payload, codec.decode(value, Map.class));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        registry.getCodec("unknown");
+    }
+
+    @Test
+    public void testPayloadTypeCached() throws ClassNotFoundException {
+        Class<?> payloadClass = registry.resolvePayloadType(DemoMessageModel.class.getName());
+        Assert.assertSame(DemoMessageModel.class, payloadClass);
+        Assert.assertSame(payloadClass, registry.resolvePayloadType(DemoMessageModel.class.getName()));
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.jeffrey.example.demolib.eventstore.config;
+
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreOperation;
+import com.mongodb.WriteConcern;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreDurabilityPropertiesTests {
+
+    @Test
+    public void testDefaultProfile() {
+        EventStoreDurabilityProperties properties = new EventStoreDurabilityProperties(new MockEnvironment());
+
+        Assert.assertEquals(WriteConcern.MAJORITY, properties.getWriteConcern(EventStoreOperation.CREATE));
+        Assert.assertNull(properties.getWriteConcern(EventStoreOperation.PRODUCED_ACK));
+        Assert.assertNull(properties.getWriteConcern(EventStoreOperation.RETRY_CLAIM));
+    }
+
+    @Test
+    public void testConfiguredProfile() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("com.jeffrey.example.eventstore.durability.create.journal", "true")
+                .withProperty("com.jeffrey.example.eventstore.durability.create.wtimeoutMillis", "5000")
+                .withProperty("com.jeffrey.example.eventstore.durability.producedAck.w", "1")
+                .withProperty("com.jeffrey.example.eventstore.durability.consumedAck.w", "dc1")
+                .withProperty("com.jeffrey.example.eventstore.durability.returnedAck.journal", "false");
+        EventStoreDurabilityProperties properties = new EventStoreDurabilityProperties(environment);
+
+        WriteConcern create = properties.getWriteConcern(EventStoreOperation.CREATE);
+        Assert.assertEquals("majority", create.getWString());
+        Assert.assertEquals(Boolean.TRUE, create.getJournal());
+        Assert.assertEquals(Integer.valueOf(5000), create.getWTimeout(TimeUnit.MILLISECONDS));
+
+        Assert.assertEquals(WriteConcern.W1, properties.getWriteConcern(EventStoreOperation.PRODUCED_ACK));
+        Assert.assertEquals("dc1", properties.getWriteConcern(EventStoreOperation.CONSUMED_ACK).getWString());
+        Assert.assertEquals(WriteConcern.ACKNOWLEDGED.withJournal(false), properties.getWriteConcern(EventStoreOperation.RETURNED_ACK));
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class JdbcEventStoreDaoTests {
+
+    private static final String CHANNEL = "output1";
+
+    private EmbeddedDatabase embeddedDatabase;
+
+    private JdbcEventStoreDao jdbcEventStoreDao;
+
+    @Before
+    public void setUp() {
+        embeddedDatabase = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+
+        jdbcEventStoreDao = new JdbcEventStoreDao(
+                Clock.systemUTC(),
+                new JdbcTemplate(embeddedDatabase),
+                new DataSourceTransactionManager(embeddedDatabase));
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "tableName", "event_store");
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "skipLocked", true);
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "messageExpiredTimeInSec", 1L);
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "retryMessageBatchSize", 1000);
+        jdbcEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+    }
+
+    @After
+    public void tearDown() {
+        embeddedDatabase.shutdown();
+    }
+
+    private DomainEvent newEvent(String payload) {
+        Map<String, Object> header = Collections.singletonMap("contentType", "application/json");
+        return new DomainEvent.Builder()
+                .id(UUID.randomUUID().toString())
+                .channel(CHANNEL)
+                .header(header)
+                .payload(payload)
+                .payloadType(String.class.getName())
+                .writtenOn(Instant.now())
+                .build();
+    }
+
+    private DomainEvent createEvent() {
+        Map<String, Object> header = Collections.singletonMap("contentType", "application/json");
+        return jdbcEventStoreDao.createEvent(
+                UUID.randomUUID().toString(), header, "testing message", String.class.getName(),
+                DomainEvent.ENCODING_BSON, null, CHANNEL);
+    }
+
+    @Test
+    public void testCreateAndUpdateEvent() {
+        DomainEvent domainEvent = createEvent();
+        Assert.assertFalse(jdbcEventStoreDao.hasConsumedTimeStamp(domainEvent.getId(), CHANNEL));
+
+        DomainEvent producedEvent = jdbcEventStoreDao.updateProducedTimestamp(domainEvent.getId(), CHANNEL);
+        Assert.assertNotNull(producedEvent.getProducerAckOn());
+        Assert.assertEquals("testing message", producedEvent.getPayload());
+        Assert.assertEquals("application/json", producedEvent.getHeader().get("contentType"));
+        Assert.assertEquals(DomainEvent.ENCODING_BSON, producedEvent.getEncoding());
+
+        DomainEvent consumedEvent = jdbcEventStoreDao.updateConsumedTimestamp(domainEvent.getId(), CHANNEL);
+        Assert.assertNotNull(consumedEvent.getConsumerAckOn());
+        Assert.assertTrue(jdbcEventStoreDao.hasConsumedTimeStamp(domainEvent.getId(), CHANNEL));
+
+        Assert.assertNull(jdbcEventStoreDao.updateProducedTimestamp(UUID.randomUUID().toString(), CHANNEL));
+    }
+
+    @Test
+    public void testMarkEvent() {
+        DomainEvent domainEvent = createEvent();
+        Assert.assertTrue(jdbcEventStoreDao.markProduced(domainEvent.getId(), CHANNEL));
+        Assert.assertTrue(jdbcEventStoreDao.markConsumed(domainEvent.getId(), CHANNEL));
+        Assert.assertTrue(jdbcEventStoreDao.hasConsumedTimeStamp(domainEvent.getId(), CHANNEL));
+        Assert.assertFalse(jdbcEventStoreDao.markReturned(UUID.randomUUID().toString(), CHANNEL));
+    }
+
+    @Test
+    public void testClaimConsume() {
+        DomainEvent domainEvent = createEvent();
+        Assert.assertEquals(ConsumeClaim.CLAIMED, jdbcEventStoreDao.claimConsume(domainEvent.getId(), "consumer1", 60, CHANNEL));
+        Assert.assertEquals(ConsumeClaim.CLAIMED_BY_OTHERS, jdbcEventStoreDao.claimConsume(domainEvent.getId(), "consumer2", 60, CHANNEL));
+
+        // released claim could be claimed again
+        jdbcEventStoreDao.releaseConsume(domainEvent.getId(), "consumer1", CHANNEL);
+        Assert.assertEquals(ConsumeClaim.CLAIMED, jdbcEventStoreDao.claimConsume(domainEvent.getId(), "consumer2", 60, CHANNEL));
+
+        // expired claim could be claimed by others
+        jdbcEventStoreDao.configureClock(Clock.fixed(Instant.now().plusSeconds(120), ZoneId.systemDefault()));
+        Assert.assertEquals(ConsumeClaim.CLAIMED, jdbcEventStoreDao.claimConsume(domainEvent.getId(), "consumer1", 60, CHANNEL));
+
+        Assert.assertTrue(jdbcEventStoreDao.markConsumed(domainEvent.getId(), CHANNEL));
+        Assert.assertEquals(ConsumeClaim.CONSUMED, jdbcEventStoreDao.claimConsume(domainEvent.getId(), "consumer2", 60, CHANNEL));
+        Assert.assertEquals(ConsumeClaim.NOT_FOUND, jdbcEventStoreDao.claimConsume(UUID.randomUUID().toString(), "consumer2", 60, CHANNEL));
+    }
+
+    @Test
+    public void testCreateEvents() {
+        List<DomainEvent> domainEvents = new ArrayList<>();
+        for (int i=0; i<10; i++) {
+            domainEvents.add(newEvent("message-" + i));
+        }
+        jdbcEventStoreDao.createEvents(domainEvents, CHANNEL);
+
+        List<DomainEvent> storedEvents = jdbcEventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(10, storedEvents.size());
+        Assert.assertEquals(0, jdbcEventStoreDao.findAll("output2").size());
+    }
+
+    @Test
+    public void testFilterPendingEvent() {
+        DomainEvent pendingEvent = createEvent();
+        DomainEvent producedEvent = createEvent();
+        DomainEvent returnedEvent = createEvent();
+        jdbcEventStoreDao.updateProducedTimestamp(producedEvent.getId(), CHANNEL);
+        jdbcEventStoreDao.updateReturnedTimestamp(returnedEvent.getId(), CHANNEL);
+        jdbcEventStoreDao.updateProducedTimestamp(returnedEvent.getId(), CHANNEL);
+
+        // fetch the pending event as if the message has expired
+        jdbcEventStoreDao.configureClock(Clock.fixed(Instant.now().plusSeconds(10), ZoneId.systemDefault()));
+        Set<String> fetchedEventIds = new HashSet<>();
+        jdbcEventStoreDao.filterPendingProducerAckOrReturned(CHANNEL, domainEvent -> {
+            Assert.assertEquals(2, domainEvent.getAttemptCount());
+            Assert.assertNull(domainEvent.getReturnedOn());
+            fetchedEventIds.add(domainEvent.getId());
+        });
+        Assert.assertEquals(new HashSet<>(Arrays.asList(pendingEvent.getId(), returnedEvent.getId())), fetchedEventIds);
+
+        // the claimed events are not eligible until expired again
+        AtomicInteger counter = new AtomicInteger();
+        jdbcEventStoreDao.filterPendingProducerAckOrReturned(CHANNEL, domainEvent -> counter.incrementAndGet());
+        Assert.assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testConcurrentClaim() throws Exception {
+        // H2 doesn't skip the locked rows, a scanner waits for them and re-evaluates the condition
+        new JdbcTemplate(embeddedDatabase).execute("SET DEFAULT_LOCK_TIMEOUT 10000");
+
+        List<DomainEvent> domainEvents = new ArrayList<>();
+        for (int i=0; i<200; i++) {
+            domainEvents.add(newEvent("message-" + i));
+        }
+        jdbcEventStoreDao.createEvents(domainEvents, CHANNEL);
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "retryMessageBatchSize", 20);
+        jdbcEventStoreDao.configureClock(Clock.fixed(Instant.now().plusSeconds(10), ZoneId.systemDefault()));
+
+        // several scanners drain the backlog concurrently until nothing is claimed
+        ConcurrentMap<String, AtomicInteger> claimCounts = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i=0; i<4; i++) {
+                futures.add(executor.submit(() -> {
+                    AtomicInteger claimed = new AtomicInteger();
+                    do {
+                        claimed.set(0);
+                        jdbcEventStoreDao.filterPendingProducerAckOrReturned(CHANNEL, domainEvent -> {
+                            claimCounts.computeIfAbsent(domainEvent.getId(), id -> new AtomicInteger()).incrementAndGet();
+                            claimed.incrementAndGet();
+                        });
+                    } while (claimed.get() > 0);
+                }));
+            }
+            for (Future<?> future:futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // every event is claimed exactly once
+        Assert.assertEquals(200, claimCounts.size());
+        for (AtomicInteger claimCount:claimCounts.values()) {
+            Assert.assertEquals(1, claimCount.get());
+        }
+        for (DomainEvent domainEvent:jdbcEventStoreDao.findAll(CHANNEL)) {
+            Assert.assertEquals(2, domainEvent.getAttemptCount());
+        }
+    }
+
+    @Test
+    public void testInitializeDbWithGenericDialect() throws Exception {
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "tableName", "generic_event_store");
+        ReflectionTestUtils.setField(jdbcEventStoreDao, "dialect", dialect("GENERIC"));
+        jdbcEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+
+        // the existing table is detected from the metadata rather than created again
+        jdbcEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+
+        DomainEvent domainEvent = createEvent();
+        List<DomainEvent> storedEvents = jdbcEventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(1, storedEvents.size());
+        Assert.assertEquals(domainEvent.getId(), storedEvents.get(0).getId());
+        Assert.assertEquals("testing message", storedEvents.get(0).getPayload());
+
+        // the pending event is claimed with the standard row limiting clause
+        jdbcEventStoreDao.configureClock(Clock.fixed(Instant.now().plusSeconds(10), ZoneId.systemDefault()));
+        AtomicInteger counter = new AtomicInteger();
+        jdbcEventStoreDao.filterPendingProducerAckOrReturned(CHANNEL, event -> counter.incrementAndGet());
+        Assert.assertEquals(1, counter.get());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object dialect(String name) throws ClassNotFoundException {
+        return Enum.valueOf((Class) Class.forName(JdbcEventStoreDao.class.getName() + "$Dialect"), name);
+    }
+
+    @Test
+    public void testDeleteAll() {
+        createEvent();
+        jdbcEventStoreDao.deleteAll(CHANNEL);
+        Assert.assertTrue(jdbcEventStoreDao.findAll(CHANNEL).isEmpty());
+    }
+
+}
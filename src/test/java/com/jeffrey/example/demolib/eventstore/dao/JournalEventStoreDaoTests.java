@@ -0,0 +1,198 @@
+package com.jeffrey.example.demolib.eventstore.dao;
+
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class JournalEventStoreDaoTests {
+
+    private static final String CHANNEL = "output1";
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private JournalEventStoreDao journalEventStoreDao;
+
+    @Before
+    public void setUp() {
+        journalEventStoreDao = newJournalEventStoreDao(Clock.systemUTC());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journalEventStoreDao.destroy();
+    }
+
+    private JournalEventStoreDao newJournalEventStoreDao(Clock clock) {
+        JournalEventStoreDao dao = new JournalEventStoreDao(clock);
+        ReflectionTestUtils.setField(dao, "journalDirectory", temporaryFolder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(dao, "segmentSizeBytes", SEGMENT_SIZE);
+        ReflectionTestUtils.setField(dao, "segmentPrefix", "TestEventStore");
+        ReflectionTestUtils.setField(dao, "messageExpiredTimeInSec", 1L);
+        ReflectionTestUtils.setField(dao, "retryMessageBatchSize", 1000);
+        ReflectionTestUtils.setField(dao, "compactionThreshold", 1);
+        return dao;
+    }
+
+    private DomainEvent createEvent() {
+        Map<String, Object> header = Collections.singletonMap("contentType", "application/json");
+        return journalEventStoreDao.createEvent(
+                UUID.randomUUID().toString(), header, "testing message", String.class.getName(),
+                DomainEvent.ENCODING_BSON, null, CHANNEL);
+    }
+
+    private int countSegments() {
+        File[] files = temporaryFolder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void testCreateAndUpdateEvent() {
+        DomainEvent domainEvent = createEvent();
+        Assert.assertFalse(journalEventStoreDao.hasConsumedTimeStamp(domainEvent.getId(), CHANNEL));
+
+        DomainEvent producedEvent = journalEventStoreDao.updateProducedTimestamp(domainEvent.getId(), CHANNEL);
+        Assert.assertNotNull(producedEvent.getProducerAckOn());
+        Assert.assertEquals("testing message", producedEvent.getPayload());
+        Assert.assertEquals("application/json", producedEvent.getHeader().get("contentType"));
+
+        DomainEvent consumedEvent = journalEventStoreDao.updateConsumedTimestamp(domainEvent.getId(), CHANNEL);
+        Assert.assertNotNull(consumedEvent.getConsumerAckOn());
+        Assert.assertTrue(journalEventStoreDao.hasConsumedTimeStamp(domainEvent.getId(), CHANNEL));
+
+        Assert.assertNull(journalEventStoreDao.updateProducedTimestamp(UUID.randomUUID().toString(), CHANNEL));
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        DomainEvent producedEvent = createEvent();
+        DomainEvent consumedEvent = createEvent();
+        journalEventStoreDao.updateProducedTimestamp(producedEvent.getId(), CHANNEL);
+        journalEventStoreDao.updateConsumedTimestamp(consumedEvent.getId(), CHANNEL);
+        journalEventStoreDao.destroy();
+
+        // replay the journal with a new instance
+        journalEventStoreDao = newJournalEventStoreDao(Clock.systemUTC());
+        journalEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+
+        List<DomainEvent> domainEvents = journalEventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(2, domainEvents.size());
+        Assert.assertEquals(producedEvent.getId(), domainEvents.get(0).getId());
+        Assert.assertNotNull(domainEvents.get(0).getProducerAckOn());
+        Assert.assertNull(domainEvents.get(0).getConsumerAckOn());
+        Assert.assertTrue(journalEventStoreDao.hasConsumedTimeStamp(consumedEvent.getId(), CHANNEL));
+
+        // new event is appended after the recovered records
+        createEvent();
+        Assert.assertEquals(3, journalEventStoreDao.findAll(CHANNEL).size());
+    }
+
+    @Test
+    public void testSegmentRollingAndCompaction() {
+        for (int i=0; i<100; i++) {
+            createEvent();
+        }
+        Assert.assertTrue(countSegments() > 1);
+
+        for (DomainEvent domainEvent:journalEventStoreDao.findAll(CHANNEL)) {
+            journalEventStoreDao.updateConsumedTimestamp(domainEvent.getId(), CHANNEL);
+        }
+        // only the active segment is retained
+        Assert.assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void testCompactionThreshold() {
+        ReflectionTestUtils.setField(journalEventStoreDao, "compactionThreshold", 1000);
+        for (int i=0; i<100; i++) {
+            createEvent();
+        }
+        int segmentCount = countSegments();
+        Assert.assertTrue(segmentCount > 1);
+
+        for (DomainEvent domainEvent:journalEventStoreDao.findAll(CHANNEL)) {
+            journalEventStoreDao.updateConsumedTimestamp(domainEvent.getId(), CHANNEL);
+        }
+        // the consumed segments are retained until the threshold is reached
+        Assert.assertTrue(countSegments() >= segmentCount);
+    }
+
+    @Test
+    public void testRecoveryFromTornRecord() throws Exception {
+        DomainEvent firstEvent = createEvent();
+        createEvent();
+        journalEventStoreDao.destroy();
+
+        // corrupt the body of the second record as if the write was torn by a crash
+        File[] files = temporaryFolder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            int secondOffset = 9 + file.readInt();
+            file.seek(secondOffset + 9 + 16);
+            file.write(new byte[16]);
+        }
+
+        journalEventStoreDao = newJournalEventStoreDao(Clock.systemUTC());
+        journalEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+        List<DomainEvent> domainEvents = journalEventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(1, domainEvents.size());
+        Assert.assertEquals(firstEvent.getId(), domainEvents.get(0).getId());
+
+        // new event is appended at the truncated offset and survives another recovery
+        DomainEvent newEvent = createEvent();
+        journalEventStoreDao.destroy();
+        journalEventStoreDao = newJournalEventStoreDao(Clock.systemUTC());
+        journalEventStoreDao.initializeDb(Collections.singletonList(CHANNEL));
+        domainEvents = journalEventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(2, domainEvents.size());
+        Assert.assertEquals(newEvent.getId(), domainEvents.get(1).getId());
+    }
+
+    @Test
+    public void testFilterPendingEvent() throws Exception {
+        DomainEvent pendingEvent = createEvent();
+        DomainEvent producedEvent = createEvent();
+        journalEventStoreDao.updateProducedTimestamp(producedEvent.getId(), CHANNEL);
+
+        // fetch the pending event as if the message has expired
+        journalEventStoreDao.configureClock(Clock.fixed(Instant.now().plusSeconds(10), ZoneId.systemDefault()));
+        AtomicInteger counter = new AtomicInteger();
+        journalEventStoreDao.filterPendingProducerAckOrReturned(CHANNEL, domainEvent -> {
+            Assert.assertEquals(pendingEvent.getId(), domainEvent.getId());
+            Assert.assertEquals(2, domainEvent.getAttemptCount());
+            counter.incrementAndGet();
+        });
+        Assert.assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testDeleteAll() throws IOException {
+        createEvent();
+        journalEventStoreDao.deleteAll(CHANNEL);
+        Assert.assertEquals(0, countSegments());
+        Assert.assertTrue(journalEventStoreDao.findAll(CHANNEL).isEmpty());
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.dao.EventAckUpdate;
+import com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreAckCoalescingServiceTests {
+
+    private static final String CHANNEL = "output1";
+
+    private final AtomicBoolean available = new AtomicBoolean(true);
+
+    // every bulk update written into the event store
+    private final List<List<EventAckUpdate>> writtenBatches = new CopyOnWriteArrayList<>();
+
+    // every update applied to the spill journal
+    private final List<String> spilledUpdates = new CopyOnWriteArrayList<>();
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreAckCoalescingService eventStoreAckCoalescingService;
+
+    @Before
+    public void setUp() {
+        // a clock which ticks on every read, such that the latest update is distinguishable
+        Clock clock = TestClock.ticking();
+        JournalEventStoreDao eventStoreDao = new JournalEventStoreDao(clock) {
+            @Override
+            public void updateTimestamps(Collection<EventAckUpdate> ackUpdates, String outputChannelName) {
+                if (!available.get()) {
+                    throw new DataAccessResourceFailureException("event store unavailable");
+                }
+                writtenBatches.add(new ArrayList<>(ackUpdates));
+            }
+        };
+
+        eventStoreScheduler = EventStoreSchedulers.singleWorker();
+
+        EventStoreSpilloverService eventStoreSpilloverService = new EventStoreSpilloverService(clock, eventStoreDao, eventStoreScheduler) {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            DomainEvent updateProducedTimestamp(String eventId, String outputChannelName) {
+                spilledUpdates.add(eventId);
+                return null;
+            }
+        };
+
+        eventStoreAckCoalescingService = new EventStoreAckCoalescingService(
+                clock, eventStoreDao, eventStoreSpilloverService, eventStoreScheduler);
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "enabled", true);
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "windowMillis", 60000L);
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "maxBatchSize", 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStoreAckCoalescingService.destroy();
+        eventStoreScheduler.destroy();
+    }
+
+    private int countWrittenUpdates() {
+        return writtenBatches.stream().mapToInt(List::size).sum();
+    }
+
+    private void awaitWrittenUpdates(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (countWrittenUpdates() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(expected, countWrittenUpdates());
+    }
+
+    @Test
+    public void testCollapse() throws Exception {
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.RETURNED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event2", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        Assert.assertTrue(writtenBatches.isEmpty());
+
+        eventStoreAckCoalescingService.destroy();
+
+        // the updates of the same event and ack type are collapsed, the latest wins
+        Assert.assertEquals(1, writtenBatches.size());
+        List<EventAckUpdate> batch = writtenBatches.get(0);
+        Assert.assertEquals(3, batch.size());
+        Assert.assertEquals("event1", batch.get(0).getEventId());
+        Assert.assertEquals(EventAckUpdate.Type.RETURNED, batch.get(0).getType());
+        Assert.assertEquals("event2", batch.get(1).getEventId());
+        Assert.assertEquals("event1", batch.get(2).getEventId());
+        Assert.assertEquals(EventAckUpdate.Type.PRODUCED, batch.get(2).getType());
+        Assert.assertTrue(batch.get(2).getTimestamp().isAfter(batch.get(1).getTimestamp()));
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "windowMillis", 50L);
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event2", EventAckUpdate.Type.PRODUCED, CHANNEL);
+
+        // the buffer is flushed at the end of the window without shutdown
+        awaitWrittenUpdates(2);
+        Assert.assertEquals(1, writtenBatches.size());
+    }
+
+    @Test
+    public void testFullBuffer() throws Exception {
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "maxBatchSize", 2);
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event2", EventAckUpdate.Type.PRODUCED, CHANNEL);
+
+        // the buffer is flushed before the end of the window once it's full
+        awaitWrittenUpdates(2);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.destroy();
+        Assert.assertEquals(1, countWrittenUpdates());
+
+        // the update submitted after shutdown is written directly
+        eventStoreAckCoalescingService.submit("event2", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        Assert.assertEquals(2, countWrittenUpdates());
+        Assert.assertEquals("event2", writtenBatches.get(1).get(0).getEventId());
+    }
+
+    @Test
+    public void testFailedFlushFallbackToSpillover() throws Exception {
+        available.set(false);
+        eventStoreAckCoalescingService.submit("event1", EventAckUpdate.Type.PRODUCED, CHANNEL);
+        eventStoreAckCoalescingService.submit("event2", EventAckUpdate.Type.CONSUMED, CHANNEL);
+        eventStoreAckCoalescingService.destroy();
+
+        Assert.assertTrue(writtenBatches.isEmpty());
+        Assert.assertEquals(1, spilledUpdates.size());
+        Assert.assertEquals("event1", spilledUpdates.get(0));
+    }
+
+    @Test
+    public void testConsumedAckNotCoalescedIfDuplicateIgnored() {
+        Assert.assertTrue(eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.CONSUMED));
+
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "ignoreDuplicate", true);
+        Assert.assertFalse(eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.CONSUMED));
+        Assert.assertTrue(eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.PRODUCED));
+        Assert.assertTrue(eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.RETURNED));
+
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "enabled", false);
+        Assert.assertFalse(eventStoreAckCoalescingService.isCoalesced(EventAckUpdate.Type.PRODUCED));
+    }
+
+}
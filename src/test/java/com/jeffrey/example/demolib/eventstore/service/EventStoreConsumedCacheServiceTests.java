@@ -0,0 +1,130 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.google.common.cache.Cache;
+import com.jeffrey.example.demolib.eventstore.dao.ConsumeClaim;
+import com.jeffrey.example.demolib.eventstore.util.TimeOrderedIdGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreConsumedCacheServiceTests {
+
+    private static final String CHANNEL = "output1";
+
+    // a clock which could be advanced by the test
+    private final TestClock clock = TestClock.manual();
+
+    private final TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(clock);
+
+    private MeterRegistry meterRegistry;
+
+    private EventStoreConsumedCacheService eventStoreConsumedCacheService;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        eventStoreConsumedCacheService = new EventStoreConsumedCacheService(
+                clock,
+                new StaticListableBeanFactory(Collections.singletonMap("meterRegistry", meterRegistry))
+                        .getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "enabled", true);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "maxSize", 100L);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "expireAfterInSec", 3600L);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "bloomFilterEnabled", true);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "bloomFilterPartitions", 2);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "bloomFilterPartitionTimeInSec", 60L);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "bloomFilterExpectedInsertions", 1000);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "bloomFilterFalsePositiveProbability", 0.001d);
+        ReflectionTestUtils.setField(eventStoreConsumedCacheService, "maxClockSkewMillis", 1000L);
+        eventStoreConsumedCacheService.initialize();
+    }
+
+    private String newEventId() {
+        return idGenerator.generateId().toString();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("eventstore.consumed.cache").tag("result", result).counter().count();
+    }
+
+    @Test
+    public void testPositiveLookup() {
+        clock.advance(TimeUnit.SECONDS.toMillis(5));
+        String eventId = newEventId();
+        eventStoreConsumedCacheService.recordConsumed(eventId, CHANNEL);
+
+        Assert.assertEquals(Boolean.TRUE, eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+        Assert.assertEquals(1d, count("hit"), 0d);
+    }
+
+    @Test
+    public void testNegativeLookup() {
+        clock.advance(TimeUnit.SECONDS.toMillis(5));
+        String eventId = newEventId();
+
+        Assert.assertEquals(Boolean.FALSE, eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+        Assert.assertEquals(1d, count("negative"), 0d);
+    }
+
+    @Test
+    public void testUndeterminedLookup() {
+        // written before this node started tracking
+        String eventId = newEventId();
+        clock.advance(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertNull(eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+
+        // not a time-ordered id
+        Assert.assertNull(eventStoreConsumedCacheService.lookup(UUID.randomUUID().toString(), CHANNEL));
+        Assert.assertEquals(2d, count("miss"), 0d);
+    }
+
+    @Test
+    public void testLookupAfterRotation() {
+        clock.advance(TimeUnit.SECONDS.toMillis(5));
+        String eventId = newEventId();
+        eventStoreConsumedCacheService.recordConsumed(eventId, CHANNEL);
+        ((Cache) ReflectionTestUtils.getField(eventStoreConsumedCacheService, "consumedCache")).invalidateAll();
+
+        // still retained by the bloom filter, but not a definite answer
+        Assert.assertNull(eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+
+        // the partition is discarded, the event is older than the retention
+        clock.advance(TimeUnit.MINUTES.toMillis(3));
+        Assert.assertNull(eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+
+        // a new event within the retention is definitely not consumed
+        Assert.assertEquals(Boolean.FALSE, eventStoreConsumedCacheService.lookup(newEventId(), CHANNEL));
+    }
+
+    @Test
+    public void testClaim() {
+        clock.advance(TimeUnit.SECONDS.toMillis(5));
+        String eventId = newEventId();
+        Assert.assertEquals(Boolean.FALSE, eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+
+        // a concurrent delivery of the same event is refused
+        Assert.assertEquals(ConsumeClaim.CLAIMED, eventStoreConsumedCacheService.claim(eventId, CHANNEL));
+        Assert.assertEquals(ConsumeClaim.CLAIMED_BY_OTHERS, eventStoreConsumedCacheService.claim(eventId, CHANNEL));
+
+        // released claim could be claimed again
+        eventStoreConsumedCacheService.release(eventId, CHANNEL);
+        Assert.assertEquals(ConsumeClaim.CLAIMED, eventStoreConsumedCacheService.claim(eventId, CHANNEL));
+
+        // once consumed, the claim is discarded and the event is no longer claimed in memory
+        eventStoreConsumedCacheService.recordConsumed(eventId, CHANNEL);
+        Assert.assertEquals(Boolean.TRUE, eventStoreConsumedCacheService.lookup(eventId, CHANNEL));
+        Assert.assertNull(eventStoreConsumedCacheService.claim(eventId, CHANNEL));
+    }
+
+}
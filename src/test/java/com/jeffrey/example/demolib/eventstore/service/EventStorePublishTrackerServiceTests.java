@@ -0,0 +1,128 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStorePublishTrackerServiceTests {
+
+    private static final String CHANNEL = "output1";
+
+    // a clock which could be advanced by the test
+    private final TestClock clock = TestClock.manual();
+
+    // every message resent by the tracker
+    private final List<Message<?>> resentMessages = new CopyOnWriteArrayList<>();
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreResendService eventStoreResendService;
+
+    private EventStorePublishTrackerService eventStorePublishTrackerService;
+
+    @Before
+    public void setUp() {
+        eventStoreScheduler = EventStoreSchedulers.singleWorker();
+        eventStoreResendService = new EventStoreResendService(
+                clock, new EventStoreChannelProperties(new MockEnvironment()), eventStoreScheduler);
+        eventStorePublishTrackerService = new EventStorePublishTrackerService(clock, eventStoreScheduler, eventStoreResendService);
+        eventStorePublishTrackerService.enabled = true;
+        eventStorePublishTrackerService.timeoutMillis = 100L;
+        eventStorePublishTrackerService.tickMillis = 100L;
+        eventStorePublishTrackerService.wheelSize = 8;
+        eventStorePublishTrackerService.maxTracked = 2;
+        eventStorePublishTrackerService.maxResends = 2;
+        eventStorePublishTrackerService.initialize();
+
+        // the timeouts are fired by the test instead of the ticker
+        BiConsumer<Message<?>, String> sender = (message, outputChannelName) -> resentMessages.add(message);
+        ReflectionTestUtils.setField(eventStorePublishTrackerService, "sender", sender);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStorePublishTrackerService.destroy();
+        eventStoreResendService.destroy();
+        eventStoreScheduler.destroy();
+    }
+
+    private Message<?> message(String eventId) {
+        return MessageBuilder.withPayload("testing message")
+                .setHeader("eventId", eventId)
+                .setHeader(EventStoreService.ATTEMPT_COUNT_HEADER, 1L)
+                .build();
+    }
+
+    private void advanceAndFire() {
+        clock.advance(100L);
+        ReflectionTestUtils.invokeMethod(eventStorePublishTrackerService, "fireTimeouts");
+    }
+
+    private void awaitResentMessages(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (resentMessages.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(expected, resentMessages.size());
+    }
+
+    @Test
+    public void testResendUntilMaxResends() throws InterruptedException {
+        Assert.assertTrue(eventStorePublishTrackerService.track("event1", CHANNEL, message("event1")));
+
+        advanceAndFire();
+        awaitResentMessages(1);
+        Assert.assertEquals(2L, resentMessages.get(0).getHeaders().get(EventStoreService.ATTEMPT_COUNT_HEADER));
+        Assert.assertEquals(1, eventStorePublishTrackerService.getTrackedCount());
+
+        advanceAndFire();
+        awaitResentMessages(2);
+        Assert.assertEquals(3L, resentMessages.get(1).getHeaders().get(EventStoreService.ATTEMPT_COUNT_HEADER));
+
+        // left to the retry operation once the max no. of resends is reached
+        advanceAndFire();
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+        Thread.sleep(100L);
+        Assert.assertEquals(2, resentMessages.size());
+    }
+
+    @Test
+    public void testUntrack() throws InterruptedException {
+        Assert.assertTrue(eventStorePublishTrackerService.track("event1", CHANNEL, message("event1")));
+        eventStorePublishTrackerService.untrack("event1");
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+
+        advanceAndFire();
+        Thread.sleep(100L);
+        Assert.assertTrue(resentMessages.isEmpty());
+    }
+
+    @Test
+    public void testMaxTracked() {
+        Assert.assertTrue(eventStorePublishTrackerService.track("event1", CHANNEL, message("event1")));
+        Assert.assertTrue(eventStorePublishTrackerService.track("event2", CHANNEL, message("event2")));
+        Assert.assertFalse(eventStorePublishTrackerService.track("event3", CHANNEL, message("event3")));
+        Assert.assertEquals(2, eventStorePublishTrackerService.getTrackedCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        eventStorePublishTrackerService.enabled = false;
+        Assert.assertFalse(eventStorePublishTrackerService.track("event1", CHANNEL, message("event1")));
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreResendServiceTests {
+
+    private static final String CHANNEL = "output1";
+
+    private static final String OTHER_CHANNEL = "output2";
+
+    private static final String PREFIX = "com.jeffrey.example.eventstore";
+
+    private final TestClock clock = TestClock.manual();
+
+    private MockEnvironment environment;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreResendService eventStoreResendService;
+
+    @Before
+    public void setUp() {
+        environment = new MockEnvironment();
+        eventStoreScheduler = EventStoreSchedulers.workers(environment, null, 4);
+        eventStoreResendService = new EventStoreResendService(clock, new EventStoreChannelProperties(environment), eventStoreScheduler);
+        eventStoreResendService.rampUpTimeInSec = 10L;
+        eventStoreResendService.rampUpInitialRatio = 0.1d;
+        eventStoreResendService.shutdownTimeoutMillis = 1000L;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStoreResendService.destroy();
+        eventStoreScheduler.destroy();
+    }
+
+    private boolean resend(String outputChannelName, Runnable runnable) throws Exception {
+        return eventStoreResendService.resendAsync(outputChannelName, "event1", 0L, () -> {
+            runnable.run();
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private boolean fail(String outputChannelName) throws Exception {
+        return resend(outputChannelName, () -> {
+            throw new IllegalStateException("broker unavailable");
+        });
+    }
+
+    @Test
+    public void testRampUpRatio() throws Exception {
+        Assert.assertEquals(1d, eventStoreResendService.getRampUpRatio(CHANNEL), 0d);
+
+        Assert.assertFalse(fail(CHANNEL));
+        Assert.assertEquals(0.1d, eventStoreResendService.getRampUpRatio(CHANNEL), 1e-9);
+
+        // the ratio grows linearly within the ramp up time after the last failure
+        clock.advance(5000L);
+        Assert.assertEquals(0.55d, eventStoreResendService.getRampUpRatio(CHANNEL), 1e-9);
+
+        clock.advance(5000L);
+        Assert.assertEquals(1d, eventStoreResendService.getRampUpRatio(CHANNEL), 0d);
+
+        // the failure of a channel does not slow down the others
+        Assert.assertFalse(fail(CHANNEL));
+        Assert.assertEquals(1d, eventStoreResendService.getRampUpRatio(OTHER_CHANNEL), 0d);
+    }
+
+    @Test
+    public void testRecovering() throws Exception {
+        Assert.assertFalse(eventStoreResendService.isRecovering(CHANNEL));
+
+        Assert.assertFalse(fail(CHANNEL));
+        Assert.assertTrue(eventStoreResendService.isRecovering(CHANNEL));
+        Assert.assertFalse(eventStoreResendService.isRecovering(OTHER_CHANNEL));
+
+        // still recovering after the ramp up time, until a resend succeeds
+        clock.advance(10000L);
+        Assert.assertTrue(eventStoreResendService.isRecovering(CHANNEL));
+
+        Assert.assertTrue(resend(CHANNEL, () -> {}));
+        Assert.assertFalse(eventStoreResendService.isRecovering(CHANNEL));
+    }
+
+    @Test
+    public void testFailureSlowsDownRate() throws Exception {
+        environment.setProperty(PREFIX + ".retry.send.maxMessagesPerSec", "100");
+
+        Assert.assertTrue(resend(CHANNEL, () -> {}));
+        Assert.assertEquals(100d, eventStoreResendService.getMessageRate(CHANNEL), 0d);
+
+        Assert.assertFalse(fail(CHANNEL));
+        Assert.assertTrue(resend(CHANNEL, () -> {}));
+        Assert.assertEquals(10d, eventStoreResendService.getMessageRate(CHANNEL), 1e-9);
+
+        clock.advance(10000L);
+        Assert.assertTrue(resend(CHANNEL, () -> {}));
+        Assert.assertEquals(100d, eventStoreResendService.getMessageRate(CHANNEL), 0d);
+    }
+
+    @Test
+    public void testFailureLimitsConcurrencyIfUnlimited() throws Exception {
+        Assert.assertEquals(0d, eventStoreResendService.getMessageRate(CHANNEL), 0d);
+        Assert.assertEquals(4, eventStoreResendService.getConcurrencyLimit(CHANNEL));
+
+        Assert.assertFalse(fail(CHANNEL));
+        Assert.assertEquals(1, eventStoreResendService.getConcurrencyLimit(CHANNEL));
+
+        // right after the failure the resends are run one at a time
+        final AtomicInteger activeCount = new AtomicInteger();
+        final AtomicInteger maxActiveCount = new AtomicInteger();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            futures.add(eventStoreResendService.resendAsync(CHANNEL, "event" + i, 0L, () -> {
+                maxActiveCount.accumulateAndGet(activeCount.incrementAndGet(), Math::max);
+                Thread.sleep(50L);
+                activeCount.decrementAndGet();
+                return null;
+            }));
+        }
+        for (CompletableFuture<Boolean> future:futures) {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, maxActiveCount.get());
+
+        clock.advance(5000L);
+        Assert.assertEquals(3, eventStoreResendService.getConcurrencyLimit(CHANNEL));
+
+        clock.advance(5000L);
+        Assert.assertEquals(4, eventStoreResendService.getConcurrencyLimit(CHANNEL));
+    }
+
+    @Test
+    public void testResendOnScheduler() throws Exception {
+        final List<String> threadNames = new CopyOnWriteArrayList<>();
+        Assert.assertTrue(resend(CHANNEL, () -> threadNames.add(Thread.currentThread().getName())));
+        Assert.assertTrue(resend(OTHER_CHANNEL, () -> threadNames.add(Thread.currentThread().getName())));
+
+        // no thread is created per channel
+        Assert.assertEquals(2, threadNames.size());
+        Assert.assertTrue(threadNames.get(0).startsWith("eventstore-scheduler-"));
+        Assert.assertTrue(threadNames.get(1).startsWith("eventstore-scheduler-"));
+    }
+
+    @Test
+    public void testAwaitResendsWhileSchedulerBusy() throws Exception {
+        // every worker of the scheduler waits for the resends, like the retry cycles of many channels
+        final int channelCount = 4;
+        final CountDownLatch started = new CountDownLatch(channelCount);
+        List<CompletableFuture<Long>> cycles = new ArrayList<>();
+        for (int i=0; i<channelCount; i++) {
+            final String outputChannelName = "output" + i;
+            final CompletableFuture<Long> cycle = new CompletableFuture<>();
+            eventStoreScheduler.execute(outputChannelName, () -> {
+                started.countDown();
+                try {
+                    started.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                List<CompletableFuture<Boolean>> resends = new ArrayList<>();
+                for (int j=0; j<3; j++) {
+                    resends.add(eventStoreResendService.resendAsync(outputChannelName, "event" + j, 0L, () -> null));
+                }
+                cycle.complete(eventStoreResendService.awaitResends(outputChannelName, resends));
+            });
+            cycles.add(cycle);
+        }
+
+        // the waiting threads run the queued resends themselves
+        for (CompletableFuture<Long> cycle:cycles) {
+            Assert.assertEquals(3L, cycle.get(5, TimeUnit.SECONDS).longValue());
+        }
+    }
+
+    @Test
+    public void testResendAfterDestroy() throws Exception {
+        Assert.assertTrue(resend(CHANNEL, () -> {}));
+        eventStoreResendService.destroy();
+
+        // the resend is refused instead of being left incomplete
+        Assert.assertFalse(resend(CHANNEL, () -> Assert.fail("resent after shutdown")));
+        Assert.assertFalse(resend(OTHER_CHANNEL, () -> Assert.fail("resent after shutdown")));
+    }
+
+    @Test
+    public void testChannelOverrides() {
+        environment.setProperty(PREFIX + ".retry.send.concurrency", "8");
+        environment.setProperty(PREFIX + ".channels." + OTHER_CHANNEL + ".retry.send.concurrency", "2");
+        environment.setProperty(PREFIX + ".channels." + OTHER_CHANNEL + ".retry.send.maxMessagesPerSec", "50");
+
+        Assert.assertEquals(8, eventStoreResendService.getConcurrencyLimit(CHANNEL));
+        Assert.assertEquals(0d, eventStoreResendService.getMessageRate(CHANNEL), 0d);
+
+        Assert.assertEquals(2, eventStoreResendService.getConcurrencyLimit(OTHER_CHANNEL));
+        Assert.assertEquals(50d, eventStoreResendService.getMessageRate(OTHER_CHANNEL), 0d);
+        Assert.assertFalse(eventStoreResendService.isByteRateLimited(OTHER_CHANNEL));
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.jeffrey.example.demolib.eventstore.service;
 
+import com.jeffrey.example.demolib.eventstore.command.EventStoreRetryCommand;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,8 +11,10 @@ import org.springframework.retry.backoff.NoBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -102,4 +105,65 @@ public class EventStoreRetryServiceTests {
 
         Assert.assertEquals(retryLimit * retryCallbackCount, counter.get());
     }
+
+    private EventStoreRetryService adaptiveRetryService(
+            EventStoreScheduler eventStoreScheduler, long initialBackoffMillis, long maxBackoffMillis
+    ) {
+        EventStoreRetryService eventStoreRetryService = new EventStoreRetryService(new RetryTemplate(), eventStoreScheduler);
+        ReflectionTestUtils.setField(eventStoreRetryService, "initialBackoffMillis", initialBackoffMillis);
+        ReflectionTestUtils.setField(eventStoreRetryService, "maxBackoffMillis", maxBackoffMillis);
+        ReflectionTestUtils.setField(eventStoreRetryService, "backoffMultiplier", 2d);
+        return eventStoreRetryService;
+    }
+
+    @Test
+    public void testNextBackoff() {
+        final int batchSize = 10;
+        EventStoreRetryService eventStoreRetryService = adaptiveRetryService(null, 1000L, 5000L);
+
+        // drain back-to-back while a full batch is fetched
+        Assert.assertEquals(0L, eventStoreRetryService.nextBackoffMillis(1000L, batchSize, batchSize));
+        // a partial batch resets the backoff
+        Assert.assertEquals(1000L, eventStoreRetryService.nextBackoffMillis(0L, 1, batchSize));
+        Assert.assertEquals(1000L, eventStoreRetryService.nextBackoffMillis(4000L, 1, batchSize));
+        // an empty or failed cycle multiplies the backoff up to the ceiling
+        Assert.assertEquals(1000L, eventStoreRetryService.nextBackoffMillis(0L, 0, batchSize));
+        Assert.assertEquals(2000L, eventStoreRetryService.nextBackoffMillis(1000L, 0, batchSize));
+        Assert.assertEquals(4000L, eventStoreRetryService.nextBackoffMillis(2000L, -1, batchSize));
+        Assert.assertEquals(5000L, eventStoreRetryService.nextBackoffMillis(4000L, 0, batchSize));
+        Assert.assertEquals(5000L, eventStoreRetryService.nextBackoffMillis(5000L, 0, batchSize));
+    }
+
+    /**
+     * Verify a backlog is drained back-to-back without waiting for the backoff
+     * @throws Exception if the current thread is interrupted while waiting
+     */
+    @Test
+    public void testAdaptiveDrain() throws Exception {
+        final int batchSize = 10;
+        final int fullBatches = 5;
+
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch countDownLatch = new CountDownLatch(fullBatches + 1);
+        EventStoreRetryCommand retryCommand = () -> {
+            countDownLatch.countDown();
+            return counter.incrementAndGet() <= fullBatches ? batchSize : 0;
+        };
+
+        EventStoreScheduler eventStoreScheduler = EventStoreSchedulers.singleWorker();
+
+        // the backoff is far beyond the wait timeout
+        EventStoreRetryService eventStoreRetryService = adaptiveRetryService(eventStoreScheduler, 60000L, 600000L);
+        try {
+            eventStoreRetryService.startAdaptiveAsync(Collections.singletonMap("output1", retryCommand), batchSize);
+
+            Assert.assertTrue(countDownLatch.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            // the cycle after the backlog is drained waits for the backoff
+            Thread.sleep(100L);
+            Assert.assertEquals(fullBatches + 1, counter.get());
+
+        } finally {
+            eventStoreScheduler.destroy();
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreSchedulerTests {
+
+    private static final int WAIT_TIMEOUT_SECONDS = 5;
+
+    private MeterRegistry meterRegistry;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        eventStoreScheduler = EventStoreSchedulers.singleWorker(new MockEnvironment()
+                        .withProperty("com.jeffrey.example.eventstore.channels.output1.scheduler.weight", "2"),
+                meterRegistry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStoreScheduler.destroy();
+    }
+
+    /**
+     * Block the only worker until the latch is released
+     */
+    private CountDownLatch blockWorker() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        eventStoreScheduler.execute(EventStoreScheduler.HOUSEKEEPING_QUEUE, () -> {
+            started.countDown();
+            try {
+                release.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) { }
+        });
+        Assert.assertTrue(started.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    public void testWeightedRoundRobin() throws InterruptedException {
+        CountDownLatch release = blockWorker();
+
+        final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch finished = new CountDownLatch(6);
+        for (int i=1; i<=4; i++) {
+            String name = "a" + i;
+            eventStoreScheduler.execute("output1", () -> { executed.add(name); finished.countDown(); });
+        }
+        for (int i=1; i<=2; i++) {
+            String name = "b" + i;
+            eventStoreScheduler.execute("output2", () -> { executed.add(name); finished.countDown(); });
+        }
+        Assert.assertEquals(4, eventStoreScheduler.getQueueDepth("output1"));
+        Assert.assertEquals(2d, meterRegistry.get("eventstore.scheduler.queue").tag("queue", "output2").gauge().value(), 0d);
+
+        release.countDown();
+        Assert.assertTrue(finished.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // output1 is served twice as often as output2
+        Assert.assertEquals(Arrays.asList("a1", "a2", "b1", "a3", "a4", "b2"), executed);
+        Assert.assertEquals(0, eventStoreScheduler.getQueueDepth("output1"));
+    }
+
+    @Test
+    public void testSchedule() throws InterruptedException {
+        final CountDownLatch executed = new CountDownLatch(1);
+        final long scheduledOn = System.nanoTime();
+        eventStoreScheduler.schedule("output1", executed::countDown, 200L);
+
+        Assert.assertTrue(executed.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - scheduledOn >= TimeUnit.MILLISECONDS.toNanos(200L));
+    }
+
+    @Test
+    public void testPeriodicTask() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch executed = new CountDownLatch(3);
+        EventStoreScheduler.PeriodicTask periodicTask = eventStoreScheduler.scheduleWithFixedDelay(
+                EventStoreScheduler.HOUSEKEEPING_QUEUE, () -> { counter.incrementAndGet(); executed.countDown(); }, 0L, 10L);
+
+        Assert.assertTrue(executed.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        periodicTask.cancel();
+        int count = counter.get();
+        Thread.sleep(100L);
+        Assert.assertEquals(count, counter.get());
+    }
+
+    @Test
+    public void testPriorityQueue() throws InterruptedException {
+        CountDownLatch release = blockWorker();
+
+        // the priority task is executed by the reserved worker while the other worker is busy
+        final CountDownLatch executed = new CountDownLatch(1);
+        eventStoreScheduler.execute("output1", () -> {});
+        eventStoreScheduler.execute(EventStoreScheduler.priorityQueue("output1"), executed::countDown);
+
+        Assert.assertTrue(executed.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, eventStoreScheduler.getQueueDepth("output1"));
+        Assert.assertEquals(0, eventStoreScheduler.getQueueDepth(EventStoreScheduler.priorityQueue("output1")));
+        release.countDown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        CountDownLatch release = blockWorker();
+
+        final AtomicInteger counter = new AtomicInteger();
+        eventStoreScheduler.execute("output1", counter::incrementAndGet);
+        eventStoreScheduler.schedule("output1", counter::incrementAndGet, 100L);
+        release.countDown();
+        eventStoreScheduler.destroy();
+
+        // the queued and delayed tasks are discarded, no more task is accepted
+        eventStoreScheduler.execute("output1", counter::incrementAndGet);
+        Thread.sleep(200L);
+        Assert.assertTrue(counter.get() <= 1);
+        Assert.assertEquals(0, eventStoreScheduler.getQueueDepth("output1"));
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Collections;
+
+/**
+ * Create an initialized {@link EventStoreScheduler} without the application context, with
+ * a single worker by default and a single reserved worker, for testing the services which
+ * submit their background work to the scheduler.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class EventStoreSchedulers {
+
+    private EventStoreSchedulers() {}
+
+    public static EventStoreScheduler singleWorker() {
+        return singleWorker(new MockEnvironment(), null);
+    }
+
+    /**
+     * @param environment the {@link Environment} of the per-channel properties
+     * @param meterRegistry the {@link MeterRegistry} of the queue gauges, null if metrics is not available
+     */
+    public static EventStoreScheduler singleWorker(Environment environment, MeterRegistry meterRegistry) {
+        return workers(environment, meterRegistry, 1);
+    }
+
+    /**
+     * @param environment the {@link Environment} of the per-channel properties
+     * @param meterRegistry the {@link MeterRegistry} of the queue gauges, null if metrics is not available
+     * @param poolSize the no. of workers besides the reserved worker
+     */
+    public static EventStoreScheduler workers(Environment environment, MeterRegistry meterRegistry, int poolSize) {
+        StaticListableBeanFactory beanFactory = meterRegistry == null ?
+                new StaticListableBeanFactory() :
+                new StaticListableBeanFactory(Collections.singletonMap("meterRegistry", meterRegistry));
+        EventStoreScheduler eventStoreScheduler = new EventStoreScheduler(
+                new EventStoreChannelProperties(environment), beanFactory.getBeanProvider(MeterRegistry.class));
+        eventStoreScheduler.poolSize = poolSize;
+        eventStoreScheduler.reservedPoolSize = 1;
+        eventStoreScheduler.shutdownTimeoutMillis = 1000L;
+        eventStoreScheduler.initialize();
+        return eventStoreScheduler;
+    }
+
+}
@@ -4,19 +4,35 @@ import com.jeffrey.example.demoapp.config.DemoChannelConfig;
 import com.jeffrey.example.demoapp.model.DemoInsurancePolicy;
 import com.jeffrey.example.demoapp.model.DemoMessageModel;
 import com.jeffrey.example.demolib.eventstore.annotation.EnableEventStore;
+import com.jeffrey.example.demolib.eventstore.aop.EventStoreAspect;
+import com.jeffrey.example.demolib.eventstore.codec.EventPayloadCodecRegistry;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreChannelProperties;
 import com.jeffrey.example.demolib.eventstore.config.EventStoreConfig;
+import com.jeffrey.example.demolib.eventstore.config.EventStoreDurabilityProperties;
 import com.jeffrey.example.demolib.eventstore.config.MongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.config.ReactiveMongoDbConfig;
 import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.jeffrey.example.demolib.eventstore.dao.ConsumeClaim;
 import com.jeffrey.example.demolib.eventstore.dao.EventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.EventStoreOperation;
+import com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao;
 import com.jeffrey.example.demolib.eventstore.dao.MongoEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.ReactiveEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.dao.ReactiveMongoEventStoreDao;
 import com.jeffrey.example.demolib.eventstore.util.ChannelBindingAccessor;
 import com.jeffrey.example.demolib.eventstore.util.EmbeddedMongoDb;
+import com.jeffrey.example.demolib.eventstore.util.StubProceedingJoinPoint;
+import com.mongodb.WriteConcern;
+import org.bson.Document;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
@@ -24,13 +40,21 @@ import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.integration.amqp.support.NackedAmqpMessageException;
+import org.springframework.integration.amqp.support.ReturnedAmqpMessageException;
 import org.springframework.integration.annotation.Publisher;
+import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Headers;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
@@ -39,23 +63,49 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.time.Clock;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Import({
         ChannelBindingAccessor.class,
         MongoDbConfig.class,
+        EventStoreDurabilityProperties.class,
         MongoEventStoreDao.class,
+        ReactiveMongoDbConfig.class,
+        ReactiveMongoEventStoreDao.class,
         EventStoreConfig.class,
+        EventStoreChannelProperties.class,
+        EventPayloadCodecRegistry.class,
+        EventStoreScheduler.class,
+        EventStoreAckCoalescingService.class,
+        EventStoreConsumedCacheService.class,
+        EventStoreResendService.class,
+        EventStorePublishTrackerService.class,
+        EventStoreQuarantineService.class,
+        EventStoreGroupCommitService.class,
+        EventStoreSpilloverService.class,
         EventStoreService.class,
         EventStoreRetryService.class
 })
@@ -107,9 +157,31 @@ public class EventStoreServiceIT {
     @Autowired
     EventStoreService eventStoreService;
 
+    @Autowired
+    ReactiveEventStoreDao reactiveEventStoreDao;
+
+    @Autowired
+    EventStoreGroupCommitService eventStoreGroupCommitService;
+
+    @Autowired
+    EventStoreAckCoalescingService eventStoreAckCoalescingService;
+
+    @Autowired
+    EventStorePublishTrackerService eventStorePublishTrackerService;
+
+    @Autowired
+    EventStoreRetryService eventStoreRetryService;
+
+    @Autowired
+    EventStoreScheduler eventStoreScheduler;
+
     @Autowired
     TestProcessor testProcessor;
 
+    @Autowired
+    @Qualifier("eventStoreTransactionManager")
+    PlatformTransactionManager eventStoreTransactionManager;
+
     @Before
     public void initialize() {
         eventStoreDao.deleteAll(DemoChannelConfig.OUTPUT1);
@@ -123,11 +195,246 @@ public class EventStoreServiceIT {
         Assert.assertEquals(2, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).size());
     }
 
+    @Test
+    public void testCreateEventWithGroupCommit() throws InterruptedException {
+        ReflectionTestUtils.setField(eventStoreGroupCommitService, "enabled", true);
+
+        final int MAX_THREAD = 8;
+        final int MAX_MESSAGE = 10;
+        final CountDownLatch lock = new CountDownLatch(MAX_THREAD);
+        final ExecutorService executor = Executors.newFixedThreadPool(MAX_THREAD);
+        try {
+            for (int i=0; i<MAX_THREAD; i++) {
+                executor.execute(() -> {
+                    try {
+                        for (int j=0; j<MAX_MESSAGE; j++) {
+                            eventStoreService.createEventFromMessage(
+                                    MessageBuilder.withPayload("testing message " + j).build(), DemoChannelConfig.OUTPUT1);
+                        }
+                    } catch (IOException e) {
+                    } finally {
+                        lock.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(lock.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // every publisher is blocked until its batch is written, all events should be readily available
+        Assert.assertEquals(MAX_THREAD * MAX_MESSAGE, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).size());
+    }
+
+    @Test
+    public void testOutboxWriteMode() throws Throwable {
+        ReflectionTestUtils.setField(eventStoreService, "writeMode", "outbox");
+        Assert.assertTrue(eventStoreService.isOutboxWriteMode());
+
+        final List<Message> sentMessages = new ArrayList<>();
+        Message message = MessageBuilder.withPayload("testing message").build();
+        StubProceedingJoinPoint joinPoint = new StubProceedingJoinPoint(new Object[] {message}, args -> {
+            // the event is written before sending, no transaction is held open while sending
+            Assert.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+            Assert.assertEquals(1, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).size());
+            sentMessages.add((Message) args[0]);
+            return true;
+        });
+        Assert.assertEquals(true, eventStoreService.createEventFromMessageAndSendWithoutTransaction(
+                message, DemoChannelConfig.OUTPUT1, joinPoint));
+
+        Assert.assertEquals(1, sentMessages.size());
+        Assert.assertEquals(
+                sentMessages.get(0).getHeaders().get("eventId"),
+                eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0).getId());
+    }
+
+    @Test
+    public void testOutboxWriteMode_sendFailed() {
+        Message message = MessageBuilder.withPayload("testing message").build();
+        StubProceedingJoinPoint joinPoint = new StubProceedingJoinPoint(new Object[] {message}, args -> {
+            throw new IllegalStateException("broker unavailable");
+        });
+        try {
+            eventStoreService.createEventFromMessageAndSendWithoutTransaction(message, DemoChannelConfig.OUTPUT1, joinPoint);
+            Assert.fail("the sending failure should be propagated");
+        } catch (Throwable t) {
+            Assert.assertTrue(t instanceof IllegalStateException);
+        }
+
+        // the event is not rolled back but left pending for the retry operation
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Assert.assertNull(domainEvent.getProducerAckOn());
+    }
+
+    @Test
+    public void testTransactionalWriteMode_sendFailed() {
+        Assert.assertFalse(eventStoreService.isOutboxWriteMode());
+        // collection could not be created inside transaction
+        eventStoreDao.initializeDb(Collections.singletonList(DemoChannelConfig.OUTPUT1));
+
+        Message message = MessageBuilder.withPayload("testing message").build();
+        StubProceedingJoinPoint joinPoint = new StubProceedingJoinPoint(new Object[] {message}, args -> {
+            Assert.assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+            throw new IllegalStateException("broker unavailable");
+        });
+        try {
+            eventStoreService.createEventFromMessageAndSend(message, DemoChannelConfig.OUTPUT1, joinPoint);
+            Assert.fail("the sending failure should be propagated");
+        } catch (Throwable t) {
+            Assert.assertTrue(t instanceof IllegalStateException);
+        }
+
+        // the event is rolled back with the transaction
+        Assert.assertTrue(eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).isEmpty());
+    }
+
+    private void enablePublishTracker() {
+        ReflectionTestUtils.setField(eventStorePublishTrackerService, "enabled", true);
+        eventStorePublishTrackerService.initialize();
+    }
+
+    @Test
+    public void testPublishTracker_sendFailed() throws Throwable {
+        enablePublishTracker();
+
+        Message message = MessageBuilder.withPayload("testing message").build();
+        eventStoreService.createEventFromMessageAndSendWithoutTransaction(message, DemoChannelConfig.OUTPUT1,
+                new StubProceedingJoinPoint(new Object[] {message}, args -> true));
+        Assert.assertEquals(1, eventStorePublishTrackerService.getTrackedCount());
+
+        try {
+            eventStoreService.createEventFromMessageAndSendWithoutTransaction(message, DemoChannelConfig.OUTPUT1,
+                    new StubProceedingJoinPoint(new Object[] {message}, args -> {
+                        throw new IllegalStateException("broker unavailable");
+                    }));
+            Assert.fail("the sending failure should be propagated");
+        } catch (IllegalStateException e) { }
+
+        // the message failed to send is not tracked anymore
+        Assert.assertEquals(1, eventStorePublishTrackerService.getTrackedCount());
+    }
+
+    @Test
+    public void testPublishTracker_rolledBack() {
+        enablePublishTracker();
+        // collection could not be created inside transaction
+        eventStoreDao.initializeDb(Collections.singletonList(DemoChannelConfig.OUTPUT1));
+
+        Message message = MessageBuilder.withPayload("testing message").build();
+        new TransactionTemplate(eventStoreTransactionManager).execute(status -> {
+            try {
+                eventStoreService.createEventFromMessageAndSend(message, DemoChannelConfig.OUTPUT1,
+                        new StubProceedingJoinPoint(new Object[] {message}, args -> true));
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+            Assert.assertEquals(1, eventStorePublishTrackerService.getTrackedCount());
+            status.setRollbackOnly();
+            return null;
+        });
+
+        // the message sent is not tracked anymore once the transaction writing the event is rolled back
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+        Assert.assertTrue(eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).isEmpty());
+    }
+
+    private Message<?> createTrackedEvent() throws IOException {
+        Message<?> message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        Assert.assertTrue(eventStorePublishTrackerService.track(
+                message.getHeaders().get("eventId", String.class), DemoChannelConfig.OUTPUT1, message));
+        return message;
+    }
+
+    @Test
+    public void testPublishTracker_aspectHooks() throws Throwable {
+        enablePublishTracker();
+        EventStoreAspect eventStoreAspect = new EventStoreAspect();
+        ReflectionTestUtils.setField(eventStoreAspect, "eventStoreService", eventStoreService);
+        ServiceActivator errorChannel = ChannelBindingAccessor.class
+                .getMethod("onError", Message.class).getAnnotation(ServiceActivator.class);
+        ServiceActivator publisherConfirmChannel = ChannelBindingAccessor.class
+                .getMethod("onPublisherConfirm", Message.class).getAnnotation(ServiceActivator.class);
+
+        Message<?> confirmed = createTrackedEvent();
+        Message<?> returned = createTrackedEvent();
+        Message<?> nacked = createTrackedEvent();
+        Assert.assertEquals(3, eventStorePublishTrackerService.getTrackedCount());
+
+        // positive publisher confirm
+        Message<?> confirm = MessageBuilder.fromMessage(confirmed).setHeader("amqp_publishConfirm", true).build();
+        eventStoreAspect.interceptPublisherConfirmOrError(
+                new StubProceedingJoinPoint(new Object[] {confirm}, args -> null), publisherConfirmChannel, confirm);
+        Assert.assertEquals(2, eventStorePublishTrackerService.getTrackedCount());
+
+        // message returned by the broker
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setHeader("eventId", returned.getHeaders().get("eventId"));
+        messageProperties.setHeader("outputChannelName", DemoChannelConfig.OUTPUT1);
+        Message<?> returnError = new ErrorMessage(new ReturnedAmqpMessageException(returned,
+                new org.springframework.amqp.core.Message(new byte[0], messageProperties), 312, "NO_ROUTE", "", ""));
+        eventStoreAspect.interceptPublisherConfirmOrError(
+                new StubProceedingJoinPoint(new Object[] {returnError}, args -> null), errorChannel, returnError);
+        Assert.assertEquals(1, eventStorePublishTrackerService.getTrackedCount());
+
+        // negative publisher confirm
+        Message<?> nackError = new ErrorMessage(new NackedAmqpMessageException(nacked, null, "nack"));
+        eventStoreAspect.interceptPublisherConfirmOrError(
+                new StubProceedingJoinPoint(new Object[] {nackError}, args -> null), errorChannel, nackError);
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+    }
+
+    @Test
+    public void testWriteConcernSelection() {
+        // outside transaction, the event is created with the majority write concern by default
+        MongoTemplate mongoTemplate = ReflectionTestUtils.invokeMethod(
+                eventStoreDao, "getMongoTemplate", EventStoreOperation.CREATE);
+        Assert.assertEquals(WriteConcern.MAJORITY, ReflectionTestUtils.getField(mongoTemplate, "writeConcern"));
+
+        // inside transaction, no write concern is set on individual operation
+        new TransactionTemplate(eventStoreTransactionManager).execute(status -> {
+            MongoTemplate transactionalMongoTemplate = ReflectionTestUtils.invokeMethod(
+                    eventStoreDao, "getMongoTemplate", EventStoreOperation.CREATE);
+            Assert.assertNull(ReflectionTestUtils.getField(transactionalMongoTemplate, "writeConcern"));
+            return null;
+        });
+    }
+
     @Test
     public void testFetchEventAndResend() {
         eventStoreService.fetchEventAndResend(DemoChannelConfig.OUTPUT1);
     }
 
+    @Test
+    public void testFetchEventAndResend_sendFailed() throws Exception {
+        eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        Thread.sleep(retryBackoffTimeInMs);
+
+        // the broker is unavailable, every send throws
+        EventStoreResendService eventStoreResendService = new EventStoreResendService(
+                Clock.systemUTC(), new EventStoreChannelProperties(new MockEnvironment()), eventStoreScheduler) {
+            @Override
+            public CompletableFuture<Boolean> resendAsync(String outputChannelName, String eventId, long sizeInBytes, Callable<?> resendTask) {
+                return super.resendAsync(outputChannelName, eventId, sizeInBytes, () -> {
+                    throw new MessageDeliveryException("broker unavailable");
+                });
+            }
+        };
+        Object resendService = ReflectionTestUtils.getField(eventStoreService, "eventStoreResendService");
+        ReflectionTestUtils.setField(eventStoreService, "eventStoreResendService", eventStoreResendService);
+        try {
+            int resentCount = eventStoreService.fetchEventAndResend(DemoChannelConfig.OUTPUT1);
+            Assert.assertEquals(0, resentCount);
+            // the next cycle backs off instead of looping back-to-back
+            Assert.assertTrue(eventStoreRetryService.nextBackoffMillis(0L, resentCount, 1) > 0L);
+        } finally {
+            ReflectionTestUtils.setField(eventStoreService, "eventStoreResendService", resendService);
+            eventStoreResendService.destroy();
+        }
+    }
+
     @Test
     public void testRetry() throws Throwable {
         final int MAX_RETRY = 3;
@@ -232,6 +539,310 @@ public class EventStoreServiceIT {
         Assert.assertEquals(1, counter.get());
     }
 
+    @Test
+    public void testPendingEventClaimedAndResentOnce() throws IOException, InterruptedException {
+        final int MAX_MESSAGE = 5;
+        for (int i=0; i<MAX_MESSAGE; i++) {
+            eventStoreService.createEventFromMessage(
+                    MessageBuilder.withPayload("testing message " + i).build(), DemoChannelConfig.OUTPUT1);
+        }
+
+        // wait for messages to expire before fetching
+        Thread.sleep(retryBackoffTimeInMs);
+
+        Map<String, Integer> resendCounts = new HashMap<>();
+        eventStoreDao.filterPendingProducerAckOrReturned(DemoChannelConfig.OUTPUT1,
+                (domainEvent) -> resendCounts.merge(domainEvent.getId(), 1, Integer::sum));
+
+        // each pending event is claimed and handed to the callback exactly once
+        Assert.assertEquals(MAX_MESSAGE, resendCounts.size());
+        resendCounts.values().forEach(count -> Assert.assertEquals(1, count.intValue()));
+        eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).forEach(domainEvent -> {
+            Assert.assertEquals(2, domainEvent.getAttemptCount());
+        });
+
+        // the claimed events are leased and re-stamped, the next scan claims nothing
+        eventStoreDao.filterPendingProducerAckOrReturned(DemoChannelConfig.OUTPUT1,
+                (domainEvent) -> resendCounts.merge(domainEvent.getId(), 1, Integer::sum));
+        resendCounts.values().forEach(count -> Assert.assertEquals(1, count.intValue()));
+    }
+
+    @Test
+    public void testConcurrentScannersNoDoubleClaim() throws IOException, InterruptedException {
+        final int MAX_MESSAGE = 50;
+        for (int i=0; i<MAX_MESSAGE; i++) {
+            eventStoreService.createEventFromMessage(
+                    MessageBuilder.withPayload("testing message " + i).build(), DemoChannelConfig.OUTPUT1);
+        }
+
+        // wait for messages to expire before fetching
+        Thread.sleep(retryBackoffTimeInMs);
+
+        final int MAX_THREAD = 2;
+        final Map<String, AtomicInteger> resendCounts = new ConcurrentHashMap<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch lock = new CountDownLatch(MAX_THREAD);
+        final ExecutorService executor = Executors.newFixedThreadPool(MAX_THREAD);
+        try {
+            for (int i=0; i<MAX_THREAD; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        eventStoreDao.filterPendingProducerAckOrReturned(DemoChannelConfig.OUTPUT1,
+                                (domainEvent) -> resendCounts.computeIfAbsent(
+                                        domainEvent.getId(), (eventId) -> new AtomicInteger()).incrementAndGet());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        lock.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            Assert.assertTrue(lock.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // every pending event is claimed by exactly one of the scanners
+        Assert.assertEquals(MAX_MESSAGE, resendCounts.size());
+        resendCounts.values().forEach(count -> Assert.assertEquals(1, count.get()));
+        eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).forEach(domainEvent -> {
+            Assert.assertEquals(2, domainEvent.getAttemptCount());
+        });
+    }
+
+    @Test
+    public void testReactiveAckUpdate() throws IOException, InterruptedException, ExecutionException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        DomainEvent domainEvent = eventStoreService.updateEventAsProducedAsync(eventId, DemoChannelConfig.OUTPUT1).get();
+        Assert.assertNotNull(domainEvent.getProducerAckOn());
+        Assert.assertFalse(reactiveEventStoreDao.hasConsumedTimeStamp(eventId, DemoChannelConfig.OUTPUT1).block());
+
+        domainEvent = eventStoreService.updateEventAsConsumedAsync(eventId, DemoChannelConfig.OUTPUT1).get();
+        Assert.assertNotNull(domainEvent.getConsumerAckOn());
+        Assert.assertTrue(reactiveEventStoreDao.hasConsumedTimeStamp(eventId, DemoChannelConfig.OUTPUT1).block());
+    }
+
+    @Test
+    public void testReactiveConsumedAckReleasesClaim() throws IOException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+        Assert.assertEquals(ConsumeClaim.CLAIMED, eventStoreService.claimEventForConsuming(eventId, DemoChannelConfig.OUTPUT1));
+
+        Assert.assertTrue(reactiveEventStoreDao.markConsumed(eventId, DemoChannelConfig.OUTPUT1).block());
+
+        // the consume claim is released once consumed, same as the synchronous acknowledgement
+        MongoTemplate mongoTemplate = ReflectionTestUtils.invokeMethod(
+                eventStoreDao, "getMongoTemplate", EventStoreOperation.CONSUMED_ACK);
+        String storeName = ReflectionTestUtils.invokeMethod(eventStoreDao, "getStoreName", DemoChannelConfig.OUTPUT1);
+        Document document = mongoTemplate.findById(eventId, Document.class, storeName);
+        Assert.assertNotNull(document.get("consumerAckOn"));
+        Assert.assertFalse(document.containsKey("consumingBy"));
+        Assert.assertFalse(document.containsKey("consumeLeaseExpiresOn"));
+    }
+
+    @Test
+    public void testMarkEvent() throws IOException, InterruptedException, ExecutionException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        Assert.assertTrue(eventStoreService.markEventAsProducedAsync(eventId, DemoChannelConfig.OUTPUT1).get());
+        Assert.assertTrue(eventStoreService.markEventAsConsumed(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertTrue(eventStoreService.hasEventBeenConsumed(eventId, DemoChannelConfig.OUTPUT1));
+
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Assert.assertNotNull(domainEvent.getProducerAckOn());
+        Assert.assertNotNull(domainEvent.getConsumerAckOn());
+
+        Assert.assertFalse(eventStoreService.markEventAsReturnedAsync(
+                UUID.randomUUID().toString(), DemoChannelConfig.OUTPUT1).get());
+    }
+
+    @Test
+    public void testClaimReturnedEvent() throws IOException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // the claim is refused before the event is returned, and before its backoff has elapsed
+        Assert.assertEquals(0L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 60000L, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(0L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(2L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+        // the event is resent only once
+        Assert.assertEquals(0L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Assert.assertEquals(2L, domainEvent.getAttemptCount());
+        Assert.assertNull(domainEvent.getReturnedOn());
+    }
+
+    @Test
+    public void testResendReturnedEvent_markReturnedFailed() throws Exception {
+        enablePublishTracker();
+        ReflectionTestUtils.setField(eventStoreService, "returnedResendEnabled", true);
+        Message<?> message = createTrackedEvent();
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // the event store rejects the update of the targeted resend
+        ReflectionTestUtils.setField(eventStoreService, "eventStoreDao", new JournalEventStoreDao(Clock.systemUTC()) {
+            @Override
+            public boolean markReturned(String eventId, long retryDelayMillis, String outputChannelName) {
+                throw new DataAccessResourceFailureException("event store unavailable");
+            }
+        });
+        try {
+            // falls back to mark the event as returned for the retry operation
+            Assert.assertTrue(eventStoreService.resendReturnedEventAsync(eventId, DemoChannelConfig.OUTPUT1, message).get());
+        } finally {
+            ReflectionTestUtils.setField(eventStoreService, "eventStoreDao", eventStoreDao);
+        }
+
+        Assert.assertEquals(0, eventStorePublishTrackerService.getTrackedCount());
+        Assert.assertNotNull(eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0).getReturnedOn());
+    }
+
+    @Test
+    public void testFilterPendingEventBelowMaxAttempts() throws IOException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // resend once and returned again
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(2L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+
+        // the event which has reached the max no. of attempts is left to the quarantine
+        AtomicInteger counter = new AtomicInteger();
+        eventStoreDao.filterPendingProducerAckOrReturned(DemoChannelConfig.OUTPUT1, 2L, (domainEvent) -> counter.incrementAndGet());
+        Assert.assertEquals(0, counter.get());
+        Assert.assertEquals(2L, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0).getAttemptCount());
+
+        eventStoreDao.filterPendingProducerAckOrReturned(DemoChannelConfig.OUTPUT1, 3L, (domainEvent) -> counter.incrementAndGet());
+        Assert.assertEquals(1, counter.get());
+        Assert.assertEquals(3L, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0).getAttemptCount());
+    }
+
+    @Test
+    public void testNoQuarantineWhileRecovering() throws Exception {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // the attempts are exhausted by a broker outage
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(2L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+        EventStoreResendService eventStoreResendService = (EventStoreResendService)
+                ReflectionTestUtils.getField(eventStoreService, "eventStoreResendService");
+        Assert.assertFalse(eventStoreResendService.resendAsync(DemoChannelConfig.OUTPUT1, eventId, 0L, () -> {
+            throw new MessageDeliveryException("broker unavailable");
+        }).get(5, TimeUnit.SECONDS));
+
+        Object quarantineService = ReflectionTestUtils.getField(eventStoreService, "eventStoreQuarantineService");
+        ReflectionTestUtils.setField(eventStoreService, "eventStoreQuarantineService",
+                new EventStoreQuarantineService(eventStoreDao, new EventStoreChannelProperties(new MockEnvironment())) {
+                    @Override
+                    public long getMaxAttempts(String outputChannelName) {
+                        return 2L;
+                    }
+                });
+        try {
+            // the event is resent instead of quarantined while the channel is recovering
+            Assert.assertEquals(1, eventStoreService.fetchEventAndResend(DemoChannelConfig.OUTPUT1));
+            Assert.assertEquals(0L, eventStoreDao.countQuarantined(DemoChannelConfig.OUTPUT1));
+            Assert.assertEquals(3L, eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0).getAttemptCount());
+            Assert.assertFalse(eventStoreResendService.isRecovering(DemoChannelConfig.OUTPUT1));
+        } finally {
+            ReflectionTestUtils.setField(eventStoreService, "eventStoreQuarantineService", quarantineService);
+        }
+    }
+
+    @Test
+    public void testQuarantineEvent() throws IOException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // resend once and returned again
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(2L, eventStoreDao.claimReturned(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertTrue(eventStoreDao.markReturned(eventId, 0L, DemoChannelConfig.OUTPUT1));
+
+        Assert.assertEquals(0, eventStoreDao.quarantineEvents(DemoChannelConfig.OUTPUT1, 3L));
+        Assert.assertEquals(1, eventStoreDao.quarantineEvents(DemoChannelConfig.OUTPUT1, 2L));
+        Assert.assertTrue(eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).isEmpty());
+        Assert.assertEquals(1L, eventStoreDao.countQuarantined(DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(eventId, eventStoreDao.findQuarantined(DemoChannelConfig.OUTPUT1, 10).get(0).getId());
+
+        Assert.assertEquals(1, eventStoreDao.reinjectQuarantined(DemoChannelConfig.OUTPUT1, Collections.singletonList(eventId)));
+        Assert.assertEquals(0L, eventStoreDao.countQuarantined(DemoChannelConfig.OUTPUT1));
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Assert.assertEquals(1L, domainEvent.getAttemptCount());
+        Assert.assertNull(domainEvent.getReturnedOn());
+    }
+
+    @Test
+    public void testReturnedBackoff() {
+        Assert.assertEquals(1000L, eventStoreService.getReturnedBackoffMillis(1L));
+        Assert.assertEquals(4000L, eventStoreService.getReturnedBackoffMillis(3L));
+        Assert.assertEquals(60000L, eventStoreService.getReturnedBackoffMillis(20L));
+    }
+
+    @Test
+    public void testClaimEventForConsuming() throws IOException {
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        Assert.assertEquals(ConsumeClaim.CLAIMED, eventStoreService.claimEventForConsuming(eventId, DemoChannelConfig.OUTPUT1));
+        // concurrent delivery of the same event is refused
+        Assert.assertEquals(ConsumeClaim.CLAIMED_BY_OTHERS, eventStoreService.claimEventForConsuming(eventId, DemoChannelConfig.OUTPUT1));
+
+        eventStoreService.releaseEventClaim(eventId, DemoChannelConfig.OUTPUT1);
+        Assert.assertEquals(ConsumeClaim.CLAIMED, eventStoreService.claimEventForConsuming(eventId, DemoChannelConfig.OUTPUT1));
+
+        Assert.assertTrue(eventStoreService.markEventAsConsumed(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(ConsumeClaim.CONSUMED, eventStoreService.claimEventForConsuming(eventId, DemoChannelConfig.OUTPUT1));
+        Assert.assertEquals(ConsumeClaim.NOT_FOUND, eventStoreService.claimEventForConsuming(
+                UUID.randomUUID().toString(), DemoChannelConfig.OUTPUT1));
+    }
+
+    @Test
+    public void testAckCoalescing() throws Exception {
+        ReflectionTestUtils.setField(eventStoreAckCoalescingService, "enabled", true);
+
+        List<String> eventIds = new ArrayList<>();
+        for (int i=0; i<10; i++) {
+            Message message = eventStoreService.createEventFromMessage(
+                    MessageBuilder.withPayload("testing message " + i).build(), DemoChannelConfig.OUTPUT1);
+            eventIds.add(message.getHeaders().get("eventId", String.class));
+        }
+        for (String eventId:eventIds) {
+            // the update is coalesced without returning the event
+            Assert.assertNull(eventStoreService.updateEventAsProducedAsync(eventId, DemoChannelConfig.OUTPUT1).get());
+            eventStoreService.updateEventAsProducedAsync(eventId, DemoChannelConfig.OUTPUT1);
+        }
+        eventStoreService.updateEventAsConsumedAsync(eventIds.get(0), DemoChannelConfig.OUTPUT1);
+
+        // buffered updates are flushed upon shutdown
+        eventStoreAckCoalescingService.destroy();
+
+        for (DomainEvent domainEvent:eventStoreDao.findAll(DemoChannelConfig.OUTPUT1)) {
+            Assert.assertNotNull(domainEvent.getProducerAckOn());
+        }
+        Assert.assertTrue(eventStoreService.hasEventBeenConsumed(eventIds.get(0), DemoChannelConfig.OUTPUT1));
+    }
+
     @Test
     public void testDuplicatedEvent() {
         // TODO: to be implemented for de-duplication test
@@ -253,4 +864,98 @@ public class EventStoreServiceIT {
         Assert.assertEquals(policy.getPolicyHolder(), ((DemoMessageModel)_message.getPayload()).getDemoInsurancePolicy().getPolicyHolder());
     }
 
+    @Test
+    public void testProducerSequenceHeader() throws Exception {
+        ReflectionTestUtils.setField(eventStoreService, "stampSequence", true);
+        for (long sequence=1L; sequence<=3L; sequence++) {
+            Message message = eventStoreService.createEventFromMessage(
+                    MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+            Assert.assertNotNull(message.getHeaders().get(EventStoreService.PRODUCER_ID_HEADER));
+            Assert.assertEquals(sequence, message.getHeaders().get(EventStoreService.PRODUCER_SEQUENCE_HEADER));
+        }
+
+        // the sequence is persisted with the event and carried by the resend
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Message _message = eventStoreService.createMessageFromEvent(domainEvent);
+        Assert.assertNotNull(_message.getHeaders().get(EventStoreService.PRODUCER_SEQUENCE_HEADER));
+    }
+
+    @Test
+    public void testAttemptCountHeader() throws Exception {
+        eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+
+        DomainEvent domainEvent = eventStoreDao.findAll(DemoChannelConfig.OUTPUT1).get(0);
+        Message _message = eventStoreService.createMessageFromEvent(domainEvent);
+        Assert.assertEquals(domainEvent.getAttemptCount(), _message.getHeaders().get(EventStoreService.ATTEMPT_COUNT_HEADER));
+    }
+
+    private MessageHeaders consumerHeaders(String eventId, Map<String, Object> deliveryHeaders) {
+        Map<String, Object> headers = new HashMap<>(deliveryHeaders);
+        headers.put("eventId", eventId);
+        headers.put("outputChannelName", DemoChannelConfig.OUTPUT1);
+        return new MessageHeaders(headers);
+    }
+
+    @Test
+    public void testDuplicatePossible() {
+        EventStoreAspect eventStoreAspect = new EventStoreAspect();
+        String eventId = UUID.randomUUID().toString();
+
+        Assert.assertEquals(false, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.emptyMap())));
+        Assert.assertEquals(false, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.singletonMap(EventStoreService.ATTEMPT_COUNT_HEADER, 1L))));
+        Assert.assertEquals(true, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.singletonMap(EventStoreService.ATTEMPT_COUNT_HEADER, 2L))));
+        Assert.assertEquals(true, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.singletonMap(AmqpHeaders.REDELIVERED, true))));
+        Assert.assertEquals(true, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.singletonMap("x-death", Collections.singletonList(Collections.emptyMap())))));
+        Assert.assertEquals(false, ReflectionTestUtils.invokeMethod(eventStoreAspect, "isDuplicatePossible",
+                consumerHeaders(eventId, Collections.singletonMap("x-death", Collections.emptyList()))));
+    }
+
+    @Test
+    public void testConsumerFirstDeliveryFastPath() throws Throwable {
+        Assert.assertTrue(eventStoreService.isIgnoreDuplicate());
+        ReflectionTestUtils.setField(eventStoreService, "redeliveryFastPath", true);
+        EventStoreAspect eventStoreAspect = new EventStoreAspect();
+        ReflectionTestUtils.setField(eventStoreAspect, "eventStoreService", eventStoreService);
+        StreamListener streamListener = TestProcessor.class
+                .getMethod("listen", String.class, Map.class, MessageHeaders.class)
+                .getAnnotation(StreamListener.class);
+
+        Message message = eventStoreService.createEventFromMessage(
+                MessageBuilder.withPayload("testing message").build(), DemoChannelConfig.OUTPUT1);
+        String eventId = message.getHeaders().get("eventId", String.class);
+
+        // the first delivery is consumed without the claim, and the consumed ack is written
+        StubProceedingJoinPoint firstDelivery = new StubProceedingJoinPoint(
+                new Object[] {"testing message", null, consumerHeaders(eventId, Collections.emptyMap())}, args -> null);
+        eventStoreAspect.interceptConsumer(firstDelivery, streamListener);
+        Assert.assertEquals(1, firstDelivery.getProceedCount());
+        Assert.assertTrue(eventStoreService.hasEventBeenConsumed(eventId, DemoChannelConfig.OUTPUT1));
+
+        // another first delivery is not checked for duplicate either
+        StubProceedingJoinPoint secondDelivery = new StubProceedingJoinPoint(
+                new Object[] {"testing message", null, consumerHeaders(eventId, Collections.emptyMap())}, args -> null);
+        eventStoreAspect.interceptConsumer(secondDelivery, streamListener);
+        Assert.assertEquals(1, secondDelivery.getProceedCount());
+
+        // a redelivery is claimed and skipped as the event has been consumed
+        StubProceedingJoinPoint redelivery = new StubProceedingJoinPoint(
+                new Object[] {"testing message", null, consumerHeaders(eventId, Collections.singletonMap(AmqpHeaders.REDELIVERED, true))},
+                args -> null);
+        Assert.assertNull(eventStoreAspect.interceptConsumer(redelivery, streamListener));
+        Assert.assertEquals(0, redelivery.getProceedCount());
+
+        // without the fast path, the first delivery is claimed and skipped as well
+        ReflectionTestUtils.setField(eventStoreService, "redeliveryFastPath", false);
+        StubProceedingJoinPoint thirdDelivery = new StubProceedingJoinPoint(
+                new Object[] {"testing message", null, consumerHeaders(eventId, Collections.emptyMap())}, args -> null);
+        eventStoreAspect.interceptConsumer(thirdDelivery, streamListener);
+        Assert.assertEquals(0, thirdDelivery.getProceedCount());
+    }
+
 }
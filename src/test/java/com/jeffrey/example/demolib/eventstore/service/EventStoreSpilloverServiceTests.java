@@ -0,0 +1,204 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import com.jeffrey.example.demolib.eventstore.dao.JournalEventStoreDao;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import com.netflix.hystrix.Hystrix;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class EventStoreSpilloverServiceTests {
+
+    private static final String CHANNEL = "output1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicBoolean available = new AtomicBoolean(true);
+
+    // executed before the bulk load, as if it's racing the drain
+    private final AtomicReference<Runnable> beforeCreateEvents = new AtomicReference<>();
+
+    private JournalEventStoreDao eventStoreDao;
+
+    private EventStoreScheduler eventStoreScheduler;
+
+    private EventStoreSpilloverService eventStoreSpilloverService;
+
+    @Before
+    public void setUp() throws Exception {
+        // an event store which could be made unavailable
+        eventStoreDao = new JournalEventStoreDao(Clock.systemUTC()) {
+            @Override
+            public List<DomainEvent> createEvents(Collection<DomainEvent> domainEvents, String outputChannelName) {
+                if (!available.get()) {
+                    throw new DataAccessResourceFailureException("event store unavailable");
+                }
+                Runnable runnable = beforeCreateEvents.getAndSet(null);
+                if (runnable != null) {
+                    runnable.run();
+                }
+                return super.createEvents(domainEvents, outputChannelName);
+            }
+        };
+        ReflectionTestUtils.setField(eventStoreDao, "journalDirectory", temporaryFolder.newFolder("store").getAbsolutePath());
+        ReflectionTestUtils.setField(eventStoreDao, "segmentSizeBytes", 4096);
+        ReflectionTestUtils.setField(eventStoreDao, "segmentPrefix", "TestEventStore");
+
+        eventStoreScheduler = EventStoreSchedulers.singleWorker();
+
+        eventStoreSpilloverService = new EventStoreSpilloverService(Clock.systemUTC(), eventStoreDao, eventStoreScheduler);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "enabled", true);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "spillDirectory", temporaryFolder.newFolder("spill").getAbsolutePath());
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "segmentSizeBytes", 4096);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "drainIntervalMillis", 60000L);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "drainBatchSize", 2);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "maxConcurrentWrites", 100);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "requestVolumeThreshold", 20);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "errorThresholdPercentage", 50);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "sleepWindowInMilliseconds", 5000);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "messageExpiredTimeInSec", 60L);
+        ReflectionTestUtils.setField(eventStoreSpilloverService, "retryMessageBatchSize", 1000);
+        eventStoreSpilloverService.initialize(Collections.singletonList(CHANNEL));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStoreSpilloverService.destroy();
+        eventStoreScheduler.destroy();
+        eventStoreDao.destroy();
+        Hystrix.reset();
+    }
+
+    private DomainEvent createEvent(boolean spillAllowed) {
+        Map<String, Object> header = Collections.singletonMap("contentType", "application/json");
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(UUID.randomUUID().toString())
+                .channel(CHANNEL)
+                .header(header)
+                .payload("testing message")
+                .payloadType(String.class.getName())
+                .build();
+        return eventStoreSpilloverService.createEvent(
+                () -> eventStoreDao.createEvent(
+                        domainEvent.getId(), header, domainEvent.getPayload(), domainEvent.getPayloadType(),
+                        domainEvent.getEncoding(), null, CHANNEL),
+                domainEvent,
+                spillAllowed);
+    }
+
+    @Test
+    public void testCreateEvent() {
+        createEvent(true);
+        Assert.assertEquals(1, eventStoreDao.findAll(CHANNEL).size());
+        Assert.assertEquals(0, eventStoreSpilloverService.drain(CHANNEL));
+    }
+
+    @Test
+    public void testSpillAndDrain() {
+        available.set(false);
+        for (int i=0; i<5; i++) {
+            DomainEvent domainEvent = createEvent(true);
+            Assert.assertNotNull(domainEvent.getWrittenOn());
+        }
+        Assert.assertTrue(eventStoreDao.findAll(CHANNEL).isEmpty());
+
+        // spilled event is updated in the spill journal until it's drained
+        String eventId = createEvent(true).getId();
+        Assert.assertNotNull(eventStoreSpilloverService.updateProducedTimestamp(eventId, CHANNEL));
+
+        available.set(true);
+        Assert.assertEquals(6, eventStoreSpilloverService.drain(CHANNEL));
+        Assert.assertEquals(6, eventStoreDao.findAll(CHANNEL).size());
+
+        // drained events are not loaded again
+        Assert.assertEquals(0, eventStoreSpilloverService.drain(CHANNEL));
+    }
+
+    @Test
+    public void testAckDuringDrain() {
+        available.set(false);
+        String eventId = createEvent(true).getId();
+        available.set(true);
+
+        // the ack reaches the spill journal after the event was read for bulk-loading
+        beforeCreateEvents.set(() -> Assert.assertNotNull(eventStoreSpilloverService.updateProducedTimestamp(eventId, CHANNEL)));
+        Assert.assertEquals(1, eventStoreSpilloverService.drain(CHANNEL));
+
+        List<DomainEvent> domainEvents = eventStoreDao.findAll(CHANNEL);
+        Assert.assertEquals(1, domainEvents.size());
+        Assert.assertNotNull(domainEvents.get(0).getProducerAckOn());
+    }
+
+    @Test
+    public void testAckAfterDrain() {
+        available.set(false);
+        String eventId = createEvent(true).getId();
+        available.set(true);
+        Assert.assertEquals(1, eventStoreSpilloverService.drain(CHANNEL));
+
+        // the ack is forwarded to the event store once the event has been drained
+        Assert.assertNotNull(eventStoreSpilloverService.updateReturnedTimestamp(eventId, CHANNEL));
+        List<DomainEvent> domainEvents = eventStoreDao.findAll(CHANNEL);
+        Assert.assertNotNull(domainEvents.get(0).getReturnedOn());
+    }
+
+    @Test
+    public void testNoSpillOnNonTransientError() {
+        DomainEvent domainEvent = new DomainEvent.Builder()
+                .id(UUID.randomUUID().toString())
+                .channel(CHANNEL)
+                .payload("testing message")
+                .payloadType(String.class.getName())
+                .build();
+        try {
+            eventStoreSpilloverService.createEvent(() -> {
+                throw new IllegalArgumentException("unknown payload codec");
+            }, domainEvent, true);
+            Assert.fail("the non transient error should be propagated");
+        } catch (IllegalArgumentException e) { }
+
+        // nothing is left in the spill journal to fail the drain
+        Assert.assertEquals(0, eventStoreSpilloverService.drain(CHANNEL));
+        Assert.assertTrue(eventStoreDao.findAll(CHANNEL).isEmpty());
+    }
+
+    @Test(expected = DataAccessResourceFailureException.class)
+    public void testNoSpillWithinTransaction() {
+        available.set(false);
+        createEvent(false);
+    }
+
+    @Test
+    public void testCircuitOpen() {
+        available.set(false);
+        for (int i=0; i<50; i++) {
+            createEvent(true);
+        }
+        // allow the health snapshot to be refreshed
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!eventStoreSpilloverService.isCircuitOpen() && System.currentTimeMillis() < deadline) {
+            createEvent(true);
+        }
+        Assert.assertTrue(eventStoreSpilloverService.isCircuitOpen());
+        Assert.assertTrue(eventStoreDao.findAll(CHANNEL).isEmpty());
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.jeffrey.example.demolib.eventstore.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A UTC {@link Clock} which only moves when advanced by the test, such that the time based
+ * behaviours are deterministic. A ticking clock in addition moves a millisecond on every read,
+ * such that the successive timestamps are distinguishable.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class TestClock extends Clock {
+
+    private final AtomicLong millis = new AtomicLong(System.currentTimeMillis());
+
+    private final boolean ticking;
+
+    private TestClock(boolean ticking) {
+        this.ticking = ticking;
+    }
+
+    public static TestClock manual() {
+        return new TestClock(false);
+    }
+
+    public static TestClock ticking() {
+        return new TestClock(true);
+    }
+
+    public void advance(long deltaMillis) {
+        millis.addAndGet(deltaMillis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public long millis() {
+        return ticking ? millis.incrementAndGet() : millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+}
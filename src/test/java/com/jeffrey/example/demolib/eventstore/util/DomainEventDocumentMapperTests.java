@@ -0,0 +1,86 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.jeffrey.example.demolib.eventstore.config.MongoDbConfig;
+import com.jeffrey.example.demolib.eventstore.entity.DomainEvent;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class DomainEventDocumentMapperTests {
+
+    /**
+     * An event written before the introduction of encoding, whose header and payload are json strings
+     */
+    private Document legacyDocument(Instant writtenOn) {
+        return new Document()
+                .append("_id", "event1")
+                .append("channel", "output1")
+                .append("header", "{\"eventId\":\"event1\",\"contentType\":\"application/json\"}")
+                .append("payload", "{\"name\":\"testing message\",\"tags\":[\"a\",\"b\"]}")
+                .append("payloadType", Map.class.getName())
+                .append("writtenOn", Date.from(writtenOn))
+                .append("attemptCount", 3);
+    }
+
+    @Test
+    public void testLegacyDocument() {
+        Instant writtenOn = Instant.ofEpochMilli(System.currentTimeMillis());
+        DomainEvent domainEvent = DomainEventDocumentMapper.fromDocument(legacyDocument(writtenOn)).build();
+
+        Assert.assertEquals("event1", domainEvent.getId());
+        Assert.assertEquals(DomainEvent.ENCODING_BSON, domainEvent.getEncoding());
+        Assert.assertEquals("application/json", domainEvent.getHeader().get("contentType"));
+        Assert.assertTrue(domainEvent.getPayload() instanceof Map);
+        Assert.assertEquals("testing message", ((Map<?, ?>) domainEvent.getPayload()).get("name"));
+        Assert.assertEquals(3L, domainEvent.getAttemptCount());
+        Assert.assertEquals(writtenOn, domainEvent.getWrittenOn());
+        Assert.assertNull(domainEvent.getReturnedOn());
+    }
+
+    @Test
+    public void testLegacyDocumentRoundTrip() {
+        Instant writtenOn = Instant.ofEpochMilli(System.currentTimeMillis());
+        DomainEvent migrated = DomainEventDocumentMapper.fromDocument(legacyDocument(writtenOn)).build();
+
+        // once migrated, the event is written and read back in the BSON structure
+        Document document = DomainEventDocumentMapper.fromBytes(
+                DomainEventDocumentMapper.toBytes(DomainEventDocumentMapper.toDocument(migrated)));
+        Assert.assertEquals(DomainEvent.ENCODING_BSON, document.get("encoding"));
+        Assert.assertTrue(document.get("header") instanceof Map);
+
+        DomainEvent domainEvent = DomainEventDocumentMapper.fromDocument(document).build();
+        Assert.assertEquals(migrated.getId(), domainEvent.getId());
+        Assert.assertEquals(migrated.getChannel(), domainEvent.getChannel());
+        Assert.assertEquals(migrated.getHeader(), domainEvent.getHeader());
+        Assert.assertEquals(migrated.getPayload(), domainEvent.getPayload());
+        Assert.assertEquals(migrated.getPayloadType(), domainEvent.getPayloadType());
+        Assert.assertEquals(migrated.getAttemptCount(), domainEvent.getAttemptCount());
+        Assert.assertEquals(migrated.getWrittenOn(), domainEvent.getWrittenOn());
+    }
+
+    @Test
+    public void testEscapedKeys() {
+        Document document = new Document()
+                .append("_id", "event1")
+                .append("channel", "output1")
+                .append("payloadType", List.class.getName())
+                .append("writtenOn", new Date())
+                .append("header", new Document("spring" + MongoDbConfig.MAP_KEY_DOT_REPLACEMENT + "id", "value"))
+                .append("payload", Collections.singletonList(new Document("a" + MongoDbConfig.MAP_KEY_DOT_REPLACEMENT + "b", 1)))
+                .append("encoding", DomainEvent.ENCODING_BSON);
+
+        DomainEvent domainEvent = DomainEventDocumentMapper.fromDocument(document).build();
+        Assert.assertEquals("value", domainEvent.getHeader().get("spring.id"));
+        Assert.assertEquals(1, ((Map<?, ?>) ((List<?>) domainEvent.getPayload()).get(0)).get("a.b"));
+    }
+
+}
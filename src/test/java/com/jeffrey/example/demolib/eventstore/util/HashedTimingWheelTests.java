@@ -0,0 +1,89 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.jeffrey.example.demolib.eventstore.service.TestClock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class HashedTimingWheelTests {
+
+    // a clock which could be advanced by the test
+    private final TestClock clock = TestClock.manual();
+
+    @Test
+    public void testExpiry() {
+        HashedTimingWheel<String, String> timingWheel = new HashedTimingWheel<>(clock, 100L, 8);
+        timingWheel.schedule("event1", "message1", 250L);
+        timingWheel.schedule("event2", "message2", 100L);
+        Assert.assertEquals(2, timingWheel.size());
+
+        Assert.assertTrue(timingWheel.advance().isEmpty());
+
+        clock.advance(100L);
+        Map<String, String> expired = timingWheel.advance();
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals("message2", expired.get("event2"));
+
+        // never fired before the deadline
+        clock.advance(100L);
+        Assert.assertTrue(timingWheel.advance().isEmpty());
+
+        clock.advance(100L);
+        Assert.assertEquals("message1", timingWheel.advance().get("event1"));
+        Assert.assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void testMultipleRounds() {
+        HashedTimingWheel<String, String> timingWheel = new HashedTimingWheel<>(clock, 100L, 4);
+        timingWheel.schedule("event1", "message1", 1000L);
+
+        // the bucket of the deadline is visited twice before the deadline
+        for (int i=0; i<9; i++) {
+            clock.advance(100L);
+            Assert.assertTrue(timingWheel.advance().isEmpty());
+        }
+        clock.advance(100L);
+        Assert.assertEquals("message1", timingWheel.advance().get("event1"));
+    }
+
+    @Test
+    public void testLaggingDriver() {
+        HashedTimingWheel<String, String> timingWheel = new HashedTimingWheel<>(clock, 100L, 4);
+        timingWheel.schedule("event1", "message1", 300L);
+        timingWheel.schedule("event2", "message2", 100L);
+        timingWheel.schedule("event3", "message3", 2000L);
+
+        // the ticks elapsed are processed in order
+        clock.advance(1000L);
+        Map<String, String> expired = timingWheel.advance();
+        Assert.assertEquals(Arrays.asList("event2", "event1"), new ArrayList<>(expired.keySet()));
+        Assert.assertEquals(1, timingWheel.size());
+    }
+
+    @Test
+    public void testCancel() {
+        HashedTimingWheel<String, String> timingWheel = new HashedTimingWheel<>(clock, 100L, 8);
+        timingWheel.schedule("event1", "message1", 100L);
+        timingWheel.schedule("event2", "message2", 100L);
+
+        Assert.assertEquals("message1", timingWheel.cancel("event1"));
+        Assert.assertNull(timingWheel.cancel("event1"));
+
+        // a timeout of the same key is replaced
+        timingWheel.schedule("event2", "message3", 500L);
+        Assert.assertEquals(1, timingWheel.size());
+
+        clock.advance(100L);
+        Assert.assertTrue(timingWheel.advance().isEmpty());
+        clock.advance(400L);
+        Assert.assertEquals("message3", timingWheel.advance().get("event2"));
+    }
+
+}
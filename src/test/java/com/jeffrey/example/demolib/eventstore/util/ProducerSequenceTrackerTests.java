@@ -0,0 +1,63 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ProducerSequenceTrackerTests {
+
+    private static final String PRODUCER = "output1:producer1";
+
+    @Test
+    public void testUnknownProducer() {
+        ProducerSequenceTracker tracker = new ProducerSequenceTracker(64, 10);
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.UNKNOWN, tracker.acquire(PRODUCER, 1L));
+        Assert.assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testDuplicate() {
+        ProducerSequenceTracker tracker = new ProducerSequenceTracker(64, 10);
+        tracker.record(PRODUCER, 10L);
+
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.DUPLICATE, tracker.acquire(PRODUCER, 10L));
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 12L));
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.DUPLICATE, tracker.acquire(PRODUCER, 12L));
+
+        // out-of-order within the window
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 11L));
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.DUPLICATE, tracker.acquire(PRODUCER, 11L));
+
+        // before the first sequence recorded
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.UNKNOWN, tracker.acquire(PRODUCER, 9L));
+    }
+
+    @Test
+    public void testRelease() {
+        ProducerSequenceTracker tracker = new ProducerSequenceTracker(64, 10);
+        tracker.record(PRODUCER, 1L);
+
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 2L));
+        tracker.release(PRODUCER, 2L);
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 2L));
+    }
+
+    @Test
+    public void testWindowOverflow() {
+        ProducerSequenceTracker tracker = new ProducerSequenceTracker(64, 10);
+        tracker.record(PRODUCER, 1L);
+        for (long sequence=2L; sequence<=100L; sequence++) {
+            Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, sequence));
+        }
+        // fell behind the window
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.UNKNOWN, tracker.acquire(PRODUCER, 36L));
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.DUPLICATE, tracker.acquire(PRODUCER, 37L));
+
+        // the window is cleared when advanced beyond its size
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 1000L));
+        Assert.assertEquals(ProducerSequenceTracker.Verdict.NEW, tracker.acquire(PRODUCER, 999L));
+    }
+
+}
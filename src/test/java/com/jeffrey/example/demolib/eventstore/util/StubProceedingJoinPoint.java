@@ -0,0 +1,98 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+
+/**
+ * A {@link ProceedingJoinPoint} which delegates the proceed to the supplied {@link Proceed},
+ * for testing the advices of the event store without weaving any aspect.
+ *
+ * @author Jeffrey Garcia Wong
+ */
+public class StubProceedingJoinPoint implements ProceedingJoinPoint {
+
+    @FunctionalInterface
+    public interface Proceed {
+        Object proceed(Object[] args) throws Throwable;
+    }
+
+    private final Object[] args;
+
+    private final Proceed proceed;
+
+    private int proceedCount = 0;
+
+    public StubProceedingJoinPoint(Object[] args, Proceed proceed) {
+        this.args = args;
+        this.proceed = proceed;
+    }
+
+    /**
+     * @return the no. of times the join point has proceeded
+     */
+    public int getProceedCount() {
+        return proceedCount;
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure arc) {}
+
+    @Override
+    public Object proceed() throws Throwable {
+        return proceed(args);
+    }
+
+    @Override
+    public Object proceed(Object[] args) throws Throwable {
+        proceedCount++;
+        return proceed.proceed(args);
+    }
+
+    @Override
+    public String toShortString() {
+        return toString();
+    }
+
+    @Override
+    public String toLongString() {
+        return toString();
+    }
+
+    @Override
+    public Object getThis() {
+        return null;
+    }
+
+    @Override
+    public Object getTarget() {
+        return null;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Signature getSignature() {
+        return null;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return null;
+    }
+
+    @Override
+    public String getKind() {
+        return ProceedingJoinPoint.METHOD_EXECUTION;
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return null;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class TimeOrderedIdGeneratorTests {
+
+    private static final int MAX_ID = 100000;
+    private static final int MAX_THREAD = 8;
+
+    @Test
+    public void testIdsAreStrictlyIncreasing() {
+        // a fixed clock forces every id into the same millisecond
+        Clock clock = Clock.fixed(Instant.now(), ZoneId.systemDefault());
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(clock);
+
+        String previous = idGenerator.generateId().toString();
+        for (int i=0; i<MAX_ID; i++) {
+            String current = idGenerator.generateId().toString();
+            Assert.assertTrue(previous + " < " + current, previous.compareTo(current) < 0);
+            previous = current;
+        }
+    }
+
+    @Test
+    public void testVersionAndVariant() {
+        UUID id = new TimeOrderedIdGenerator(Clock.systemUTC()).generateId();
+        Assert.assertEquals(7, id.version());
+        Assert.assertEquals(2, id.variant());
+    }
+
+    @Test
+    public void testLowerBound() {
+        Instant instant = Instant.now();
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(Clock.fixed(instant, ZoneId.systemDefault()));
+        String id = idGenerator.generateId().toString();
+
+        Assert.assertTrue(TimeOrderedIdGenerator.lowerBound(instant).compareTo(id) <= 0);
+        Assert.assertTrue(TimeOrderedIdGenerator.lowerBound(instant.plusMillis(1)).compareTo(id) > 0);
+    }
+
+    @Test
+    public void testTimestampOf() {
+        Instant instant = Instant.ofEpochMilli(System.currentTimeMillis());
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(Clock.fixed(instant, ZoneId.systemDefault()));
+
+        Assert.assertEquals(instant, TimeOrderedIdGenerator.timestampOf(idGenerator.generateId().toString()));
+        Assert.assertNull(TimeOrderedIdGenerator.timestampOf(UUID.randomUUID().toString()));
+        Assert.assertNull(TimeOrderedIdGenerator.timestampOf("not-an-id"));
+    }
+
+    @Test
+    public void testConcurrentGeneration() throws InterruptedException {
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(Clock.systemUTC());
+        List<List<String>> results = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(MAX_THREAD);
+        CountDownLatch latch = new CountDownLatch(MAX_THREAD);
+
+        for (int i=0; i<MAX_THREAD; i++) {
+            executorService.execute(() -> {
+                List<String> ids = new ArrayList<>(MAX_ID);
+                for (int j=0; j<MAX_ID; j++) {
+                    ids.add(idGenerator.generateId().toString());
+                }
+                results.add(ids);
+                latch.countDown();
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executorService.shutdown();
+
+        Set<String> uniqueIds = new HashSet<>();
+        for (List<String> ids:results) {
+            for (int i=1; i<ids.size(); i++) {
+                // ids generated by the same thread are ordered
+                Assert.assertTrue(ids.get(i-1).compareTo(ids.get(i)) < 0);
+            }
+            uniqueIds.addAll(ids);
+        }
+        Assert.assertEquals(MAX_ID * MAX_THREAD, uniqueIds.size());
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.jeffrey.example.demolib.eventstore.util;
+
+import com.jeffrey.example.demolib.eventstore.service.TestClock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class TokenBucketTests {
+
+    // a clock which could be advanced by the test
+    private final TestClock clock = TestClock.manual();
+
+    @Test
+    public void testTryAcquire() {
+        TokenBucket tokenBucket = new TokenBucket(clock, 10d);
+        for (int i=0; i<10; i++) {
+            Assert.assertTrue(tokenBucket.tryAcquire(1d));
+        }
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+
+        // refilled at 10 permits per second
+        clock.advance(100L);
+        Assert.assertTrue(tokenBucket.tryAcquire(1d));
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+    }
+
+    @Test
+    public void testCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(clock, 10d);
+        Assert.assertTrue(tokenBucket.tryAcquire(10d));
+
+        // no more than one second worth of permits is accumulated while idle
+        clock.advance(60000L);
+        Assert.assertTrue(tokenBucket.tryAcquire(10d));
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+    }
+
+    @Test
+    public void testReserve() {
+        TokenBucket tokenBucket = new TokenBucket(clock, 1000d);
+        Assert.assertEquals(0L, tokenBucket.reserve(1000d));
+
+        // a request larger than the capacity is admitted after the debt is repaid
+        Assert.assertEquals(4000L, tokenBucket.reserve(4000d));
+        clock.advance(4000L);
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+        clock.advance(1L);
+        Assert.assertTrue(tokenBucket.tryAcquire(1d));
+    }
+
+    @Test
+    public void testSetRate() {
+        TokenBucket tokenBucket = new TokenBucket(clock, 100d);
+
+        // the permits accumulated are capped by the capacity of the new rate
+        tokenBucket.setRate(10d);
+        Assert.assertEquals(10d, tokenBucket.getRate(), 0d);
+        Assert.assertTrue(tokenBucket.tryAcquire(10d));
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+
+        tokenBucket.setRate(100d);
+        clock.advance(100L);
+        Assert.assertTrue(tokenBucket.tryAcquire(10d));
+        Assert.assertFalse(tokenBucket.tryAcquire(1d));
+    }
+
+}